@@ -0,0 +1,49 @@
+package jfxlabproj.gameoflife;
+
+// A board the simulation, renderer and exporters can drive without
+// knowing how its cells are stored or which rule it runs
+public abstract class Automaton {
+
+    // Tiles are TILE_SIZE x TILE_SIZE cells and track changes for rendering
+    public static final int TILE_SIZE = 64;
+
+    public abstract int getWidth();
+
+    public abstract int getHeight();
+
+    public abstract long getGeneration();
+
+    public abstract LifeRule getRule();
+
+    // 0 is dead, 1 alive, 2 and up are decay states
+    public abstract int getState(int x, int y);
+
+    public abstract int population();
+
+    public abstract int getTileColumns();
+
+    public abstract int getTileRows();
+
+    public abstract boolean isTileDirty(int tileX, int tileY);
+
+    public abstract void clearDirty();
+
+    // Advances one generation on the calling thread
+    public void step() {
+        stepRows(0, getHeight());
+        swap();
+    }
+
+    // Writes rows [startY, endY) of the next generation. Only reads the
+    // current generation, so disjoint row ranges can run concurrently.
+    abstract void stepRows(int startY, int endY);
+
+    // Makes the generation written by stepRows current
+    abstract void swap();
+
+    // Same-sized empty board of the same kind, used for display snapshots
+    abstract Automaton emptyCopy();
+
+    // Copies the current generation and adds the other board's dirty tiles
+    abstract void copyStateFrom(Automaton other);
+}
@@ -0,0 +1,205 @@
+package jfxlabproj.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import jfxlabproj.filter.FilterChain;
+
+// Headless entry point: runs every image in a directory through a
+// BatchPipeline and prints per-image results and the pipeline's
+// throughput and latencies. Needs no display. With --watch it keeps
+// running, processing files as they are dropped into the directory,
+// until stopped with Ctrl-C.
+//
+//   java ... jfxlabproj.batch.BatchMain <input-dir> [options]
+//     --out DIR            write exports here (required with --format),
+//                          named after the whole input name: a.jpg -> a.jpg.png
+//     --filter a,b         presets in order: blur, grayscale, sepia, vignette
+//     --analyze            colour histogram of each processed image
+//     --format png,jpg     export formats
+//     --threads D,P,E      decode, process and encode threads
+//     --queue N            images allowed between two stages
+//     --jpeg-quality Q     0-1
+//     --png-level L        deflate level 0-9
+//     --watch              watch the directory instead of one pass
+//     --settle MS          time a dropped file must stay unchanged
+//     --metrics S          seconds between watch metrics lines, 0 for none
+public class BatchMain {
+
+    private static boolean watch;
+    private static long settleMillis = 750;
+    private static int metricsSeconds = 10;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        BatchPipeline pipeline = new BatchPipeline();
+        File input;
+        try {
+            input = configure(pipeline, args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(
+                "Usage: BatchMain <input-dir> [--out DIR] [--filter a,b] [--analyze] " +
+                "[--format png,jpg] [--threads D,P,E] [--queue N] " +
+                "[--jpeg-quality Q] [--png-level L] [--watch] [--settle MS] [--metrics S]"
+            );
+            System.exit(2);
+            return;
+        }
+
+        File[] files = input.listFiles(File::isFile);
+        if (files == null) {
+            System.err.println("Not a readable directory: " + input);
+            System.exit(2);
+            return;
+        }
+        Arrays.sort(files);
+
+        pipeline.setListener(item -> {
+            synchronized (System.out) {
+                System.out.println(item);
+            }
+        });
+        pipeline.start();
+        if (watch) {
+            watch(input, pipeline);
+            return;
+        }
+        for (File file : files) {
+            pipeline.submit(file);
+        }
+        BatchPipeline.Report report = pipeline.finish();
+        System.out.println();
+        System.out.println(report);
+        System.exit(report.getFailed() > 0 ? 1 : 0);
+    }
+
+    // Runs until the JVM is stopped, then prints the totals
+    private static void watch(File input, BatchPipeline pipeline)
+        throws IOException, InterruptedException {
+        WatchFolder folder = new WatchFolder(input, pipeline);
+        folder.setSettleMillis(settleMillis);
+        folder.setMetricsSeconds(metricsSeconds);
+        folder.setMetricsListener(line -> {
+            synchronized (System.out) {
+                System.out.println(line);
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println();
+            System.out.println(pipeline.report());
+        }, "batch-report"));
+        System.out.println("Watching " + input.getAbsolutePath() + " (Ctrl-C to stop)");
+        folder.run();
+    }
+
+    // Applies the options to pipeline and returns the input directory
+    static File configure(BatchPipeline pipeline, String[] args) {
+        File input = null;
+        File output = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--out":
+                    output = new File(value(args, ++i, arg));
+                    break;
+                case "--filter": {
+                    List<String> filters = list(value(args, ++i, arg));
+                    for (String filter : filters) {
+                        // Fails here on an unknown name rather than per image
+                        FilterChain.preset(filter, 1, 1);
+                    }
+                    pipeline.setFilters(filters);
+                    break;
+                }
+                case "--analyze":
+                    pipeline.setAnalyze(true);
+                    break;
+                case "--format":
+                    pipeline.setFormats(list(value(args, ++i, arg)));
+                    break;
+                case "--threads": {
+                    List<String> counts = list(value(args, ++i, arg));
+                    if (counts.size() != 3) {
+                        throw new IllegalArgumentException("--threads needs D,P,E");
+                    }
+                    pipeline.setDecodeThreads(number(counts.get(0), arg));
+                    pipeline.setProcessThreads(number(counts.get(1), arg));
+                    pipeline.setEncodeThreads(number(counts.get(2), arg));
+                    break;
+                }
+                case "--queue":
+                    pipeline.setQueueCapacity(number(value(args, ++i, arg), arg));
+                    break;
+                case "--jpeg-quality":
+                    try {
+                        pipeline
+                            .getExporter()
+                            .setJpegQuality(Float.parseFloat(value(args, ++i, arg)));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Bad number for " + arg, e);
+                    }
+                    break;
+                case "--png-level":
+                    pipeline
+                        .getExporter()
+                        .setPngCompressionLevel(number(value(args, ++i, arg), arg));
+                    break;
+                case "--watch":
+                    watch = true;
+                    break;
+                case "--settle":
+                    settleMillis = Math.max(0, number(value(args, ++i, arg), arg));
+                    break;
+                case "--metrics":
+                    metricsSeconds = Math.max(0, number(value(args, ++i, arg), arg));
+                    break;
+                default:
+                    if (arg.startsWith("--") || input != null) {
+                        throw new IllegalArgumentException("Unexpected argument: " + arg);
+                    }
+                    input = new File(arg);
+            }
+        }
+        if (input == null) {
+            throw new IllegalArgumentException("No input directory given");
+        }
+        if (output != null) {
+            if (output.getAbsoluteFile().equals(input.getAbsoluteFile())) {
+                throw new IllegalArgumentException(
+                    "Output directory must differ from the input directory"
+                );
+            }
+            if (!output.isDirectory() && !output.mkdirs()) {
+                throw new IllegalArgumentException("Cannot create " + output);
+            }
+            pipeline.setOutputDirectory(output);
+        }
+        return input;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[index];
+    }
+
+    private static List<String> list(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.isBlank()) items.add(item.trim());
+        }
+        return items;
+    }
+
+    private static int number(String value, String option) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number for " + option, e);
+        }
+    }
+}
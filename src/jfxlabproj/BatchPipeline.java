@@ -0,0 +1,598 @@
+package jfxlabproj.batch;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.imageio.ImageIO;
+import jfxlabproj.analysis.ColorHistogram;
+import jfxlabproj.export.ImageExporter;
+import jfxlabproj.filter.FilterChain;
+import jfxlabproj.raster.Raster;
+
+// Decode -> process -> encode over image files, with its own threads per
+// stage. Stages hand images on through bounded queues, so a slow stage
+// blocks the one before it instead of letting decoded images pile up,
+// and submit() blocks once the decoders are that far behind.
+public class BatchPipeline {
+
+    private File outputDirectory;
+    private List<String> filters = List.of();
+    private boolean analyze;
+    private int topColors = 10;
+    private List<String> formats = List.of();
+    private int decodeThreads = 2;
+    // Filters and analysis already spread each image over the tile
+    // scheduler, so two images in flight keep every core busy
+    private int processThreads = 2;
+    private int encodeThreads = 2;
+    private int queueCapacity = 4;
+    private ImageExporter exporter = new ImageExporter();
+    private Consumer<Item> listener;
+
+    // Poison pill handed down the stages when no more files will come
+    private static final Item END = new Item(null);
+
+    private BlockingQueue<Item> pending;
+    private BlockingQueue<Item> decoded;
+    private BlockingQueue<Item> processed;
+    private CountDownLatch encodersDone;
+    private final Set<Item> inFlight = ConcurrentHashMap.newKeySet();
+    private final Stats stats = new Stats();
+    private boolean started;
+
+    // Where exports go; null writes nothing
+    public void setOutputDirectory(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    // FilterChain presets applied in order, e.g. "grayscale", "vignette"
+    public void setFilters(List<String> filters) {
+        this.filters = List.copyOf(filters);
+    }
+
+    public void setAnalyze(boolean analyze) {
+        this.analyze = analyze;
+    }
+
+    public void setTopColors(int topColors) {
+        this.topColors = Math.max(1, topColors);
+    }
+
+    // ImageIO format names, e.g. "png", "jpg"
+    public void setFormats(List<String> formats) {
+        this.formats = List.copyOf(formats);
+    }
+
+    public void setDecodeThreads(int threads) {
+        this.decodeThreads = Math.max(1, threads);
+    }
+
+    public void setProcessThreads(int threads) {
+        this.processThreads = Math.max(1, threads);
+    }
+
+    public void setEncodeThreads(int threads) {
+        this.encodeThreads = Math.max(1, threads);
+    }
+
+    // Images allowed to wait between two stages
+    public void setQueueCapacity(int capacity) {
+        this.queueCapacity = Math.max(1, capacity);
+    }
+
+    public ImageExporter getExporter() {
+        return exporter;
+    }
+
+    // Called on an encode thread as each image leaves the pipeline
+    public void setListener(Consumer<Item> listener) {
+        this.listener = listener;
+    }
+
+    // One image's trip through the pipeline
+    public static class Item {
+
+        private final File file;
+        private long submitNanos;
+        // When the file was ready, which is before submitNanos if it
+        // waited outside the pipeline for room
+        private long readyNanos;
+        private long startNanos;
+        private long decodeNanos;
+        private long processNanos;
+        private long encodeNanos;
+        private Raster raster;
+        private int width;
+        private int height;
+        private ColorHistogram.Result histogram;
+        private List<ImageExporter.Outcome> outcomes = List.of();
+        private String error;
+
+        Item(File file) {
+            this.file = file;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        // null unless analysis was on and the image decoded
+        public ColorHistogram.Result getHistogram() {
+            return histogram;
+        }
+
+        public List<ImageExporter.Outcome> getOutcomes() {
+            return outcomes;
+        }
+
+        public boolean isFailed() {
+            if (error != null) return true;
+            for (ImageExporter.Outcome outcome : outcomes) {
+                if (!outcome.isWritten()) return true;
+            }
+            return false;
+        }
+
+        // The first thing that went wrong, or null
+        public String getError() {
+            if (error != null) return error;
+            for (ImageExporter.Outcome outcome : outcomes) {
+                if (!outcome.isWritten()) return outcome.toString();
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) return file.getName() + ": failed, " + error;
+            StringBuilder text = new StringBuilder(
+                String.format("%s: %dx%d", file.getName(), width, height)
+            );
+            if (histogram != null && histogram.size() > 0) {
+                text.append(String.format(
+                    ", top %s (%d px), %d colours",
+                    histogram.getHex(0),
+                    histogram.getCount(0),
+                    histogram.getDistinctColors()
+                ));
+            }
+            for (ImageExporter.Outcome outcome : outcomes) {
+                text.append("\n  ").append(outcome);
+            }
+            return text.toString();
+        }
+    }
+
+    public synchronized void start() {
+        if (started) throw new IllegalStateException("Pipeline already started");
+        started = true;
+        if (!formats.isEmpty() && outputDirectory == null) {
+            throw new IllegalStateException("Export formats need an output directory");
+        }
+        // Encode threads already run side by side
+        exporter.setParallelFormats(false);
+        pending = new ArrayBlockingQueue<>(queueCapacity);
+        decoded = new ArrayBlockingQueue<>(queueCapacity);
+        processed = new ArrayBlockingQueue<>(queueCapacity);
+        encodersDone = new CountDownLatch(encodeThreads);
+        stats.startNanos = System.nanoTime();
+
+        AtomicInteger decoders = new AtomicInteger(decodeThreads);
+        for (int i = 0; i < decodeThreads; i++) {
+            startThread("batch-decode-" + i, () -> {
+                // The last thread out passes END on however it leaves, or
+                // finish() would wait for the encoders forever
+                try {
+                    while (true) {
+                        Item item = pending.take();
+                        if (item == END) break;
+                        decoded.put(decode(item));
+                    }
+                } finally {
+                    if (decoders.decrementAndGet() == 0) endStage(decoded, processThreads);
+                }
+            });
+        }
+        AtomicInteger processors = new AtomicInteger(processThreads);
+        for (int i = 0; i < processThreads; i++) {
+            startThread("batch-process-" + i, () -> {
+                try {
+                    while (true) {
+                        Item item = decoded.take();
+                        if (item == END) break;
+                        processed.put(process(item));
+                    }
+                } finally {
+                    if (processors.decrementAndGet() == 0) endStage(processed, encodeThreads);
+                }
+            });
+        }
+        for (int i = 0; i < encodeThreads; i++) {
+            startThread("batch-encode-" + i, () -> {
+                try {
+                    while (true) {
+                        Item item = processed.take();
+                        if (item == END) break;
+                        finish(encode(item));
+                    }
+                } finally {
+                    encodersDone.countDown();
+                }
+            });
+        }
+    }
+
+    // Queues a file for decoding, blocking while the pipeline is full
+    public void submit(File file) throws InterruptedException {
+        pending.put(admit(file, System.nanoTime()));
+    }
+
+    // Queues a file only if there is room now; false leaves it to the caller
+    public boolean offer(File file) {
+        return offer(file, System.nanoTime());
+    }
+
+    // Same, for a file that has been ready since readyNanos (a
+    // System.nanoTime() value) and waited for room; lagNanos counts from it
+    public boolean offer(File file, long readyNanos) {
+        Item item = admit(file, readyNanos);
+        if (pending.offer(item)) return true;
+        inFlight.remove(item);
+        stats.submitted.decrementAndGet();
+        return false;
+    }
+
+    private Item admit(File file, long readyNanos) {
+        if (!started) throw new IllegalStateException("Pipeline not started");
+        Item item = new Item(file);
+        item.submitNanos = System.nanoTime();
+        item.readyNanos = Math.min(readyNanos, item.submitNanos);
+        inFlight.add(item);
+        stats.submitted.incrementAndGet();
+        return item;
+    }
+
+    // Signals that no more files will come and waits for the last image
+    public Report finish() throws InterruptedException {
+        endStage(pending, decodeThreads);
+        encodersDone.await();
+        return report();
+    }
+
+    // Counts and latencies so far; safe to call while images are in flight
+    public Report report() {
+        return new Report(stats, System.nanoTime() - stats.startNanos);
+    }
+
+    // Images waiting in each queue: pending, decoded, processed
+    public int[] queueDepths() {
+        return new int[] { pending.size(), decoded.size(), processed.size() };
+    }
+
+    // Images submitted but not yet through the encoders
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    // How long the oldest image still in the pipeline has been ready,
+    // counting any wait before it was offered, in nanoseconds; 0 when the
+    // pipeline is empty
+    public long lagNanos() {
+        long now = System.nanoTime();
+        long oldest = 0;
+        for (Item item : inFlight) {
+            oldest = Math.max(oldest, now - item.readyNanos);
+        }
+        return oldest;
+    }
+
+    private static void endStage(BlockingQueue<Item> next, int consumers)
+        throws InterruptedException {
+        for (int i = 0; i < consumers; i++) {
+            next.put(END);
+        }
+    }
+
+    private interface StageLoop {
+        void run() throws InterruptedException;
+    }
+
+    private static void startThread(String name, StageLoop loop) {
+        Thread thread = new Thread(() -> {
+            try {
+                loop.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private Item decode(Item item) {
+        File file = item.file;
+        item.startNanos = System.nanoTime();
+        try {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                item.error = "not a readable image";
+            } else {
+                item.raster = Raster.read(image);
+                item.width = image.getWidth();
+                item.height = image.getHeight();
+                stats.bytesIn.addAndGet(file.length());
+            }
+        } catch (Throwable e) {
+            // An OutOfMemoryError on a huge file fails that file only
+            item.raster = null;
+            item.error = describe(e);
+        }
+        item.decodeNanos = System.nanoTime() - item.startNanos;
+        return item;
+    }
+
+    private Item process(Item item) {
+        if (item.error != null) return item;
+        long start = System.nanoTime();
+        try {
+            Raster raster = item.raster;
+            for (String filter : filters) {
+                raster = FilterChain.preset(filter, raster.getWidth(), raster.getHeight())
+                    .apply(raster);
+            }
+            if (analyze) {
+                item.histogram = ColorHistogram.compute(raster, topColors);
+            }
+            item.raster = raster;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            item.error = "interrupted";
+        } catch (Throwable e) {
+            item.raster = null;
+            item.error = describe(e);
+        }
+        item.processNanos = System.nanoTime() - start;
+        return item;
+    }
+
+    private Item encode(Item item) {
+        if (item.error != null || formats.isEmpty()) return item;
+        long start = System.nanoTime();
+        try {
+            // exportAll swaps the base's extension for each format's, so the
+            // base gets one of its own and the source's stays in the stem:
+            // photo.jpg and photo.png export to photo.jpg.png and
+            // photo.png.png rather than both writing photo.png
+            String name = item.file.getName() + ".out";
+            item.outcomes = exporter.exportAll(
+                item.raster,
+                formats,
+                new File(outputDirectory, name),
+                null
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            item.error = "interrupted";
+        } catch (Throwable e) {
+            item.error = describe(e);
+        }
+        item.encodeNanos = System.nanoTime() - start;
+        return item;
+    }
+
+    private void finish(Item item) {
+        // Drop the pixels now; the listener only needs the summary
+        item.raster = null;
+        // A listener that throws fails the item, not the encode thread
+        if (listener != null) {
+            try {
+                listener.accept(item);
+            } catch (Throwable e) {
+                if (item.error == null) item.error = describe(e);
+            }
+        }
+        stats.record(item);
+        inFlight.remove(item);
+    }
+
+    private static String describe(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    private static class Stats {
+
+        private long startNanos;
+        private final AtomicInteger submitted = new AtomicInteger();
+        private final AtomicLong bytesIn = new AtomicLong();
+        private final Latencies wait = new Latencies();
+        private final Latencies decode = new Latencies();
+        private final Latencies process = new Latencies();
+        private final Latencies encode = new Latencies();
+        private final Latencies total = new Latencies();
+        private int completed;
+        private int failed;
+
+        synchronized void record(Item item) {
+            completed++;
+            if (item.isFailed()) failed++;
+            wait.add(item.startNanos - item.submitNanos);
+            decode.add(item.decodeNanos);
+            if (item.processNanos > 0) process.add(item.processNanos);
+            if (item.encodeNanos > 0) encode.add(item.encodeNanos);
+            total.add(System.nanoTime() - item.submitNanos);
+        }
+    }
+
+    // Latency samples of one stage, in nanoseconds. Keeps the most recent
+    // WINDOW samples, so a long-running pipeline reports current latencies
+    // in bounded memory; shorter runs keep every sample.
+    public static class Latencies {
+
+        private static final int WINDOW = 4096;
+
+        private long[] samples = new long[64];
+        private int count;
+        private int next;
+
+        synchronized void add(long nanos) {
+            if (count == samples.length && count < WINDOW) {
+                samples = Arrays.copyOf(samples, Math.min(WINDOW, count * 2));
+            }
+            samples[next] = nanos;
+            next = (next + 1) % WINDOW;
+            if (count < WINDOW) count++;
+        }
+
+        synchronized Latencies copy() {
+            Latencies copy = new Latencies();
+            copy.samples = Arrays.copyOf(samples, Math.max(1, count));
+            copy.count = count;
+            Arrays.sort(copy.samples, 0, count);
+            return copy;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        // Nearest-rank percentile, p in (0, 100]; 0 with no samples
+        public long percentile(double p) {
+            if (count == 0) return 0;
+            int rank = (int) Math.ceil(p / 100 * count);
+            return samples[Math.max(0, Math.min(count - 1, rank - 1))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+                percentile(50) / 1e6,
+                percentile(90) / 1e6,
+                percentile(99) / 1e6,
+                percentile(100) / 1e6
+            );
+        }
+    }
+
+    public static class Report {
+
+        private final int submitted;
+        private final int completed;
+        private final int failed;
+        private final long bytesIn;
+        private final long wallNanos;
+        private final Latencies wait;
+        private final Latencies decode;
+        private final Latencies process;
+        private final Latencies encode;
+        private final Latencies total;
+
+        private Report(Stats stats, long wallNanos) {
+            synchronized (stats) {
+                this.completed = stats.completed;
+                this.failed = stats.failed;
+                this.wait = stats.wait.copy();
+                this.decode = stats.decode.copy();
+                this.process = stats.process.copy();
+                this.encode = stats.encode.copy();
+                this.total = stats.total.copy();
+            }
+            this.submitted = stats.submitted.get();
+            this.bytesIn = stats.bytesIn.get();
+            this.wallNanos = wallNanos;
+        }
+
+        public int getSubmitted() {
+            return submitted;
+        }
+
+        public int getCompleted() {
+            return completed;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public double getImagesPerSecond() {
+            return wallNanos == 0 ? 0 : completed * 1e9 / wallNanos;
+        }
+
+        // Input file bytes decoded per second
+        public double getMegabytesPerSecond() {
+            return wallNanos == 0 ? 0 : bytesIn / 1e6 * 1e9 / wallNanos;
+        }
+
+        // Submit to decode start: time spent queued for a decoder
+        public Latencies getWait() {
+            return wait;
+        }
+
+        public Latencies getDecode() {
+            return decode;
+        }
+
+        public Latencies getProcess() {
+            return process;
+        }
+
+        public Latencies getEncode() {
+            return encode;
+        }
+
+        // Submit to encode end, queueing included
+        public Latencies getTotal() {
+            return total;
+        }
+
+        public List<String> describe() {
+            List<String> lines = new ArrayList<>();
+            lines.add(String.format(
+                "%d images (%d failed) in %.2f s: %.2f images/s, %.2f MB/s",
+                completed,
+                failed,
+                wallNanos / 1e9,
+                getImagesPerSecond(),
+                getMegabytesPerSecond()
+            ));
+            lines.add("wait    " + wait);
+            lines.add("decode  " + decode);
+            lines.add("process " + process);
+            lines.add("encode  " + encode);
+            lines.add("total   " + total);
+            return Collections.unmodifiableList(lines);
+        }
+
+        @Override
+        public String toString() {
+            return String.join("\n", describe());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package jfxlabproj.filter;
+
+// Compositing of straight ARGB colours
+final class Blend {
+
+    private Blend() {}
+
+    // Porter-Duff source over: top drawn over bottom
+    static int over(int top, int bottom) {
+        int ta = top >>> 24;
+        if (ta == 255) return top;
+        int ba = bottom >>> 24;
+        if (ta == 0) return bottom;
+        // Bottom weight, in 255ths of coverage, left after the top
+        int bw = ba * (255 - ta) / 255;
+        int a = ta + bw;
+        if (a == 0) return 0;
+        int r = (((top >> 16) & 0xFF) * ta + ((bottom >> 16) & 0xFF) * bw) / a;
+        int g = (((top >> 8) & 0xFF) * ta + ((bottom >> 8) & 0xFF) * bw) / a;
+        int b = ((top & 0xFF) * ta + (bottom & 0xFF) * bw) / a;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    // Mixes rgb towards color by weight (0-255), keeping base's alpha
+    static int tint(int base, int color, int weight) {
+        int keep = 255 - weight;
+        int r = (((base >> 16) & 0xFF) * keep + ((color >> 16) & 0xFF) * weight) / 255;
+        int g = (((base >> 8) & 0xFF) * keep + ((color >> 8) & 0xFF) * weight) / 255;
+        int b = ((base & 0xFF) * keep + (color & 0xFF) * weight) / 255;
+        return (base & 0xFF000000) | (r << 16) | (g << 8) | b;
+    }
+
+    // Divides by (1 - amount) and clamps, like JavaFX's spread and choke
+    static int harden(int value, double amount) {
+        if (amount <= 0) return value;
+        if (amount >= 1) return value > 0 ? 255 : 0;
+        return (int) Math.min(255, value / (1 - amount));
+    }
+}
@@ -0,0 +1,89 @@
+package jfxlabproj.filter;
+
+import jfxlabproj.raster.Raster;
+import jfxlabproj.raster.TileScheduler;
+
+// JavaFX Bloom: pixels brighter than the threshold glow. The bright pixels
+// are blurred and added back onto the image.
+public class BloomFilter implements RasterFilter {
+
+    // Blur radius of the glow, in pixels
+    private static final double GLOW_RADIUS = 10;
+
+    private final double threshold;
+    private final double glowRadius;
+
+    public BloomFilter(double threshold) {
+        this(threshold, 1);
+    }
+
+    // The glow widened scale times, for an image that much larger than
+    // the one the effect was judged on
+    public BloomFilter(double threshold, double scale) {
+        this.threshold = threshold;
+        this.glowRadius = GLOW_RADIUS * scale;
+    }
+
+    @Override
+    public int getReach() {
+        return BoxBlur.gaussian(glowRadius).getReach();
+    }
+
+    @Override
+    public Raster apply(Raster source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] in = source.array();
+        int cutoff = (int) Math.round(threshold * 255);
+
+        // Dim pixels become opaque black, which adds nothing
+        Raster bright = new Raster(width, height);
+        int[] glow = bright.array();
+        TileScheduler.shared().forEachTile(
+            "bloom-bright",
+            width,
+            height,
+            0,
+            (x0, y0, x1, y1) -> {
+                for (int y = y0; y < y1; y++) {
+                    int from = source.rowOffset(y);
+                    for (int x = x0; x < x1; x++) {
+                        int argb = BoxBlur.premultiply(in[from + x]);
+                        int luma = (((argb >> 16) & 0xFF) * 77 +
+                                ((argb >> 8) & 0xFF) * 150 +
+                                (argb & 0xFF) * 29) >> 8;
+                        glow[y * width + x] = luma > cutoff
+                            ? argb | 0xFF000000
+                            : 0xFF000000;
+                    }
+                }
+            }
+        );
+        int[] blurred = BoxBlur.gaussian(glowRadius).apply(bright).array();
+
+        Raster target = new Raster(width, height);
+        int[] out = target.array();
+        TileScheduler.shared().forEachTile(
+            "bloom-add",
+            width,
+            height,
+            0,
+            (x0, y0, x1, y1) -> {
+                for (int y = y0; y < y1; y++) {
+                    int from = source.rowOffset(y);
+                    for (int x = x0; x < x1; x++) {
+                        out[y * width + x] = add(in[from + x], blurred[y * width + x]);
+                    }
+                }
+            }
+        );
+        return target;
+    }
+
+    private static int add(int argb, int glow) {
+        int r = Math.min(255, ((argb >> 16) & 0xFF) + ((glow >> 16) & 0xFF));
+        int g = Math.min(255, ((argb >> 8) & 0xFF) + ((glow >> 8) & 0xFF));
+        int b = Math.min(255, (argb & 0xFF) + (glow & 0xFF));
+        return (argb & 0xFF000000) | (r << 16) | (g << 8) | b;
+    }
+}
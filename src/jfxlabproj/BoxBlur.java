@@ -0,0 +1,221 @@
+package jfxlabproj.filter;
+
+import jfxlabproj.raster.Raster;
+import jfxlabproj.raster.TileScheduler;
+
+// Separable box blur with running sums, so each pass costs the same per
+// pixel whatever the radius. Three passes approximate a Gaussian.
+public class BoxBlur implements RasterFilter {
+
+    private final int radius;
+    private final int passes;
+
+    public BoxBlur(int radius, int passes) {
+        this.radius = Math.max(0, radius);
+        this.passes = Math.max(1, passes);
+    }
+
+    // Matches a JavaFX GaussianBlur of the given radius: sigma = radius / 3,
+    // and three boxes of width w have variance 3 (w^2 - 1) / 12
+    public static BoxBlur gaussian(double radius) {
+        return new BoxBlur(boxRadius(radius), 3);
+    }
+
+    static int boxRadius(double gaussianRadius) {
+        double sigma = gaussianRadius / 3;
+        double width = Math.sqrt(4 * sigma * sigma + 1);
+        return (int) Math.max(0, Math.round((width - 1) / 2));
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    public int getPasses() {
+        return passes;
+    }
+
+    @Override
+    public int getReach() {
+        return radius * passes;
+    }
+
+    // Blurs premultiplied colour so transparent pixels do not bleed their
+    // colour; edges repeat the border pixels so the image does not darken.
+    // Tiles run in parallel, each blurring itself plus a halo of
+    // passes * radius pixels, which is as far as the passes carry a pixel;
+    // halos stop at the image edges, so the result matches one whole-image
+    // blur exactly.
+    @Override
+    public Raster apply(Raster source) {
+        Raster target = new Raster(source.getWidth(), source.getHeight());
+        TileScheduler.shared().forEachTile(
+            "box-blur",
+            source.getWidth(),
+            source.getHeight(),
+            radius * passes,
+            (x0, y0, x1, y1) -> blurTile(source, target.array(), x0, y0, x1, y1)
+        );
+        return target;
+    }
+
+    private void blurTile(Raster source, int[] out, int x0, int y0, int x1, int y1) {
+        int width = source.getWidth();
+        int halo = radius * passes;
+        int bx0 = Math.max(0, x0 - halo);
+        int by0 = Math.max(0, y0 - halo);
+        int bw = Math.min(width, x1 + halo) - bx0;
+        int bh = Math.min(source.getHeight(), y1 + halo) - by0;
+        int[] in = source.array();
+        int[] pixels = new int[bw * bh];
+        for (int y = 0; y < bh; y++) {
+            int from = source.rowOffset(by0 + y) + bx0;
+            for (int x = 0; x < bw; x++) {
+                pixels[y * bw + x] = premultiply(in[from + x]);
+            }
+        }
+
+        if (radius > 0) {
+            int[] scratch = new int[bw * bh];
+            for (int pass = 0; pass < passes; pass++) {
+                for (int y = 0; y < bh; y++) {
+                    blurArgbLine(pixels, scratch, y * bw, 1, bw, radius);
+                }
+                for (int x = 0; x < bw; x++) {
+                    blurArgbLine(scratch, pixels, x, bw, bh, radius);
+                }
+            }
+        }
+
+        for (int y = y0; y < y1; y++) {
+            int from = (y - by0) * bw - bx0;
+            for (int x = x0; x < x1; x++) {
+                out[y * width + x] = unpremultiply(pixels[from + x]);
+            }
+        }
+    }
+
+    // Blurs one 0-255 channel in place; cells beyond the edges read as
+    // outside. Tiled like apply, with the same exact result.
+    public static void blurPlane(
+        int[] plane,
+        int width,
+        int height,
+        int radius,
+        int passes,
+        int outside
+    ) {
+        if (radius <= 0 || width == 0 || height == 0) return;
+        int[] blurred = new int[width * height];
+        TileScheduler.shared().forEachTile(
+            "blur-plane",
+            width,
+            height,
+            radius * passes,
+            (x0, y0, x1, y1) -> {
+                int halo = radius * passes;
+                int bx0 = Math.max(0, x0 - halo);
+                int by0 = Math.max(0, y0 - halo);
+                int bw = Math.min(width, x1 + halo) - bx0;
+                int bh = Math.min(height, y1 + halo) - by0;
+                int[] cells = new int[bw * bh];
+                for (int y = 0; y < bh; y++) {
+                    System.arraycopy(plane, (by0 + y) * width + bx0, cells, y * bw, bw);
+                }
+                int[] scratch = new int[bw * bh];
+                for (int pass = 0; pass < passes; pass++) {
+                    for (int y = 0; y < bh; y++) {
+                        blurPlaneLine(cells, scratch, y * bw, 1, bw, radius, outside);
+                    }
+                    for (int x = 0; x < bw; x++) {
+                        blurPlaneLine(scratch, cells, x, bw, bh, radius, outside);
+                    }
+                }
+                for (int y = y0; y < y1; y++) {
+                    int from = (y - by0) * bw + x0 - bx0;
+                    System.arraycopy(cells, from, blurred, y * width + x0, x1 - x0);
+                }
+            }
+        );
+        System.arraycopy(blurred, 0, plane, 0, plane.length);
+    }
+
+    private static void blurPlaneLine(
+        int[] src,
+        int[] dst,
+        int start,
+        int step,
+        int length,
+        int radius,
+        int outside
+    ) {
+        int window = 2 * radius + 1;
+        int sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            sum += i < 0 || i >= length ? outside : src[start + i * step];
+        }
+        for (int i = 0; i < length; i++) {
+            dst[start + i * step] = (sum + window / 2) / window;
+            int leaving = i - radius;
+            int entering = i + radius + 1;
+            sum -= leaving < 0 ? outside : src[start + leaving * step];
+            sum += entering >= length ? outside : src[start + entering * step];
+        }
+    }
+
+    private static void blurArgbLine(
+        int[] src,
+        int[] dst,
+        int start,
+        int step,
+        int length,
+        int radius
+    ) {
+        int window = 2 * radius + 1;
+        int half = window / 2;
+        int last = length - 1;
+        int sa = 0;
+        int sr = 0;
+        int sg = 0;
+        int sb = 0;
+        for (int i = -radius; i <= radius; i++) {
+            int argb = src[start + Math.min(last, Math.max(0, i)) * step];
+            sa += argb >>> 24;
+            sr += (argb >> 16) & 0xFF;
+            sg += (argb >> 8) & 0xFF;
+            sb += argb & 0xFF;
+        }
+        for (int i = 0; i < length; i++) {
+            dst[start + i * step] = ((sa + half) / window << 24) |
+                ((sr + half) / window << 16) |
+                ((sg + half) / window << 8) |
+                (sb + half) / window;
+            int leaving = src[start + Math.max(0, i - radius) * step];
+            int entering = src[start + Math.min(last, i + radius + 1) * step];
+            sa += (entering >>> 24) - (leaving >>> 24);
+            sr += ((entering >> 16) & 0xFF) - ((leaving >> 16) & 0xFF);
+            sg += ((entering >> 8) & 0xFF) - ((leaving >> 8) & 0xFF);
+            sb += (entering & 0xFF) - (leaving & 0xFF);
+        }
+    }
+
+    static int premultiply(int argb) {
+        int a = argb >>> 24;
+        if (a == 255) return argb;
+        if (a == 0) return 0;
+        int r = ((argb >> 16) & 0xFF) * a / 255;
+        int g = ((argb >> 8) & 0xFF) * a / 255;
+        int b = (argb & 0xFF) * a / 255;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    static int unpremultiply(int argb) {
+        int a = argb >>> 24;
+        if (a == 255) return argb;
+        if (a == 0) return 0;
+        int r = Math.min(255, ((argb >> 16) & 0xFF) * 255 / a);
+        int g = Math.min(255, ((argb >> 8) & 0xFF) * 255 / a);
+        int b = Math.min(255, (argb & 0xFF) * 255 / a);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+}
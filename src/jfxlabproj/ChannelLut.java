@@ -0,0 +1,56 @@
+package jfxlabproj.filter;
+
+// Independent 256-entry tables for R, G, B and A. Chaining tables is
+// exact, clamping included, so any run of per-channel steps collapses
+// into one.
+public class ChannelLut implements PointFilter {
+
+    private final int[] red;
+    private final int[] green;
+    private final int[] blue;
+    private final int[] alpha;
+
+    public ChannelLut(int[] red, int[] green, int[] blue, int[] alpha) {
+        this.red = red.clone();
+        this.green = green.clone();
+        this.blue = blue.clone();
+        this.alpha = alpha.clone();
+    }
+
+    // This table followed by next
+    public ChannelLut then(ChannelLut next) {
+        int[][] tables = new int[4][256];
+        for (int value = 0; value < 256; value++) {
+            tables[0][value] = next.red[red[value]];
+            tables[1][value] = next.green[green[value]];
+            tables[2][value] = next.blue[blue[value]];
+            tables[3][value] = next.alpha[alpha[value]];
+        }
+        return new ChannelLut(tables[0], tables[1], tables[2], tables[3]);
+    }
+
+    public int filter(int argb) {
+        return (alpha[argb >>> 24] << 24) |
+            (red[(argb >> 16) & 0xFF] << 16) |
+            (green[(argb >> 8) & 0xFF] << 8) |
+            blue[argb & 0xFF];
+    }
+
+    @Override
+    public int filter(int argb, int x, int y, int width, int height) {
+        return filter(argb);
+    }
+
+    @Override
+    public void filterRow(
+        int[] argb,
+        int from,
+        int to,
+        int x,
+        int y,
+        int width,
+        int height
+    ) {
+        PixelKernels.get().lut(red, green, blue, alpha, argb, from, to);
+    }
+}
@@ -0,0 +1,527 @@
+package jfxlabproj.analysis;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import jfxlabproj.raster.PixelSource;
+import jfxlabproj.raster.Raster;
+import jfxlabproj.raster.ResultCache;
+import jfxlabproj.raster.TileScheduler;
+import jfxlabproj.raster.TiledImage;
+
+public class ColorHistogram {
+
+    private static final int COLOR_SPACE = 1 << 24;
+    // Images at least this large count into dense 2^24 tables instead of hash tables
+    private static final int DENSE_PIXEL_THRESHOLD = 1 << 22;
+
+    // Stores the top colours and totals; timings are not kept
+    public static final ResultCache.Codec<Result> CODEC = new ResultCache.Codec<>() {
+        @Override
+        public long bytes(Result result) {
+            return 64 + 8L * result.size();
+        }
+
+        @Override
+        public void write(Result result, DataOutputStream out) throws IOException {
+            out.writeInt(result.size());
+            for (int i = 0; i < result.size(); i++) {
+                out.writeInt(result.colors[i]);
+                out.writeInt(result.counts[i]);
+            }
+            out.writeInt(result.distinctColors);
+            out.writeLong(result.totalPixels);
+        }
+
+        @Override
+        public Result read(DataInputStream in) throws IOException {
+            int size = in.readInt();
+            if (size < 0 || size > COLOR_SPACE) {
+                throw new IOException("Bad histogram size " + size);
+            }
+            int[] colors = new int[size];
+            int[] counts = new int[size];
+            for (int i = 0; i < size; i++) {
+                colors[i] = in.readInt();
+                counts[i] = in.readInt();
+            }
+            return new Result(colors, counts, in.readInt(), in.readLong());
+        }
+    };
+
+    // Counts the packed 24-bit RGB value of every pixel in a raster. Bands
+    // of rows run on the shared tile scheduler and count into one table
+    // per worker thread, so stolen bands add no tables to merge.
+    public static Result compute(Raster raster, int topK)
+        throws InterruptedException {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int pixels = width * height;
+        boolean dense = pixels >= DENSE_PIXEL_THRESHOLD;
+        TileScheduler scheduler = TileScheduler.shared();
+        int bandRows = scheduler.getTileSize();
+        int bands = Math.max(1, (height + bandRows - 1) / bandRows);
+        if (dense && bands > maxDenseTables()) {
+            // Never more workers than bands, so at most that many tables
+            bands = maxDenseTables();
+            bandRows = (height + bands - 1) / bands;
+        }
+
+        Map<String, Long> phases = new LinkedHashMap<>();
+        Map<String, TileScheduler.Run> runs = new LinkedHashMap<>();
+        // Count phase: every worker fills its own table, no shared state
+        long start = System.nanoTime();
+        Map<Thread, Object> tables = new ConcurrentHashMap<>();
+        int rowsPerBand = bandRows;
+        runs.put(
+            "count",
+            scheduler.forEachInterruptibly("histogram-count", bands, band -> {
+                Object table = tables.computeIfAbsent(
+                    Thread.currentThread(),
+                    thread -> dense ? new int[COLOR_SPACE] : new CountTable(1024)
+                );
+                int startY = Math.min(height, band * rowsPerBand);
+                int endY = Math.min(height, startY + rowsPerBand);
+                if (dense) {
+                    countDense(raster, (int[]) table, startY, endY);
+                } else {
+                    countSparse(raster, (CountTable) table, startY, endY);
+                }
+            })
+        );
+        phases.put("count", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        List<Object> counted = new ArrayList<>(tables.values());
+        Result result;
+        if (dense) {
+            int[] merged = mergeDense(scheduler, counted, runs);
+            phases.put("merge", System.nanoTime() - start);
+            start = System.nanoTime();
+            result = selectDense(merged, topK, pixels);
+        } else {
+            CountTable merged = mergeSparse(counted);
+            phases.put("merge", System.nanoTime() - start);
+            start = System.nanoTime();
+            result = selectSparse(merged, topK, pixels);
+        }
+        phases.put("top-" + topK, System.nanoTime() - start);
+        result.phaseNanos.putAll(phases);
+        result.runs.putAll(runs);
+        return result;
+    }
+
+    // Counts a source that may be too large to hold, one tile at a time in
+    // row-major order, into a single dense table: memory stays at 64 MB
+    // plus a tile whatever the image size. Rasters go to compute(Raster).
+    public static Result compute(PixelSource source, int topK)
+        throws IOException, InterruptedException {
+        if (source instanceof Raster) {
+            return compute((Raster) source, topK);
+        }
+        int width = source.getWidth();
+        int height = source.getHeight();
+        long pixels = (long) width * height;
+        if (pixels > Integer.MAX_VALUE) {
+            // Counts are ints; one colour could overflow past this
+            throw new IllegalArgumentException(
+                "Colour analysis is limited to " + Integer.MAX_VALUE + " pixels"
+            );
+        }
+        int tile = source instanceof TiledImage
+            ? ((TiledImage) source).getTileSize()
+            : TiledImage.DEFAULT_TILE_SIZE;
+
+        Map<String, Long> phases = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        int[] table = new int[COLOR_SPACE];
+        for (int y = 0; y < height; y += tile) {
+            for (int x = 0; x < width; x += tile) {
+                Raster piece = source.region(
+                    x,
+                    y,
+                    Math.min(tile, width - x),
+                    Math.min(tile, height - y)
+                );
+                countDense(piece, table, 0, piece.getHeight());
+            }
+        }
+        phases.put("read+count", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        Result result = selectDense(table, topK, (int) pixels);
+        phases.put("top-" + topK, System.nanoTime() - start);
+        result.phaseNanos.putAll(phases);
+        return result;
+    }
+
+    private static int maxDenseTables() {
+        Runtime runtime = Runtime.getRuntime();
+        long free =
+            runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        // Leave half of the free heap for everything else
+        long tables = (free / 2) / (COLOR_SPACE * 4L);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, tables));
+    }
+
+    private static void countDense(
+        Raster raster,
+        int[] table,
+        int startY,
+        int endY
+    ) {
+        int[] argb = raster.array();
+        int width = raster.getWidth();
+        for (int y = startY; y < endY; y++) {
+            int row = raster.rowOffset(y);
+            for (int i = row; i < row + width; i++) {
+                table[argb[i] & 0xFFFFFF]++;
+            }
+        }
+    }
+
+    private static void countSparse(
+        Raster raster,
+        CountTable table,
+        int startY,
+        int endY
+    ) {
+        int[] argb = raster.array();
+        int width = raster.getWidth();
+        int last = -1;
+        int run = 0;
+        for (int y = startY; y < endY; y++) {
+            int row = raster.rowOffset(y);
+            for (int i = row; i < row + width; i++) {
+                int rgb = argb[i] & 0xFFFFFF;
+                // Neighbouring pixels are often identical, so batch runs
+                if (rgb == last) {
+                    run++;
+                    continue;
+                }
+                if (run > 0) table.add(last, run);
+                last = rgb;
+                run = 1;
+            }
+        }
+        if (run > 0) table.add(last, run);
+    }
+
+    private static int[] mergeDense(
+        TileScheduler scheduler,
+        List<Object> tables,
+        Map<String, TileScheduler.Run> runs
+    ) throws InterruptedException {
+        int[] target = (int[]) tables.get(0);
+        if (tables.size() == 1) return target;
+
+        // Each task sums one slice of the color space across all tables
+        int slices = scheduler.getParallelism() * 4;
+        int slice = (COLOR_SPACE + slices - 1) / slices;
+        runs.put(
+            "merge",
+            scheduler.forEachInterruptibly("histogram-merge", slices, i -> {
+                int from = i * slice;
+                int to = Math.min(COLOR_SPACE, from + slice);
+                for (int t = 1; t < tables.size(); t++) {
+                    int[] source = (int[]) tables.get(t);
+                    for (int c = from; c < to; c++) {
+                        target[c] += source[c];
+                    }
+                }
+            })
+        );
+        return target;
+    }
+
+    private static CountTable mergeSparse(List<Object> tables) {
+        // Merge into the largest table so the fewest entries get re-inserted
+        CountTable target = (CountTable) tables.get(0);
+        for (Object table : tables) {
+            if (((CountTable) table).size() > target.size()) {
+                target = (CountTable) table;
+            }
+        }
+        for (Object table : tables) {
+            if (table != target) {
+                target.addAll((CountTable) table);
+            }
+        }
+        return target;
+    }
+
+    private static Result selectDense(int[] table, int topK, int pixels) {
+        TopColors top = new TopColors(topK);
+        int distinct = 0;
+        for (int rgb = 0; rgb < COLOR_SPACE; rgb++) {
+            int count = table[rgb];
+            if (count != 0) {
+                distinct++;
+                top.offer(rgb, count);
+            }
+        }
+        return top.toResult(distinct, pixels);
+    }
+
+    private static Result selectSparse(CountTable table, int topK, int pixels) {
+        TopColors top = new TopColors(topK);
+        int[] keys = table.keys;
+        int[] counts = table.counts;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != CountTable.EMPTY) {
+                top.offer(keys[i], counts[i]);
+            }
+        }
+        return top.toResult(table.size(), pixels);
+    }
+
+    // Open-addressing int -> int counter keyed on packed RGB values
+    public static class CountTable {
+
+        static final int EMPTY = -1;
+
+        int[] keys;
+        int[] counts;
+        private int size;
+        private int mask;
+
+        public CountTable(int expected) {
+            int capacity = Integer.highestOneBit(
+                Math.max(16, expected * 2) - 1
+            ) << 1;
+            keys = new int[capacity];
+            counts = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            mask = capacity - 1;
+        }
+
+        public void add(int key, int count) {
+            int slot = mix(key) & mask;
+            while (true) {
+                int existing = keys[slot];
+                if (existing == key) {
+                    counts[slot] += count;
+                    return;
+                }
+                if (existing == EMPTY) {
+                    keys[slot] = key;
+                    counts[slot] = count;
+                    if (++size * 2 > keys.length) grow();
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        public int get(int key) {
+            int slot = mix(key) & mask;
+            while (true) {
+                int existing = keys[slot];
+                if (existing == key) return counts[slot];
+                if (existing == EMPTY) return 0;
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        public void addAll(CountTable other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] != EMPTY) {
+                    add(other.keys[i], other.counts[i]);
+                }
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            mask = keys.length - 1;
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    add(oldKeys[i], oldCounts[i]);
+                }
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // Bounded min-heap of (color, count) pairs held in primitive arrays
+    static class TopColors {
+
+        private final int[] colors;
+        private final int[] counts;
+        private int size;
+
+        TopColors(int capacity) {
+            colors = new int[capacity];
+            counts = new int[capacity];
+        }
+
+        void offer(int color, int count) {
+            if (colors.length == 0) return;
+            if (size < colors.length) {
+                colors[size] = color;
+                counts[size] = count;
+                siftUp(size++);
+            } else if (less(colors[0], counts[0], color, count)) {
+                colors[0] = color;
+                counts[0] = count;
+                siftDown(0);
+            }
+        }
+
+        Result toResult(int distinct, long pixels) {
+            // Drain the heap from the smallest end to get descending order
+            int n = size;
+            int[] sortedColors = new int[n];
+            int[] sortedCounts = new int[n];
+            for (int i = n - 1; i >= 0; i--) {
+                sortedColors[i] = colors[0];
+                sortedCounts[i] = counts[0];
+                size--;
+                colors[0] = colors[size];
+                counts[0] = counts[size];
+                siftDown(0);
+            }
+            return new Result(sortedColors, sortedCounts, distinct, pixels);
+        }
+
+        // Lower count ranks lower; ties rank the larger color value lower
+        private static boolean less(int c1, int n1, int c2, int n2) {
+            return n1 != n2 ? n1 < n2 : c1 > c2;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!less(colors[i], counts[i], colors[parent], counts[parent])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                int right = left + 1;
+                int smallest = i;
+                if (
+                    left < size &&
+                    less(colors[left], counts[left], colors[smallest], counts[smallest])
+                ) smallest = left;
+                if (
+                    right < size &&
+                    less(colors[right], counts[right], colors[smallest], counts[smallest])
+                ) smallest = right;
+                if (smallest == i) return;
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int color = colors[a];
+            colors[a] = colors[b];
+            colors[b] = color;
+            int count = counts[a];
+            counts[a] = counts[b];
+            counts[b] = count;
+        }
+    }
+
+    public static class Result {
+
+        private final int[] colors;
+        private final int[] counts;
+        private final int distinctColors;
+        private final long totalPixels;
+        private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+        private final Map<String, TileScheduler.Run> runs = new LinkedHashMap<>();
+
+        Result(int[] colors, int[] counts, int distinctColors, long totalPixels) {
+            this.colors = colors;
+            this.counts = counts;
+            this.distinctColors = distinctColors;
+            this.totalPixels = totalPixels;
+        }
+
+        public int size() {
+            return colors.length;
+        }
+
+        public int getColor(int rank) {
+            return colors[rank];
+        }
+
+        public int getCount(int rank) {
+            return counts[rank];
+        }
+
+        public String getHex(int rank) {
+            return String.format("#%06X", colors[rank]);
+        }
+
+        public int getDistinctColors() {
+            return distinctColors;
+        }
+
+        public long getTotalPixels() {
+            return totalPixels;
+        }
+
+        public Map<String, Long> getPhaseNanos() {
+            return phaseNanos;
+        }
+
+        // Scheduler runs behind the parallel phases, keyed by phase
+        public Map<String, TileScheduler.Run> getRuns() {
+            return runs;
+        }
+
+        // Only the final top-K entries are ever turned into strings
+        public List<String> describeTopColors() {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < colors.length; i++) {
+                lines.add(String.format("%s: %d pixels", getHex(i), counts[i]));
+            }
+            return lines;
+        }
+
+        public String describeTimings() {
+            List<String> parts = new ArrayList<>();
+            for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+                TileScheduler.Run run = runs.get(phase.getKey());
+                parts.add(
+                    run == null
+                        ? String.format("%s %.1f ms", phase.getKey(), phase.getValue() / 1e6)
+                        : String.format(
+                            "%s %.1f ms (%.0f tiles/s)",
+                            phase.getKey(),
+                            phase.getValue() / 1e6,
+                            run.getTilesPerSecond()
+                        )
+                );
+            }
+            return String.join(", ", parts);
+        }
+    }
+}
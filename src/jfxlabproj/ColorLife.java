@@ -0,0 +1,216 @@
+package jfxlabproj.gameoflife;
+
+import java.util.Arrays;
+
+// Keeps the image's colour by running one board per bitplane: the top
+// bitsPerChannel bits of red, green and blue each live on their own board,
+// and a cell's colour is read back from the bits alive at it. All planes
+// step together, so every stripe of a simulation advances every plane.
+public class ColorLife extends Automaton {
+
+    private static final int CHANNELS = 3;
+
+    private final int width;
+    private final int height;
+    private final int bitsPerChannel;
+    // Plane channel * bitsPerChannel + bit; bit 0 is the channel's top bit
+    private final Automaton[] planes;
+    // Maps a channel value holding only its top bitsPerChannel bits to 0-255
+    private final int[] levels;
+
+    public ColorLife(Automaton[] planes, int bitsPerChannel) {
+        if (bitsPerChannel < 1 || bitsPerChannel > 8) {
+            throw new IllegalArgumentException(
+                "Bits per channel must be 1-8, not " + bitsPerChannel
+            );
+        }
+        if (planes.length != CHANNELS * bitsPerChannel) {
+            throw new IllegalArgumentException(
+                "Need " + CHANNELS * bitsPerChannel + " planes, not " + planes.length
+            );
+        }
+        this.width = planes[0].getWidth();
+        this.height = planes[0].getHeight();
+        this.bitsPerChannel = bitsPerChannel;
+        this.planes = planes;
+        this.levels = new int[256];
+        int top = (1 << bitsPerChannel) - 1;
+        for (int value = 0; value < 256; value++) {
+            levels[value] = (value >>> (8 - bitsPerChannel)) * 255 / top;
+        }
+    }
+
+    // Runs the thresholded planes under another rule; B3/S23 keeps them packed
+    public static ColorLife withRule(
+        LifeGrid[] seeds,
+        int bitsPerChannel,
+        LifeRule rule
+    ) {
+        Automaton[] planes = new Automaton[seeds.length];
+        for (int i = 0; i < seeds.length; i++) {
+            planes[i] = rule.equals(LifeRule.CONWAY)
+                ? seeds[i]
+                : RuleGrid.fromSeed(seeds[i], rule);
+        }
+        return new ColorLife(planes, bitsPerChannel);
+    }
+
+    public int getBitsPerChannel() {
+        return bitsPerChannel;
+    }
+
+    public int getPlaneCount() {
+        return planes.length;
+    }
+
+    public Automaton getPlane(int channel, int bit) {
+        return planes[channel * bitsPerChannel + bit];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public long getGeneration() {
+        return planes[0].getGeneration();
+    }
+
+    @Override
+    public LifeRule getRule() {
+        return planes[0].getRule();
+    }
+
+    // 1 wherever any plane is alive
+    @Override
+    public int getState(int x, int y) {
+        for (Automaton plane : planes) {
+            if (plane.getState(x, y) == 1) return 1;
+        }
+        return 0;
+    }
+
+    // Live cells summed over every plane
+    @Override
+    public int population() {
+        int count = 0;
+        for (Automaton plane : planes) {
+            count += plane.population();
+        }
+        return count;
+    }
+
+    @Override
+    public int getTileColumns() {
+        return planes[0].getTileColumns();
+    }
+
+    @Override
+    public int getTileRows() {
+        return planes[0].getTileRows();
+    }
+
+    @Override
+    public boolean isTileDirty(int tileX, int tileY) {
+        for (Automaton plane : planes) {
+            if (plane.isTileDirty(tileX, tileY)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void clearDirty() {
+        for (Automaton plane : planes) {
+            plane.clearDirty();
+        }
+    }
+
+    // Writes opaque ARGB for cells [fromX, toX) of row y into out[0..]
+    public void compositeRow(int y, int fromX, int toX, int[] out) {
+        int cells = toX - fromX;
+        Arrays.fill(out, 0, cells, 0);
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            int shift = 16 - 8 * channel;
+            for (int bit = 0; bit < bitsPerChannel; bit++) {
+                Automaton plane = planes[channel * bitsPerChannel + bit];
+                int value = 1 << (7 - bit + shift);
+                if (plane instanceof LifeGrid) {
+                    addPackedBits((LifeGrid) plane, y, fromX, toX, value, out);
+                } else {
+                    for (int x = fromX; x < toX; x++) {
+                        if (plane.getState(x, y) == 1) out[x - fromX] |= value;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < cells; i++) {
+            int rgb = out[i];
+            out[i] = 0xFF000000 |
+                (levels[(rgb >>> 16) & 0xFF] << 16) |
+                (levels[(rgb >>> 8) & 0xFF] << 8) |
+                levels[rgb & 0xFF];
+        }
+    }
+
+    // ORs value into out for every live cell, a word of cells at a time
+    private static void addPackedBits(
+        LifeGrid plane,
+        int y,
+        int fromX,
+        int toX,
+        int value,
+        int[] out
+    ) {
+        long[] words = plane.words();
+        int row = y * plane.getWordsPerRow();
+        int x = fromX;
+        while (x < toX) {
+            long word = words[row + (x >>> 6)] >>> x;
+            int end = Math.min(toX, (x | 63) + 1);
+            if (word == 0) {
+                x = end;
+                continue;
+            }
+            for (; x < end; x++, word >>>= 1) {
+                if ((word & 1L) != 0) out[x - fromX] |= value;
+            }
+        }
+    }
+
+    @Override
+    void stepRows(int startY, int endY) {
+        for (Automaton plane : planes) {
+            plane.stepRows(startY, endY);
+        }
+    }
+
+    @Override
+    void swap() {
+        for (Automaton plane : planes) {
+            plane.swap();
+        }
+    }
+
+    @Override
+    ColorLife emptyCopy() {
+        Automaton[] copies = new Automaton[planes.length];
+        for (int i = 0; i < planes.length; i++) {
+            copies[i] = planes[i].emptyCopy();
+        }
+        return new ColorLife(copies, bitsPerChannel);
+    }
+
+    @Override
+    void copyStateFrom(Automaton other) {
+        ColorLife source = (ColorLife) other;
+        for (int i = 0; i < planes.length; i++) {
+            planes[i].copyStateFrom(source.planes[i]);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package jfxlabproj.filter;
+
+// Affine colour transform: each output channel is a weighted sum of the
+// input R, G, B, A plus an offset, all on the 0-255 scale. Saturation,
+// brightness, contrast and sepia are all of this form, so a run of them
+// composes into one matrix.
+public class ColorMatrix implements PointFilter {
+
+    // Luminance weights used by JavaFX's ColorAdjust and SepiaTone
+    private static final double LUMA_R = 0.3;
+    private static final double LUMA_G = 0.59;
+    private static final double LUMA_B = 0.11;
+
+    // Rows R, G, B, A; columns R, G, B, A, offset
+    private final double[] m;
+    // m in 16.16 fixed point, offsets pre-rounded, for the per-pixel path
+    private final int[] fixed;
+
+    public ColorMatrix(double[] m) {
+        if (m.length != 20) {
+            throw new IllegalArgumentException("Colour matrix needs 4x5 entries");
+        }
+        this.m = m.clone();
+        this.fixed = new int[20];
+        for (int i = 0; i < 20; i++) {
+            double scaled = m[i] * 65536 + (i % 5 == 4 ? 32768 : 0);
+            fixed[i] = (int) Math.round(scaled);
+        }
+    }
+
+    public static ColorMatrix identity() {
+        return new ColorMatrix(new double[] {
+            1, 0, 0, 0, 0,
+            0, 1, 0, 0, 0,
+            0, 0, 1, 0, 0,
+            0, 0, 0, 1, 0,
+        });
+    }
+
+    // -1 is grey, 0 unchanged, positive values boost colour
+    public static ColorMatrix saturation(double saturation) {
+        double s = 1 + saturation;
+        double r = (1 - s) * LUMA_R;
+        double g = (1 - s) * LUMA_G;
+        double b = (1 - s) * LUMA_B;
+        return new ColorMatrix(new double[] {
+            r + s, g, b, 0, 0,
+            r, g + s, b, 0, 0,
+            r, g, b + s, 0, 0,
+            0, 0, 0, 1, 0,
+        });
+    }
+
+    // -1 to 1, added to every colour channel
+    public static ColorMatrix brightness(double brightness) {
+        double offset = brightness * 255;
+        return new ColorMatrix(new double[] {
+            1, 0, 0, 0, offset,
+            0, 1, 0, 0, offset,
+            0, 0, 1, 0, offset,
+            0, 0, 0, 1, 0,
+        });
+    }
+
+    // -1 to 1, stretching colour away from mid grey
+    public static ColorMatrix contrast(double contrast) {
+        double scale = 1 + contrast;
+        double offset = 127.5 * (1 - scale);
+        return new ColorMatrix(new double[] {
+            scale, 0, 0, 0, offset,
+            0, scale, 0, 0, offset,
+            0, 0, scale, 0, offset,
+            0, 0, 0, 1, 0,
+        });
+    }
+
+    // JavaFX SepiaTone: blend by level towards a dark-to-light brown ramp
+    // over luminance
+    public static ColorMatrix sepia(double level) {
+        double[] dark = { 0.2, 0.05, 0 };
+        double[] light = { 1.0, 0.9, 0.5 };
+        double[] luma = { LUMA_R, LUMA_G, LUMA_B };
+        double[] m = new double[20];
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                double keep = row == col ? 1 - level : 0;
+                m[row * 5 + col] = keep + level * (light[row] - dark[row]) * luma[col];
+            }
+            m[row * 5 + 4] = level * dark[row] * 255;
+        }
+        m[18] = 1;
+        return new ColorMatrix(m);
+    }
+
+    // This matrix followed by next
+    public ColorMatrix then(ColorMatrix next) {
+        double[] out = new double[20];
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 5; col++) {
+                double sum = col == 4 ? next.m[row * 5 + 4] : 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += next.m[row * 5 + k] * m[k * 5 + col];
+                }
+                out[row * 5 + col] = sum;
+            }
+        }
+        return new ColorMatrix(out);
+    }
+
+    public double get(int row, int col) {
+        return m[row * 5 + col];
+    }
+
+    // True when each channel depends only on itself, as for brightness and
+    // contrast; such matrices become per-channel lookup tables
+    public boolean isPerChannel() {
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 4; col++) {
+                if (row != col && m[row * 5 + col] != 0) return false;
+            }
+        }
+        return true;
+    }
+
+    public ChannelLut toLut() {
+        int[][] tables = new int[4][256];
+        for (int value = 0; value < 256; value++) {
+            tables[0][value] = clamp(m[0] * value + m[4]);
+            tables[1][value] = clamp(m[6] * value + m[9]);
+            tables[2][value] = clamp(m[12] * value + m[14]);
+            tables[3][value] = clamp(m[18] * value + m[19]);
+        }
+        return new ChannelLut(tables[0], tables[1], tables[2], tables[3]);
+    }
+
+    @Override
+    public int filter(int argb, int x, int y, int width, int height) {
+        return filter(argb);
+    }
+
+    public int filter(int argb) {
+        int a = argb >>> 24;
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        return (PixelKernels.channel(fixed, 15, r, g, b, a) << 24) |
+            (PixelKernels.channel(fixed, 0, r, g, b, a) << 16) |
+            (PixelKernels.channel(fixed, 5, r, g, b, a) << 8) |
+            PixelKernels.channel(fixed, 10, r, g, b, a);
+    }
+
+    @Override
+    public void filterRow(
+        int[] argb,
+        int from,
+        int to,
+        int x,
+        int y,
+        int width,
+        int height
+    ) {
+        PixelKernels.get().matrix(fixed, argb, from, to);
+    }
+
+    private static int clamp(double value) {
+        return value <= 0 ? 0 : value >= 255 ? 255 : (int) (value + 0.5);
+    }
+}
@@ -0,0 +1,415 @@
+package jfxlabproj.analysis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import jfxlabproj.raster.PixelSource;
+import jfxlabproj.raster.Raster;
+import jfxlabproj.raster.TileScheduler;
+import jfxlabproj.raster.TiledImage;
+
+// Dominant colours from a sample instead of every pixel. Colours are
+// binned to a few bits per channel, since exact 24-bit colours of a photo
+// rarely repeat enough for any share to show in a sample. The sample is
+// stratified: the raster is cut into a grid of cells of equal size and
+// one pixel is drawn at random from each, so every part of the image is
+// represented. Shares come with Wilson intervals at the requested
+// confidence; those assume a simple random sample, and stratifying can
+// only narrow the true spread, so the intervals are conservative.
+public class ColorSample {
+
+    public static final int DEFAULT_BITS = 4;
+
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "color-sample");
+            thread.setDaemon(true);
+            return thread;
+        }
+    );
+
+    // Sample size that puts any share within margin of the truth at the
+    // given confidence, whatever the share: z^2 / (4 margin^2)
+    public static int sampleSize(double confidence, double margin) {
+        if (margin <= 0 || margin >= 1) {
+            throw new IllegalArgumentException("Margin must be between 0 and 1");
+        }
+        double z = zScore(confidence);
+        return (int) Math.min(Integer.MAX_VALUE, Math.ceil(z * z / (4 * margin * margin)));
+    }
+
+    // Two-sided standard normal quantile, by Abramowitz and Stegun 26.2.23
+    // (error below 4.5e-4)
+    public static double zScore(double confidence) {
+        if (confidence <= 0 || confidence >= 1) {
+            throw new IllegalArgumentException("Confidence must be between 0 and 1");
+        }
+        double tail = (1 - confidence) / 2;
+        double t = Math.sqrt(-2 * Math.log(tail));
+        return t -
+            (2.515517 + 0.802853 * t + 0.010328 * t * t) /
+            (1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+    }
+
+    // Estimates from about samples pixels of raster, one per grid cell.
+    // population is how many pixels the raster stands for: its own, or
+    // more when it is a subsampled preview of a larger image. A sample at
+    // least as large as the raster counts every pixel of it instead, which
+    // is exact only if the raster is the whole population.
+    public static Estimate estimate(
+        Raster raster,
+        long population,
+        int samples,
+        double confidence,
+        int bits,
+        long seed
+    ) {
+        checkBits(bits);
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        long pixels = (long) width * height;
+        if (population < pixels) {
+            throw new IllegalArgumentException("Population is smaller than the raster");
+        }
+        if (samples >= pixels) {
+            return new Estimate(countBins(raster, bits), pixels, population, confidence, bits, 10);
+        }
+        // Cells as close to square as the sample size allows
+        int columns = (int) Math.max(
+            1,
+            Math.min(width, Math.round(Math.sqrt((double) samples * width / height)))
+        );
+        int rows = (int) Math.max(1, Math.min(height, Math.round((double) samples / columns)));
+        long[] bins = new long[1 << (3 * bits)];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int row = 0; row < rows; row++) {
+            int y0 = (int) ((long) row * height / rows);
+            int y1 = (int) ((long) (row + 1) * height / rows);
+            for (int column = 0; column < columns; column++) {
+                int x0 = (int) ((long) column * width / columns);
+                int x1 = (int) ((long) (column + 1) * width / columns);
+                int x = x0 + random.nextInt(x1 - x0);
+                int y = y0 + random.nextInt(y1 - y0);
+                bins[bin(raster.get(x, y), bits)]++;
+            }
+        }
+        return new Estimate(bins, (long) rows * columns, population, confidence, bits, 10);
+    }
+
+    // Estimates at four times the sample of the last, from samples up, on
+    // the sampling thread, passing each to update; the last counts every
+    // pixel of raster. whenDone, if given, gets the future once it has
+    // finished or been cancelled.
+    public static Future<Estimate> refine(
+        Raster raster,
+        long population,
+        int samples,
+        double confidence,
+        int bits,
+        Consumer<Estimate> update,
+        Consumer<Future<Estimate>> whenDone
+    ) {
+        checkBits(bits);
+        FutureTask<Estimate> task = new FutureTask<>(() -> {
+            long pixels = (long) raster.getWidth() * raster.getHeight();
+            SplittableRandom seeds = new SplittableRandom();
+            long size = Math.max(1, samples);
+            while (true) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Sampling cancelled");
+                }
+                Estimate estimate = estimate(
+                    raster,
+                    population,
+                    (int) Math.min(size, pixels),
+                    confidence,
+                    bits,
+                    seeds.nextLong()
+                );
+                update.accept(estimate);
+                if (size >= pixels) return estimate;
+                size *= 4;
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (whenDone != null) whenDone.accept(this);
+            }
+        };
+        worker.execute(task);
+        return task;
+    }
+
+    // count on the sampling thread; cancel(true) on the future stops it.
+    // whenDone, if given, gets the future once it has finished or been
+    // cancelled.
+    public static Future<Estimate> startCount(
+        PixelSource source,
+        double confidence,
+        int bits,
+        Consumer<Future<Estimate>> whenDone
+    ) {
+        checkBits(bits);
+        FutureTask<Estimate> task = new FutureTask<>(() -> count(source, confidence, bits)) {
+            @Override
+            protected void done() {
+                if (whenDone != null) whenDone.accept(this);
+            }
+        };
+        worker.execute(task);
+        return task;
+    }
+
+    // Exact shares over every pixel of source, in fixed memory: bands of
+    // a raster count in parallel into one table per worker, other sources
+    // a tile at a time in the order they decode
+    public static Estimate count(PixelSource source, double confidence, int bits)
+        throws IOException, InterruptedException {
+        checkBits(bits);
+        int width = source.getWidth();
+        int height = source.getHeight();
+        long pixels = (long) width * height;
+        if (source instanceof Raster) {
+            Raster raster = (Raster) source;
+            TileScheduler scheduler = TileScheduler.shared();
+            int bandRows = scheduler.getTileSize();
+            int bands = Math.max(1, (height + bandRows - 1) / bandRows);
+            Map<Thread, long[]> tables = new ConcurrentHashMap<>();
+            scheduler.forEachInterruptibly("sample-count", bands, band -> {
+                long[] table = tables.computeIfAbsent(
+                    Thread.currentThread(),
+                    thread -> new long[1 << (3 * bits)]
+                );
+                int endY = Math.min(height, (band + 1) * bandRows);
+                for (int y = band * bandRows; y < endY; y++) {
+                    int row = raster.rowOffset(y);
+                    for (int i = row; i < row + width; i++) {
+                        table[bin(raster.array()[i], bits)]++;
+                    }
+                }
+            });
+            long[] bins = new long[1 << (3 * bits)];
+            for (long[] table : tables.values()) {
+                for (int i = 0; i < bins.length; i++) {
+                    bins[i] += table[i];
+                }
+            }
+            return new Estimate(bins, pixels, pixels, confidence, bits, 10);
+        }
+        int tile = source instanceof TiledImage
+            ? ((TiledImage) source).getTileSize()
+            : TiledImage.DEFAULT_TILE_SIZE;
+        long[] bins = new long[1 << (3 * bits)];
+        for (int y = 0; y < height; y += tile) {
+            for (int x = 0; x < width; x += tile) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Counting cancelled");
+                }
+                Raster piece = source.region(
+                    x,
+                    y,
+                    Math.min(tile, width - x),
+                    Math.min(tile, height - y)
+                );
+                long[] counted = countBins(piece, bits);
+                for (int i = 0; i < bins.length; i++) {
+                    bins[i] += counted[i];
+                }
+            }
+        }
+        return new Estimate(bins, pixels, pixels, confidence, bits, 10);
+    }
+
+    private static long[] countBins(Raster raster, int bits) {
+        long[] bins = new long[1 << (3 * bits)];
+        int[] argb = raster.array();
+        for (int y = 0; y < raster.getHeight(); y++) {
+            int row = raster.rowOffset(y);
+            for (int i = row; i < row + raster.getWidth(); i++) {
+                bins[bin(argb[i], bits)]++;
+            }
+        }
+        return bins;
+    }
+
+    private static void checkBits(int bits) {
+        if (bits < 1 || bits > 6) {
+            throw new IllegalArgumentException("Bits per channel must be 1-6");
+        }
+    }
+
+    // The top bits of each channel, packed as RRRGGGBBB
+    private static int bin(int argb, int bits) {
+        int shift = 8 - bits;
+        int mask = (1 << bits) - 1;
+        return (((argb >> (16 + shift)) & mask) << (2 * bits)) |
+            (((argb >> (8 + shift)) & mask) << bits) |
+            ((argb >> shift) & mask);
+    }
+
+    // The centre colour of a bin, as packed RGB
+    private static int center(int bin, int bits) {
+        int shift = 8 - bits;
+        int mask = (1 << bits) - 1;
+        int half = (1 << shift) >> 1;
+        int red = (((bin >> (2 * bits)) & mask) << shift) | half;
+        int green = (((bin >> bits) & mask) << shift) | half;
+        int blue = ((bin & mask) << shift) | half;
+        return (red << 16) | (green << 8) | blue;
+    }
+
+    // The largest bins of a sample, each share with its interval
+    public static class Estimate {
+
+        private final int[] colors;
+        private final long[] counts;
+        private final double[] lower;
+        private final double[] upper;
+        private final long samples;
+        private final long totalPixels;
+        private final double confidence;
+        private final int bits;
+
+        Estimate(
+            long[] bins,
+            long samples,
+            long totalPixels,
+            double confidence,
+            int bits,
+            int topK
+        ) {
+            this.samples = samples;
+            this.totalPixels = totalPixels;
+            this.confidence = confidence;
+            this.bits = bits;
+            Integer[] order = new Integer[bins.length];
+            for (int i = 0; i < bins.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(bins[b], bins[a]));
+            int k = 0;
+            while (k < Math.min(topK, bins.length) && bins[order[k]] > 0) {
+                k++;
+            }
+            colors = new int[k];
+            counts = new long[k];
+            lower = new double[k];
+            upper = new double[k];
+            double z = zScore(confidence);
+            for (int rank = 0; rank < k; rank++) {
+                colors[rank] = center(order[rank], bits);
+                counts[rank] = bins[order[rank]];
+                if (isExact()) {
+                    lower[rank] = upper[rank] = (double) counts[rank] / samples;
+                } else {
+                    double[] interval = wilson(counts[rank], samples, z);
+                    lower[rank] = interval[0];
+                    upper[rank] = interval[1];
+                }
+            }
+        }
+
+        private static double[] wilson(long hits, long n, double z) {
+            double p = (double) hits / n;
+            double z2 = z * z;
+            double scale = 1 + z2 / n;
+            double centre = (p + z2 / (2.0 * n)) / scale;
+            double half = z / scale * Math.sqrt(p * (1 - p) / n + z2 / (4.0 * n * n));
+            return new double[] { Math.max(0, centre - half), Math.min(1, centre + half) };
+        }
+
+        public int size() {
+            return colors.length;
+        }
+
+        // The centre of the bin, as packed RGB
+        public int getColor(int rank) {
+            return colors[rank];
+        }
+
+        public String getHex(int rank) {
+            return String.format("#%06X", colors[rank]);
+        }
+
+        public double getShare(int rank) {
+            return (double) counts[rank] / samples;
+        }
+
+        public double getLower(int rank) {
+            return lower[rank];
+        }
+
+        public double getUpper(int rank) {
+            return upper[rank];
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public long getTotalPixels() {
+            return totalPixels;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+
+        public int getBitsPerChannel() {
+            return bits;
+        }
+
+        // Every pixel was counted; shares are exact
+        public boolean isExact() {
+            return samples >= totalPixels;
+        }
+
+        public List<String> describeTopColors() {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < colors.length; i++) {
+                lines.add(
+                    isExact()
+                        ? String.format(
+                            "%s: %.1f%% (%d pixels)",
+                            getHex(i),
+                            100 * getShare(i),
+                            counts[i]
+                        )
+                        : String.format(
+                            "%s: %.1f%% (%.1f-%.1f%%)",
+                            getHex(i),
+                            100 * getShare(i),
+                            100 * lower[i],
+                            100 * upper[i]
+                        )
+                );
+            }
+            return lines;
+        }
+
+        public String describeSample() {
+            return isExact()
+                ? String.format(
+                    "exact over %d pixels, %d bits per channel",
+                    totalPixels,
+                    bits
+                )
+                : String.format(
+                    "%d of %d pixels sampled, %.0f%% intervals, %d bits per channel",
+                    samples,
+                    totalPixels,
+                    100 * confidence,
+                    bits
+                );
+        }
+    }
+}
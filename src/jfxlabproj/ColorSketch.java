@@ -0,0 +1,361 @@
+package jfxlabproj.analysis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import jfxlabproj.raster.PixelSource;
+import jfxlabproj.raster.Raster;
+import jfxlabproj.raster.TileScheduler;
+import jfxlabproj.raster.TiledImage;
+
+// Approximate colour counts in fixed memory: a Misra-Gries summary that
+// keeps at most capacity colours. Pixels are added to a table of up to
+// twice that; when it fills, the (capacity + 1)-th largest count is taken
+// off every colour and those left at zero are dropped. Each kept count is
+// then a lower bound, and the total taken off bounds the error, so count
+// plus that total is an upper bound. Any colour with more than
+// total / (capacity + 1) pixels is always kept. Summaries of disjoint
+// pixels merge with the same guarantees, so each worker fills its own.
+public class ColorSketch {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    // Partial estimates are published at most this often
+    private static final long PUBLISH_NANOS = 200_000_000L;
+
+    private final int capacity;
+    // Open addressing on packed RGB; a count of 0 marks an empty slot
+    private int[] keys;
+    private long[] counts;
+    private final int mask;
+    private int size;
+    private long total;
+    // Taken off every colour so far: the most any count is under
+    private long decrement;
+
+    public ColorSketch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        // At most 2 * capacity colours, so the table stays half empty
+        int table = Integer.highestOneBit(Math.max(16, capacity * 4) - 1) << 1;
+        keys = new int[table];
+        counts = new long[table];
+        mask = table - 1;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Pixels counted so far
+    public long getTotal() {
+        return total;
+    }
+
+    // The most any count is under, and the most an unkept colour can have
+    public long getMaxError() {
+        return decrement;
+    }
+
+    // Counts weight more pixels of the packed 24-bit RGB colour
+    public void add(int color, long weight) {
+        total += weight;
+        put(color, weight);
+    }
+
+    private void put(int color, long weight) {
+        int index = mix(color) & mask;
+        while (counts[index] != 0) {
+            if (keys[index] == color) {
+                counts[index] += weight;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = color;
+        counts[index] = weight;
+        if (++size > 2 * capacity) reduce();
+    }
+
+    // Takes the (capacity + 1)-th largest count off every colour, leaving
+    // at most capacity colours
+    private void reduce() {
+        if (size <= capacity) return;
+        long[] live = new long[size];
+        int n = 0;
+        for (long count : counts) {
+            if (count != 0) live[n++] = count;
+        }
+        Arrays.sort(live);
+        long cut = live[size - capacity - 1];
+        decrement += cut;
+        int[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new int[oldKeys.length];
+        counts = new long[oldCounts.length];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] > cut) put(oldKeys[i], oldCounts[i] - cut);
+        }
+    }
+
+    // Counts every pixel of rows [startY, endY), batching runs of one colour
+    public void addRows(Raster raster, int startY, int endY) {
+        int[] argb = raster.array();
+        int width = raster.getWidth();
+        int last = -1;
+        int run = 0;
+        for (int y = startY; y < endY; y++) {
+            int row = raster.rowOffset(y);
+            for (int i = row; i < row + width; i++) {
+                int rgb = argb[i] & 0xFFFFFF;
+                if (rgb == last) {
+                    run++;
+                    continue;
+                }
+                if (run > 0) add(last, run);
+                last = rgb;
+                run = 1;
+            }
+        }
+        if (run > 0) add(last, run);
+    }
+
+    // One summary of the pixels counted by all of sketches, at the largest
+    // of their capacities: counts add, and so do the errors
+    public static ColorSketch merge(List<ColorSketch> sketches) {
+        int capacity = 1;
+        for (ColorSketch sketch : sketches) {
+            capacity = Math.max(capacity, sketch.capacity);
+        }
+        ColorSketch merged = new ColorSketch(capacity);
+        for (ColorSketch sketch : sketches) {
+            merged.total += sketch.total;
+            merged.decrement += sketch.decrement;
+            for (int i = 0; i < sketch.keys.length; i++) {
+                if (sketch.counts[i] != 0) merged.put(sketch.keys[i], sketch.counts[i]);
+            }
+        }
+        merged.reduce();
+        return merged;
+    }
+
+    // The topK largest counts, with bounds
+    public Estimate top(int topK, long totalPixels, boolean complete) {
+        Integer[] order = new Integer[size];
+        for (int i = 0, n = 0; i < keys.length; i++) {
+            if (counts[i] != 0) order[n++] = i;
+        }
+        Arrays.sort(order, (a, b) ->
+            counts[a] != counts[b]
+                ? Long.compare(counts[b], counts[a])
+                : Integer.compare(keys[a], keys[b])
+        );
+        int k = Math.min(topK, order.length);
+        int[] topColors = new int[k];
+        long[] topCounts = new long[k];
+        for (int rank = 0; rank < k; rank++) {
+            topColors[rank] = keys[order[rank]];
+            topCounts[rank] = counts[order[rank]];
+        }
+        // The most any colour outside the list could have
+        long cutoff = decrement + (order.length > k ? counts[order[k]] : 0);
+        return new Estimate(
+            topColors,
+            topCounts,
+            decrement,
+            cutoff,
+            capacity,
+            total,
+            totalPixels,
+            complete
+        );
+    }
+
+    // Scans source a piece at a time, the pieces of each batch counted in
+    // parallel into one sketch per worker. Memory is the sketches plus a
+    // batch of pieces, whatever the image size. partial, if given, gets
+    // the merged estimate between batches while the scan runs, on the
+    // calling thread.
+    public static Estimate scan(
+        PixelSource source,
+        int topK,
+        int capacity,
+        Consumer<Estimate> partial
+    ) throws IOException, InterruptedException {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        long pixels = (long) width * height;
+        int piece = source instanceof TiledImage
+            ? ((TiledImage) source).getTileSize()
+            : TiledImage.DEFAULT_TILE_SIZE;
+        TileScheduler scheduler = TileScheduler.shared();
+        int batchSize = scheduler.getParallelism() * 2;
+
+        Map<Thread, ColorSketch> sketches = new ConcurrentHashMap<>();
+        List<Raster> batch = new ArrayList<>();
+        long lastPublish = System.nanoTime();
+        for (int y = 0; y < height; y += piece) {
+            for (int x = 0; x < width; x += piece) {
+                // Tiled sources read in row-major order, as they decode
+                batch.add(
+                    source.region(
+                        x,
+                        y,
+                        Math.min(piece, width - x),
+                        Math.min(piece, height - y)
+                    )
+                );
+                boolean last = y + piece >= height && x + piece >= width;
+                if (batch.size() < batchSize && !last) continue;
+                List<Raster> pieces = new ArrayList<>(batch);
+                batch.clear();
+                scheduler.forEachInterruptibly("sketch-count", pieces.size(), i -> {
+                    Raster counted = pieces.get(i);
+                    sketches
+                        .computeIfAbsent(
+                            Thread.currentThread(),
+                            thread -> new ColorSketch(capacity)
+                        )
+                        .addRows(counted, 0, counted.getHeight());
+                });
+                if (partial != null && !last && System.nanoTime() - lastPublish >= PUBLISH_NANOS) {
+                    partial.accept(merge(new ArrayList<>(sketches.values())).top(topK, pixels, false));
+                    lastPublish = System.nanoTime();
+                }
+            }
+        }
+        ColorSketch merged = sketches.isEmpty()
+            ? new ColorSketch(capacity)
+            : merge(new ArrayList<>(sketches.values()));
+        return merged.top(topK, pixels, true);
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // The top colours of a sketch, each with a count that is never high
+    // and an upper bound that is never low
+    public static class Estimate {
+
+        private final int[] colors;
+        private final long[] counts;
+        private final long maxError;
+        private final long cutoff;
+        private final int capacity;
+        private final long scannedPixels;
+        private final long totalPixels;
+        private final boolean complete;
+
+        Estimate(
+            int[] colors,
+            long[] counts,
+            long maxError,
+            long cutoff,
+            int capacity,
+            long scannedPixels,
+            long totalPixels,
+            boolean complete
+        ) {
+            this.colors = colors;
+            this.counts = counts;
+            this.maxError = maxError;
+            this.cutoff = cutoff;
+            this.capacity = capacity;
+            this.scannedPixels = scannedPixels;
+            this.totalPixels = totalPixels;
+            this.complete = complete;
+        }
+
+        public int size() {
+            return colors.length;
+        }
+
+        public int getColor(int rank) {
+            return colors[rank];
+        }
+
+        public String getHex(int rank) {
+            return String.format("#%06X", colors[rank]);
+        }
+
+        // At most the true count among the pixels scanned
+        public long getCount(int rank) {
+            return counts[rank];
+        }
+
+        // At least the true count among the pixels scanned
+        public long getUpperBound(int rank) {
+            return counts[rank] + maxError;
+        }
+
+        // The most any count is under, and the most any colour not listed
+        // among the kept ones can have
+        public long getMaxError() {
+            return maxError;
+        }
+
+        // Whether the colour at rank surely belongs in the top list: its
+        // count is no less than what any unlisted colour could have
+        public boolean isCertain(int rank) {
+            return counts[rank] >= cutoff;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public long getScannedPixels() {
+            return scannedPixels;
+        }
+
+        public long getTotalPixels() {
+            return totalPixels;
+        }
+
+        public double getProgress() {
+            return totalPixels == 0 ? 1 : (double) scannedPixels / totalPixels;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public List<String> describeTopColors() {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < colors.length; i++) {
+                String count = maxError == 0
+                    ? String.valueOf(counts[i])
+                    : counts[i] + "-" + getUpperBound(i);
+                lines.add(
+                    String.format(
+                        "%s: %s pixels%s",
+                        getHex(i),
+                        count,
+                        isCertain(i) ? "" : " (uncertain)"
+                    )
+                );
+            }
+            return lines;
+        }
+
+        public String describeBounds() {
+            return String.format(
+                "%s%d of %d pixels, %d counters, counts at most %d pixels low (%.3f%%)",
+                complete ? "" : "partial: ",
+                scannedPixels,
+                totalPixels,
+                capacity,
+                maxError,
+                scannedPixels == 0 ? 0 : 100.0 * maxError / scannedPixels
+            );
+        }
+    }
+}
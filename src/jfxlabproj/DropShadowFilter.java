@@ -0,0 +1,86 @@
+package jfxlabproj.filter;
+
+import jfxlabproj.raster.Raster;
+import jfxlabproj.raster.TileScheduler;
+
+// JavaFX DropShadow with no offset: a blurred, coloured copy of the alpha
+// mask behind the image. The result grows by the radius on every side so
+// the shadow is kept, as the effect's bounds did on screen.
+public class DropShadowFilter implements RasterFilter {
+
+    // JavaFX clamps shadow radii to this
+    public static final double MAX_RADIUS = 127;
+
+    private final double radius;
+    private final double spread;
+    private final int color;
+
+    public DropShadowFilter(double radius, double spread, int color) {
+        this(radius, spread, color, 1);
+    }
+
+    // radius as JavaFX would draw it on an image scale times smaller: the
+    // clamp applies first, then the shadow is widened to match
+    public DropShadowFilter(double radius, double spread, int color, double scale) {
+        this.radius = Math.max(0, Math.min(MAX_RADIUS, radius)) * scale;
+        this.spread = spread;
+        this.color = color;
+    }
+
+    @Override
+    public int getReach() {
+        return BoxBlur.boxRadius(radius) * 3;
+    }
+
+    @Override
+    public int getGrowth() {
+        return (int) Math.ceil(radius);
+    }
+
+    @Override
+    public Raster apply(Raster source) {
+        int pad = (int) Math.ceil(radius);
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int outWidth = width + 2 * pad;
+        int outHeight = height + 2 * pad;
+        int[] in = source.array();
+
+        int[] mask = new int[outWidth * outHeight];
+        for (int y = 0; y < height; y++) {
+            int from = source.rowOffset(y);
+            int to = (y + pad) * outWidth + pad;
+            for (int x = 0; x < width; x++) {
+                mask[to + x] = in[from + x] >>> 24;
+            }
+        }
+        BoxBlur.blurPlane(mask, outWidth, outHeight, BoxBlur.boxRadius(radius), 3, 0);
+
+        Raster target = new Raster(outWidth, outHeight);
+        int[] out = target.array();
+        int colorAlpha = color >>> 24;
+        int rgb = color & 0xFFFFFF;
+        // Shadow everywhere, then the image over it inside its own bounds
+        TileScheduler.shared().forEachTile(
+            "drop-shadow",
+            outWidth,
+            outHeight,
+            0,
+            (x0, y0, x1, y1) -> {
+                for (int y = y0; y < y1; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        int i = y * outWidth + x;
+                        int alpha = Blend.harden(mask[i], spread) * colorAlpha / 255;
+                        out[i] = (alpha << 24) | rgb;
+                        int sx = x - pad;
+                        int sy = y - pad;
+                        if (sx >= 0 && sx < width && sy >= 0 && sy < height) {
+                            out[i] = Blend.over(in[source.rowOffset(sy) + sx], out[i]);
+                        }
+                    }
+                }
+            }
+        );
+        return target;
+    }
+}
@@ -0,0 +1,333 @@
+package jfxlabproj.raster;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Undo and redo for an image replaced as a whole by each edit. A step
+// keeps only the tiles that changed, as the XOR of before and after,
+// deflated into an off-heap buffer; XOR lets one delta go both ways, and
+// unchanged pixels XOR to zero so even a changed tile compresses well. A
+// step that changes the image's size stores both sides whole instead,
+// each XORed against blank. Only the current state is held as pixels.
+// Past the byte cap the oldest steps are forgotten.
+public class EditHistory {
+
+    private final int tileSize;
+    private long maxBytes;
+    private final List<Step> steps = new ArrayList<>();
+    // steps[0, position) lead up to the current state; the rest are redos
+    private int position;
+    private Raster current;
+    private Object tag;
+    private long bytes;
+
+    // Changed tiles of one raster size, deflated back to back in data
+    private static class Delta {
+
+        final int width;
+        final int height;
+        final int[] tiles;
+        final int[] offsets;
+        final ByteBuffer data;
+
+        Delta(int width, int height, int[] tiles, int[] offsets, ByteBuffer data) {
+            this.width = width;
+            this.height = height;
+            this.tiles = tiles;
+            this.offsets = offsets;
+            this.data = data;
+        }
+
+        long bytes() {
+            return data.capacity() + 8L * tiles.length;
+        }
+    }
+
+    private static class Step {
+
+        // Set when the size stayed the same
+        final Delta change;
+        // Otherwise the whole states on either side
+        final Delta before;
+        final Delta after;
+        final Object tagBefore;
+        final Object tagAfter;
+
+        Step(Delta change, Delta before, Delta after, Object tagBefore, Object tagAfter) {
+            this.change = change;
+            this.before = before;
+            this.after = after;
+            this.tagBefore = tagBefore;
+            this.tagAfter = tagAfter;
+        }
+
+        long bytes() {
+            return change != null ? change.bytes() : before.bytes() + after.bytes();
+        }
+    }
+
+    public EditHistory(long maxBytes) {
+        this(maxBytes, TileScheduler.shared().getTileSize());
+    }
+
+    public EditHistory(long maxBytes, int tileSize) {
+        if (tileSize < 16) {
+            throw new IllegalArgumentException("Tile size must be at least 16");
+        }
+        this.tileSize = tileSize;
+        setMaxBytes(maxBytes);
+    }
+
+    // Bytes of compressed steps kept; the current state is not counted
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("History size must be positive");
+        }
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    // Forgets every step and starts again from state. tag is whatever the
+    // caller needs back with the state, such as how it was made.
+    public synchronized void reset(Raster state, Object tag) {
+        steps.clear();
+        position = 0;
+        bytes = 0;
+        current = state.copy();
+        this.tag = tag;
+    }
+
+    // Records an edit that turned the current state into state, dropping
+    // any steps that were undone. The first call without a reset starts
+    // the history at state.
+    public synchronized void record(Raster state, Object tag) {
+        if (current == null) {
+            reset(state, tag);
+            return;
+        }
+        Step step;
+        if (state.getWidth() == current.getWidth() && state.getHeight() == current.getHeight()) {
+            Delta change = diff(current, state);
+            if (change.tiles.length == 0 && same(tag, this.tag)) return;
+            step = new Step(change, null, null, this.tag, tag);
+        } else {
+            step = new Step(null, diff(null, current), diff(null, state), this.tag, tag);
+        }
+        while (steps.size() > position) {
+            bytes -= steps.remove(steps.size() - 1).bytes();
+        }
+        steps.add(step);
+        position++;
+        bytes += step.bytes();
+        current = state.copy();
+        this.tag = tag;
+        trim();
+    }
+
+    public synchronized boolean canUndo() {
+        return position > 0;
+    }
+
+    public synchronized boolean canRedo() {
+        return position < steps.size();
+    }
+
+    // Steps back and returns the earlier state, or null if there is none.
+    // The raster is the history's own; callers must not modify it.
+    public synchronized Raster undo() {
+        if (!canUndo()) return null;
+        Step step = steps.get(--position);
+        current = step.change != null ? apply(current, step.change) : apply(null, step.before);
+        tag = step.tagBefore;
+        return current;
+    }
+
+    // Steps forward again after an undo, or returns null
+    public synchronized Raster redo() {
+        if (!canRedo()) return null;
+        Step step = steps.get(position++);
+        current = step.change != null ? apply(current, step.change) : apply(null, step.after);
+        tag = step.tagAfter;
+        return current;
+    }
+
+    public synchronized Raster getCurrent() {
+        return current;
+    }
+
+    // The tag recorded with the current state
+    public synchronized Object getTag() {
+        return tag;
+    }
+
+    public synchronized int getUndoSteps() {
+        return position;
+    }
+
+    public synchronized int getRedoSteps() {
+        return steps.size() - position;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized String describe() {
+        return String.format(
+            "%d undo, %d redo, %.1f MB of %.1f MB",
+            position,
+            steps.size() - position,
+            bytes / 1e6,
+            maxBytes / 1e6
+        );
+    }
+
+    private static boolean same(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    // Oldest undo steps go first; redo steps only once none are left
+    private void trim() {
+        while (bytes > maxBytes && !steps.isEmpty()) {
+            if (position > 0) {
+                bytes -= steps.remove(0).bytes();
+                position--;
+            } else {
+                bytes -= steps.remove(steps.size() - 1).bytes();
+            }
+        }
+    }
+
+    // The tiles of after that differ from before, XORed with before and
+    // deflated, tiles in parallel; a null before is blank
+    private Delta diff(Raster before, Raster after) {
+        int width = after.getWidth();
+        int height = after.getHeight();
+        int columns = (width + tileSize - 1) / tileSize;
+        int count = columns * ((height + tileSize - 1) / tileSize);
+        byte[][] packed = new byte[count][];
+        TileScheduler.shared().forEach("history-diff", count, index -> {
+            int x0 = (index % columns) * tileSize;
+            int y0 = (index / columns) * tileSize;
+            int w = Math.min(tileSize, width - x0);
+            int h = Math.min(tileSize, height - y0);
+            int[] xor = new int[w * h];
+            for (int y = 0; y < h; y++) {
+                int b = after.rowOffset(y0 + y) + x0;
+                System.arraycopy(after.array(), b, xor, y * w, w);
+                if (before == null) continue;
+                int a = before.rowOffset(y0 + y) + x0;
+                for (int x = 0; x < w; x++) {
+                    xor[y * w + x] ^= before.array()[a + x];
+                }
+            }
+            for (int value : xor) {
+                if (value != 0) {
+                    ByteBuffer tile = ByteBuffer
+                        .allocate(4 * xor.length)
+                        .order(ByteOrder.nativeOrder());
+                    tile.asIntBuffer().put(xor);
+                    packed[index] = deflate(tile.array());
+                    return;
+                }
+            }
+        });
+
+        int changed = 0;
+        int total = 0;
+        for (byte[] tile : packed) {
+            if (tile == null) continue;
+            changed++;
+            total += tile.length;
+        }
+        int[] tiles = new int[changed];
+        int[] offsets = new int[changed + 1];
+        ByteBuffer data = ByteBuffer.allocateDirect(total);
+        for (int index = 0, i = 0; index < count; index++) {
+            if (packed[index] == null) continue;
+            tiles[i] = index;
+            offsets[i] = data.position();
+            data.put(packed[index]);
+            i++;
+        }
+        offsets[changed] = data.position();
+        return new Delta(width, height, tiles, offsets, data);
+    }
+
+    // XORs delta into a copy of base, or into blank if base is null
+    private Raster apply(Raster base, Delta delta) {
+        int width = delta.width;
+        Raster target = base == null ? new Raster(delta.width, delta.height) : base.copy();
+        int columns = (width + tileSize - 1) / tileSize;
+        TileScheduler.shared().forEach("history-apply", delta.tiles.length, i -> {
+            int index = delta.tiles[i];
+            int x0 = (index % columns) * tileSize;
+            int y0 = (index / columns) * tileSize;
+            int w = Math.min(tileSize, width - x0);
+            int h = Math.min(tileSize, delta.height - y0);
+            byte[] compressed = new byte[delta.offsets[i + 1] - delta.offsets[i]];
+            delta.data.get(delta.offsets[i], compressed);
+            int[] xor = new int[w * h];
+            ByteBuffer
+                .wrap(inflate(compressed, 4 * w * h))
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer()
+                .get(xor);
+            int[] out = target.array();
+            for (int y = 0; y < h; y++) {
+                int offset = target.rowOffset(y0 + y) + x0;
+                for (int x = 0; x < w; x++) {
+                    out[offset + x] ^= xor[y * w + x];
+                }
+            }
+        });
+        return target;
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            byte[] buffer = new byte[bytes.length / 4 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int inflated = inflater.inflate(bytes, read, length - read);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Truncated history tile");
+                }
+                read += inflated;
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            // Only this class writes the data
+            throw new IllegalStateException("Corrupt history tile", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
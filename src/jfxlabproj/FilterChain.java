@@ -0,0 +1,188 @@
+package jfxlabproj.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import jfxlabproj.raster.Raster;
+
+// Stages applied in order, each to the previous stage's output. The
+// presets reproduce the effect chains the filter buttons used to set on
+// the ImageView, so the result can be shown and saved.
+public class FilterChain implements RasterFilter {
+
+    private final List<RasterFilter> stages = new ArrayList<>();
+    // Stages as run: null until compiled, and again after then()
+    private List<RasterFilter> plan;
+
+    public FilterChain then(RasterFilter stage) {
+        stages.add(stage);
+        plan = null;
+        return this;
+    }
+
+    public List<RasterFilter> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    // Each run of consecutive point filters becomes one FusedPointFilter,
+    // so the image is walked once per run; only neighbourhood stages such
+    // as blurs and shadows start a new pass. Nested chains are flattened.
+    public synchronized List<RasterFilter> compile() {
+        if (plan == null) {
+            List<RasterFilter> compiled = new ArrayList<>();
+            List<PointFilter> run = new ArrayList<>();
+            for (RasterFilter stage : flatten()) {
+                if (stage instanceof PointFilter) {
+                    run.add((PointFilter) stage);
+                    continue;
+                }
+                if (!run.isEmpty()) {
+                    compiled.add(FusedPointFilter.of(run));
+                    run.clear();
+                }
+                compiled.add(stage);
+            }
+            if (!run.isEmpty()) {
+                compiled.add(FusedPointFilter.of(run));
+            }
+            plan = Collections.unmodifiableList(compiled);
+        }
+        return plan;
+    }
+
+    private List<RasterFilter> flatten() {
+        List<RasterFilter> flat = new ArrayList<>();
+        for (RasterFilter stage : stages) {
+            if (stage instanceof FilterChain) {
+                flat.addAll(((FilterChain) stage).flatten());
+            } else {
+                flat.add(stage);
+            }
+        }
+        return flat;
+    }
+
+    @Override
+    public Raster apply(Raster source) {
+        Raster current = source;
+        for (RasterFilter stage : compile()) {
+            current = stage.apply(current);
+        }
+        return current;
+    }
+
+    @Override
+    public int getReach() {
+        int reach = 0;
+        for (RasterFilter stage : compile()) {
+            reach += stage.getReach();
+        }
+        return reach;
+    }
+
+    @Override
+    public int getGrowth() {
+        int growth = 0;
+        for (RasterFilter stage : compile()) {
+            growth += stage.getGrowth();
+        }
+        return growth;
+    }
+
+    // A stage that grows its result leaves the region's corner where it
+    // was, relative to the larger image the next stage sees
+    @Override
+    public Raster applyRegion(
+        Raster region,
+        int x,
+        int y,
+        int imageWidth,
+        int imageHeight
+    ) {
+        Raster current = region;
+        for (RasterFilter stage : compile()) {
+            current = stage.applyRegion(current, x, y, imageWidth, imageHeight);
+            imageWidth += 2 * stage.getGrowth();
+            imageHeight += 2 * stage.getGrowth();
+        }
+        return current;
+    }
+
+    // The preset a filter button applies, by name, for an image of the
+    // given size: blur, grayscale, sepia or vignette
+    public static FilterChain preset(String name, int width, int height) {
+        return preset(name, width, height, 1);
+    }
+
+    // The same preset on an image scale times the size of the one it was
+    // previewed on, with every radius widened to match, so a saved full
+    // image looks like the preview
+    public static FilterChain preset(String name, int width, int height, double scale) {
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Scale must be positive");
+        }
+        switch (name.trim().toLowerCase()) {
+            case "blur":
+                return blur(scale);
+            case "grayscale":
+                return grayscale(scale);
+            case "sepia":
+                return sepia(scale);
+            case "vignette":
+                return vignette(width, height, scale);
+            default:
+                throw new IllegalArgumentException("Unknown filter: " + name);
+        }
+    }
+
+    public static FilterChain blur() {
+        return blur(1);
+    }
+
+    // GaussianBlur(15) -> Bloom(0.3) -> DropShadow(15, spread 0.4)
+    public static FilterChain blur(double scale) {
+        return new FilterChain()
+            .then(BoxBlur.gaussian(15 * scale))
+            .then(new BloomFilter(0.3, scale))
+            .then(new DropShadowFilter(15, 0.4, 0x4D000000, scale));
+    }
+
+    public static FilterChain grayscale() {
+        return grayscale(1);
+    }
+
+    // ColorAdjust(saturation -1, contrast 0.2, brightness 0.1) -> InnerShadow(5)
+    public static FilterChain grayscale(double scale) {
+        return new FilterChain()
+            .then(ColorMatrix.saturation(-1))
+            .then(ColorMatrix.contrast(0.2))
+            .then(ColorMatrix.brightness(0.1))
+            .then(new InnerShadowFilter(5, 0, 0x4D000000, scale));
+    }
+
+    public static FilterChain sepia() {
+        return sepia(1);
+    }
+
+    // SepiaTone(0.7) -> Bloom(0.2) -> DropShadow(10, spread 0.3)
+    public static FilterChain sepia(double scale) {
+        return new FilterChain()
+            .then(ColorMatrix.sepia(0.7))
+            .then(new BloomFilter(0.2, scale))
+            .then(new DropShadowFilter(10, 0.3, 0x66000000, scale));
+    }
+
+    public static FilterChain vignette(int width, int height) {
+        return vignette(width, height, 1);
+    }
+
+    // Radial darkening towards the corners -> DropShadow(spread 0.4), sized
+    // from the previewed image like the old effect. The old InnerShadow
+    // vignette is replaced by its per-pixel falloff.
+    public static FilterChain vignette(int width, int height, double scale) {
+        double radius = Math.max(width, height) / scale * 0.7;
+        return new FilterChain()
+            .then(new VignetteFilter(0.7, 0.35))
+            .then(new DropShadowFilter(radius * 0.2, 0.4, 0x99000000, scale));
+    }
+}
@@ -0,0 +1,92 @@
+package jfxlabproj.filter;
+
+import java.io.IOException;
+import jfxlabproj.raster.PixelSource;
+import jfxlabproj.raster.Raster;
+
+// A filter's result read a rectangle at a time. Each piece of the result
+// is filtered from the source rectangle under it plus the filter's reach,
+// so only a piece and its margin are ever in memory, and the pieces match
+// the whole-image result.
+public class FilteredSource implements PixelSource {
+
+    private final PixelSource source;
+    private final RasterFilter filter;
+    private final int reach;
+    private final int growth;
+    // Larger pieces waste less work on margins; at least four reaches wide
+    private final int pieceSize;
+
+    private FilteredSource(PixelSource source, RasterFilter filter) {
+        this.source = source;
+        this.filter = filter;
+        this.reach = filter.getReach();
+        this.growth = filter.getGrowth();
+        this.pieceSize = Math.max(512, 4 * reach);
+    }
+
+    // A raster that is already in memory is filtered whole, up front
+    public static PixelSource of(PixelSource source, RasterFilter filter) {
+        if (source instanceof Raster) {
+            return filter.apply((Raster) source);
+        }
+        return new FilteredSource(source, filter);
+    }
+
+    @Override
+    public int getWidth() {
+        return source.getWidth() + 2 * growth;
+    }
+
+    @Override
+    public int getHeight() {
+        return source.getHeight() + 2 * growth;
+    }
+
+    // Large rectangles are built from pieces, so filtering memory does
+    // not grow with the rectangle
+    @Override
+    public Raster region(int x, int y, int width, int height)
+        throws IOException, InterruptedException {
+        if (width <= pieceSize && height <= pieceSize) {
+            return piece(x, y, width, height);
+        }
+        Raster target = new Raster(width, height);
+        int[] out = target.array();
+        for (int top = 0; top < height; top += pieceSize) {
+            for (int left = 0; left < width; left += pieceSize) {
+                int pieceWidth = Math.min(pieceSize, width - left);
+                int pieceHeight = Math.min(pieceSize, height - top);
+                Raster piece = piece(x + left, y + top, pieceWidth, pieceHeight);
+                for (int row = 0; row < pieceHeight; row++) {
+                    System.arraycopy(
+                        piece.array(),
+                        piece.rowOffset(row),
+                        out,
+                        (top + row) * width + left,
+                        pieceWidth
+                    );
+                }
+            }
+        }
+        return target;
+    }
+
+    // Output pixel (x, y) comes from source pixels within the reach of
+    // (x - growth, y - growth); the filtered region keeps its corner
+    private Raster piece(int x, int y, int width, int height)
+        throws IOException, InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException("Filtering cancelled");
+        }
+        int imageWidth = source.getWidth();
+        int imageHeight = source.getHeight();
+        int x0 = Math.max(0, x - growth - reach);
+        int y0 = Math.max(0, y - growth - reach);
+        int x1 = Math.min(imageWidth, x + width - growth + reach);
+        int y1 = Math.min(imageHeight, y + height - growth + reach);
+        Raster input = source.region(x0, y0, Math.max(0, x1 - x0), Math.max(0, y1 - y0));
+        Raster output = filter.applyRegion(input, x0, y0, imageWidth, imageHeight);
+        return output.region(x - x0, y - y0, width, height);
+    }
+}
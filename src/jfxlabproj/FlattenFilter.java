@@ -0,0 +1,29 @@
+package jfxlabproj.filter;
+
+// Composites the image over an opaque colour, for formats without alpha
+public class FlattenFilter implements PointFilter {
+
+    private final int background;
+
+    public FlattenFilter(int background) {
+        this.background = background | 0xFF000000;
+    }
+
+    @Override
+    public int filter(int argb, int x, int y, int width, int height) {
+        return Blend.over(argb, background);
+    }
+
+    @Override
+    public void filterRow(
+        int[] argb,
+        int from,
+        int to,
+        int x,
+        int y,
+        int width,
+        int height
+    ) {
+        PixelKernels.get().flatten(background, argb, from, to);
+    }
+}
@@ -0,0 +1,76 @@
+package jfxlabproj.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// A run of point filters applied in one pass over the pixels. Adjacent
+// per-channel matrices and tables merge into one table, exactly; adjacent
+// colour matrices compose into one matrix, which differs from running them
+// separately only where an intermediate result would have been clipped.
+public class FusedPointFilter implements PointFilter {
+
+    private final PointFilter[] steps;
+
+    private FusedPointFilter(List<PointFilter> steps) {
+        this.steps = steps.toArray(new PointFilter[0]);
+    }
+
+    public static FusedPointFilter of(List<? extends PointFilter> filters) {
+        List<PointFilter> steps = new ArrayList<>();
+        for (PointFilter filter : filters) {
+            if (filter instanceof FusedPointFilter) {
+                for (PointFilter step : ((FusedPointFilter) filter).steps) {
+                    append(steps, step);
+                }
+            } else {
+                append(steps, filter);
+            }
+        }
+        return new FusedPointFilter(steps);
+    }
+
+    private static void append(List<PointFilter> steps, PointFilter filter) {
+        if (filter instanceof ColorMatrix && ((ColorMatrix) filter).isPerChannel()) {
+            filter = ((ColorMatrix) filter).toLut();
+        }
+        PointFilter last = steps.isEmpty() ? null : steps.get(steps.size() - 1);
+        if (last instanceof ChannelLut && filter instanceof ChannelLut) {
+            steps.set(steps.size() - 1, ((ChannelLut) last).then((ChannelLut) filter));
+        } else if (last instanceof ColorMatrix && filter instanceof ColorMatrix) {
+            steps.set(steps.size() - 1, ((ColorMatrix) last).then((ColorMatrix) filter));
+        } else {
+            steps.add(filter);
+        }
+    }
+
+    public List<PointFilter> getSteps() {
+        return Collections.unmodifiableList(Arrays.asList(steps));
+    }
+
+    @Override
+    public int filter(int argb, int x, int y, int width, int height) {
+        for (PointFilter step : steps) {
+            argb = step.filter(argb, x, y, width, height);
+        }
+        return argb;
+    }
+
+    // Step by step over the row, which is at most a tile wide and so
+    // stays in cache between steps
+    @Override
+    public void filterRow(
+        int[] argb,
+        int from,
+        int to,
+        int x,
+        int y,
+        int width,
+        int height
+    ) {
+        for (PointFilter step : steps) {
+            step.filterRow(argb, from, to, x, y, width, height);
+        }
+    }
+}
@@ -1,185 +1,178 @@
 // GameOfLifeProcessor.java
 package jfxlabproj.gameoflife;
 
-import java.util.concurrent.atomic.AtomicReference;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
-import javafx.util.Duration;
+import jfxlabproj.raster.Raster;
 
 public class GameOfLifeProcessor {
 
-    private static Timeline timeline;
+    private static final double DEFAULT_GENERATIONS_PER_SECOND = 5;
+    private static final int BOARD_WIDTH = 640;
+
+    private static LifeSimulation simulation;
+    private static AnimationTimer displayTimer;
+    private static double maxGenerationsPerSecond = DEFAULT_GENERATIONS_PER_SECOND;
+    private static long hashLifeBudgetBytes = Runtime.getRuntime().maxMemory() / 4;
+    private static final LifeSeeder seeder = new LifeSeeder();
+    private static LifeRule rule = LifeRule.CONWAY;
+    // 0 plays on the black and white seed; 1-8 keeps that many bits of colour
+    private static int colorBitsPerChannel = 0;
 
     public static void startGameOfLife(ImageView imageView) {
         if (imageView.getImage() == null) return;
 
-        // Convert to black and white with chunks
-        Image source = imageView.getImage();
-        int width = 640;
-        int height = (int) (source.getHeight() * (640.0 / source.getWidth()));
-        int chunkSize = 8; // Reduced chunk size for better detail
-        WritableImage bwImage = new WritableImage(width, height);
-        PixelReader reader = source.getPixelReader();
-
-        // Calculate average brightness and variance of the entire image
-        double totalBrightness = 0;
-        double[] brightnesses = new double[width * height];
-        int pixelCount = 0;
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color color = reader.getColor(
-                    (int) ((x * source.getWidth()) / 640.0),
-                    (int) ((y * source.getWidth()) / 640.0)
-                );
-                double brightness = color.getBrightness();
-                brightnesses[pixelCount] = brightness;
-                totalBrightness += brightness;
-                pixelCount++;
+        Automaton grid = createBoard(imageView.getImage());
+
+        // One image is reused for every generation
+        LifeRenderer renderer = createRenderer(grid);
+        renderer.render(grid);
+        imageView.setImage(renderer.getImage());
+
+        // Start Game of Life off the FX thread; the UI only shows the
+        // newest finished generation on each pulse
+        stopGameOfLife();
+        simulation = new LifeSimulation(
+            grid,
+            Runtime.getRuntime().availableProcessors()
+        );
+        simulation.setMaxGenerationsPerSecond(maxGenerationsPerSecond);
+        LifeSimulation running = simulation;
+        displayTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                Automaton frame = running.pollFrame();
+                if (frame != null) {
+                    renderer.render(frame);
+                    running.releaseFrame();
+                }
             }
+        };
+
+        simulation.start();
+        displayTimer.start();
+    }
+
+    // Shows the seed 2^log2Generations generations later using HashLife,
+    // without stepping through the generations in between. Only two-state
+    // radius-1 rules without B0 can jump.
+    public static void jumpGameOfLife(ImageView imageView, int log2Generations) {
+        if (imageView.getImage() == null) return;
+
+        stopGameOfLife();
+        LifeGrid seed = createSeed(imageView.getImage());
+        HashLife hashLife = new HashLife(rule, hashLifeBudgetBytes);
+        hashLife.load(seed);
+        hashLife.advance(log2Generations);
+
+        // Render the same window the board started in
+        LifeGrid view = new LifeGrid(seed.getWidth(), seed.getHeight());
+        hashLife.render(view, 0, 0, 0);
+        LifeRenderer renderer = createRenderer(view);
+        renderer.render(view);
+        imageView.setImage(renderer.getImage());
+    }
+
+    public static void setHashLifeBudgetBytes(long bytes) {
+        hashLifeBudgetBytes = bytes;
+    }
+
+    public static LifeSeeder getSeeder() {
+        return seeder;
+    }
+
+    // Takes effect the next time the game starts, e.g. "B36/S23", "B2/S/C3"
+    // or "R5,C0,M1,S34..58,B34..45,NM"
+    public static void setRule(String spec) {
+        setRule(LifeRule.parse(spec));
+    }
+
+    public static void setRule(LifeRule newRule) {
+        rule = newRule;
+    }
+
+    public static LifeRule getRule() {
+        return rule;
+    }
+
+    // Runs 3 * bits boards, one per bitplane of red, green and blue, and
+    // shows their recombined colour; 0 goes back to black and white
+    public static void setColorBitsPerChannel(int bits) {
+        if (bits < 0 || bits > 8) {
+            throw new IllegalArgumentException("Bits per channel must be 0-8");
         }
+        colorBitsPerChannel = bits;
+    }
 
-        double averageBrightness = totalBrightness / pixelCount;
+    public static int getColorBitsPerChannel() {
+        return colorBitsPerChannel;
+    }
 
-        // Calculate variance
-        double variance = 0;
-        for (int i = 0; i < pixelCount; i++) {
-            variance += Math.pow(brightnesses[i] - averageBrightness, 2);
+    // The seed under the current rule and colour mode
+    private static Automaton createBoard(Image source) {
+        try {
+            return seeder.seedBoard(Raster.read(source), rule, colorBitsPerChannel);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return emptySeed(source);
         }
-        variance /= pixelCount;
-
-        // Adjust threshold based on variance
-        double varianceWeight = Math.min(1.0, Math.max(0.1, variance * 10));
-        double threshold = averageBrightness * varianceWeight;
-
-        for (int y = 0; y < height; y += chunkSize) {
-            for (int x = 0; x < width; x += chunkSize) {
-                double chunkBrightness = 0;
-                int validPixels = 0;
-
-                // Calculate average brightness for the chunk
-                for (int cy = 0; cy < chunkSize && (y + cy) < height; cy++) {
-                    for (int cx = 0; cx < chunkSize && (x + cx) < width; cx++) {
-                        Color color = reader.getColor(
-                            (int) (((x + cx) * source.getWidth()) / 640.0),
-                            (int) (((y + cy) * source.getWidth()) / 640.0)
-                        );
-                        chunkBrightness += color.getBrightness();
-                        validPixels++;
-                    }
-                }
+    }
 
-                double avgChunkBrightness = chunkBrightness / validPixels;
-                Color chunkColor = (avgChunkBrightness < threshold)
-                    ? Color.BLACK
-                    : Color.WHITE;
-
-                // Set the color for the entire chunk
-                for (int cy = 0; cy < chunkSize && (y + cy) < height; cy++) {
-                    for (int cx = 0; cx < chunkSize && (x + cx) < width; cx++) {
-                        bwImage
-                            .getPixelWriter()
-                            .setColor(x + cx, y + cy, chunkColor);
-                    }
-                }
-            }
+    // Thresholds the image into the live/dead seed the simulation starts from
+    public static LifeGrid createSeed(Image source) {
+        try {
+            return seeder.seed(Raster.read(source));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return emptySeed(source);
         }
+    }
 
-        AtomicReference<WritableImage> bwImageRef = new AtomicReference<>(
-            bwImage
+    private static LifeGrid emptySeed(Image source) {
+        return new LifeGrid(
+            seeder.boardColumns((int) source.getWidth()),
+            seeder.boardRows((int) source.getWidth(), (int) source.getHeight())
         );
-        imageView.setImage(bwImageRef.get());
-
-        // Start Game of Life
-        timeline = new Timeline(
-            new KeyFrame(Duration.millis(200), event -> {
-                WritableImage nextGeneration = new WritableImage(width, height);
-                PixelReader pixelReader = bwImageRef.get().getPixelReader();
-
-                for (int y = 0; y < height; y += chunkSize) {
-                    for (int x = 0; x < width; x += chunkSize) {
-                        int aliveNeighbors = countAliveNeighbors(
-                            pixelReader,
-                            x,
-                            y,
-                            width,
-                            height,
-                            chunkSize
-                        );
-                        Color currentColor = pixelReader.getColor(x, y);
-                        Color nextColor;
-
-                        if (currentColor.equals(Color.BLACK)) {
-                            nextColor = (aliveNeighbors == 3 ||
-                                    aliveNeighbors == 2)
-                                ? Color.BLACK
-                                : Color.WHITE;
-                        } else {
-                            nextColor = (aliveNeighbors == 3)
-                                ? Color.BLACK
-                                : Color.WHITE;
-                        }
-
-                        // Set the color for the entire chunk in the next generation
-                        for (
-                            int cy = 0;
-                            cy < chunkSize && (y + cy) < height;
-                            cy++
-                        ) {
-                            for (
-                                int cx = 0;
-                                cx < chunkSize && (x + cx) < width;
-                                cx++
-                            ) {
-                                nextGeneration
-                                    .getPixelWriter()
-                                    .setColor(x + cx, y + cy, nextColor);
-                            }
-                        }
-                    }
-                }
+    }
 
-                bwImageRef.set(nextGeneration);
-                imageView.setImage(bwImageRef.get());
-            })
+    // Cells are drawn as squares so the board fills BOARD_WIDTH pixels;
+    // boards wider than that get one pixel per cell
+    private static LifeRenderer createRenderer(Automaton grid) {
+        int cellSize = Math.max(1, BOARD_WIDTH / grid.getWidth());
+        return new LifeRenderer(
+            grid.getWidth() * cellSize,
+            grid.getHeight() * cellSize,
+            cellSize
         );
-
-        timeline.setCycleCount(Timeline.INDEFINITE);
-        timeline.play();
     }
 
-    public static void stopGameOfLife() {
-        if (timeline != null) {
-            timeline.stop();
+    // Caps the simulation independently of the display refresh rate; 0 removes the cap
+    public static void setMaxGenerationsPerSecond(double rate) {
+        maxGenerationsPerSecond = rate;
+        if (simulation != null) {
+            simulation.setMaxGenerationsPerSecond(rate);
         }
     }
 
-    private static int countAliveNeighbors(
-        PixelReader reader,
-        int x,
-        int y,
-        int width,
-        int height,
-        int chunkSize
-    ) {
-        int count = 0;
-        for (int dy = -chunkSize; dy <= chunkSize; dy += chunkSize) {
-            for (int dx = -chunkSize; dx <= chunkSize; dx += chunkSize) {
-                if (dx == 0 && dy == 0) continue;
-                int nx = x + dx;
-                int ny = y + dy;
-                if (nx >= 0 && nx < width && ny >= 0 && ny < height) {
-                    if (reader.getColor(nx, ny).equals(Color.BLACK)) {
-                        count++;
-                    }
-                }
-            }
+    public static double getMaxGenerationsPerSecond() {
+        return maxGenerationsPerSecond;
+    }
+
+    public static double getGenerationsPerSecond() {
+        return simulation != null ? simulation.getGenerationsPerSecond() : 0;
+    }
+
+    public static boolean isRunning() {
+        return simulation != null && simulation.isRunning();
+    }
+
+    public static void stopGameOfLife() {
+        if (displayTimer != null) {
+            displayTimer.stop();
+        }
+        if (simulation != null) {
+            simulation.stop();
         }
-        return count;
     }
 }
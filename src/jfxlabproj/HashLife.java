@@ -0,0 +1,464 @@
+package jfxlabproj.gameoflife;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+public class HashLife {
+
+    // Rough heap cost of one node plus its hash table slot
+    private static final int BYTES_PER_NODE = 80;
+    private static final int MIN_LEVEL = 3;
+
+    static final class Node {
+
+        final Node nw;
+        final Node ne;
+        final Node sw;
+        final Node se;
+        final int level;
+        final long population;
+        final long id;
+        // Memoized centre after 2^step generations, valid for the current step
+        Node next;
+        // Bucket chain in the canonical table
+        Node chain;
+
+        Node(Node nw, Node ne, Node sw, Node se, long id) {
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            this.level = nw.level + 1;
+            this.population =
+                nw.population + ne.population + sw.population + se.population;
+            this.id = id;
+        }
+
+        Node(boolean alive) {
+            this.nw = null;
+            this.ne = null;
+            this.sw = null;
+            this.se = null;
+            this.level = 0;
+            this.population = alive ? 1 : 0;
+            this.id = alive ? 1 : 0;
+        }
+    }
+
+    private final LifeRule rule;
+    private final Node alive = new Node(true);
+    private final Node dead = new Node(false);
+    private final List<Node> emptyNodes = new ArrayList<>();
+    private final long maxNodes;
+    // Nodes held by computations in progress: the arguments and finished
+    // parts of every active successor, build and expand call. A
+    // collection keeps them, so work done before it is not rebuilt.
+    private final List<Node> working = new ArrayList<>();
+
+    private Node[] table = new Node[1 << 16];
+    private int size;
+    private long collectAt;
+    private long nextId = 2;
+    private int step = -1;
+    private long collections;
+
+    private Node root;
+    // Grid coordinates of the root's top-left cell
+    private long originX;
+    private long originY;
+    private long generation;
+
+    public HashLife(long heapBudgetBytes) {
+        this(LifeRule.CONWAY, heapBudgetBytes);
+    }
+
+    // Any two-state radius-1 rule without B0 works; only the 4x4 base
+    // case uses it. Under B0 empty space does not stay empty, which the
+    // empty-node shortcut and the finite tree both rely on.
+    public HashLife(LifeRule rule, long heapBudgetBytes) {
+        if (!rule.isLifeLike()) {
+            throw new IllegalArgumentException(
+                "HashLife needs a two-state radius-1 rule, not " + rule
+            );
+        }
+        if (rule.isBirth(0)) {
+            throw new IllegalArgumentException(
+                "HashLife cannot run rules with birth on 0 neighbours (B0): " + rule
+            );
+        }
+        this.rule = rule;
+        this.maxNodes = Math.max(1 << 12, heapBudgetBytes / BYTES_PER_NODE);
+        this.collectAt = maxNodes;
+        emptyNodes.add(dead);
+        root = empty(MIN_LEVEL);
+    }
+
+    // Loads a LifeGrid seed; the simulation then runs on an unbounded plane
+    public void load(LifeGrid grid) {
+        int level = MIN_LEVEL;
+        while ((1L << level) < Math.max(grid.getWidth(), grid.getHeight())) {
+            level++;
+        }
+        root = build(grid, level, 0, 0);
+        originX = 0;
+        originY = 0;
+        generation = grid.getGeneration();
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getPopulation() {
+        return root.population;
+    }
+
+    public int getNodeCount() {
+        return size;
+    }
+
+    public long getCollections() {
+        return collections;
+    }
+
+    // Advances the pattern by 2^log2Generations generations in one step
+    public void advance(int log2Generations) {
+        if (log2Generations < 0 || log2Generations > 61) {
+            throw new IllegalArgumentException(
+                "log2Generations out of range: " + log2Generations
+            );
+        }
+        if (log2Generations != step) {
+            // Memoized results are only valid for one step size
+            clearMemos();
+            step = log2Generations;
+        }
+
+        // Grow until the pattern sits in the inner quarter and the root is
+        // big enough that nothing can escape the result square
+        while (
+            root.level < step + 3 ||
+            centre(centre(root)).population != root.population
+        ) {
+            expand();
+        }
+
+        long shift = 1L << (root.level - 2);
+        root = successor(root, step);
+        originX += shift;
+        originY += shift;
+        generation += 1L << step;
+    }
+
+    // Copies the window starting at (x, y) into the view. At scaleLog2 > 0
+    // each view cell stands for a 2^scale square and is alive if any is.
+    public void render(LifeGrid view, long x, long y, int scaleLog2) {
+        view.clear();
+        renderNode(view, root, originX - x, originY - y, scaleLog2);
+    }
+
+    private void renderNode(
+        LifeGrid view,
+        Node node,
+        long left,
+        long top,
+        int scaleLog2
+    ) {
+        if (node.population == 0) return;
+        long span = 1L << node.level;
+        long viewWidth = (long) view.getWidth() << scaleLog2;
+        long viewHeight = (long) view.getHeight() << scaleLog2;
+        if (
+            left >= viewWidth ||
+            top >= viewHeight ||
+            left + span <= 0 ||
+            top + span <= 0
+        ) return;
+
+        if (node.level <= scaleLog2) {
+            long cellX = Math.floorDiv(left, 1L << scaleLog2);
+            long cellY = Math.floorDiv(top, 1L << scaleLog2);
+            if (
+                cellX >= 0 &&
+                cellY >= 0 &&
+                cellX < view.getWidth() &&
+                cellY < view.getHeight()
+            ) {
+                view.set((int) cellX, (int) cellY, true);
+            }
+            return;
+        }
+        long half = span >> 1;
+        renderNode(view, node.nw, left, top, scaleLog2);
+        renderNode(view, node.ne, left + half, top, scaleLog2);
+        renderNode(view, node.sw, left, top + half, scaleLog2);
+        renderNode(view, node.se, left + half, top + half, scaleLog2);
+    }
+
+    private Node build(LifeGrid grid, int level, int x, int y) {
+        if (x >= grid.getWidth() || y >= grid.getHeight()) {
+            return empty(level);
+        }
+        if (level == 0) {
+            return grid.get(x, y) ? alive : dead;
+        }
+        int half = 1 << (level - 1);
+        int frame = working.size();
+        Node node = join(
+            hold(build(grid, level - 1, x, y)),
+            hold(build(grid, level - 1, x + half, y)),
+            hold(build(grid, level - 1, x, y + half)),
+            hold(build(grid, level - 1, x + half, y + half))
+        );
+        release(frame);
+        return node;
+    }
+
+    private void expand() {
+        Node border = empty(root.level - 1);
+        int frame = working.size();
+        root = join(
+            hold(join(border, border, border, root.nw)),
+            hold(join(border, border, root.ne, border)),
+            hold(join(border, root.sw, border, border)),
+            hold(join(root.se, border, border, border))
+        );
+        release(frame);
+        long half = 1L << (root.level - 2);
+        originX -= half;
+        originY -= half;
+    }
+
+    // Centre of a node at level L, advanced 2^min(j, L - 2) generations
+    private Node successor(Node node, int j) {
+        if (node.population == 0) return node.nw;
+        if (node.next != null) return node.next;
+
+        int frame = working.size();
+        hold(node);
+        Node result;
+        if (node.level == 2) {
+            result = successor4x4(node);
+        } else {
+            Node c1 = hold(successor(node.nw, j));
+            Node c2 = hold(successor(hold(horizontal(node.nw, node.ne)), j));
+            Node c3 = hold(successor(node.ne, j));
+            Node c4 = hold(successor(hold(vertical(node.nw, node.sw)), j));
+            Node c5 = hold(successor(hold(centre(node)), j));
+            Node c6 = hold(successor(hold(vertical(node.ne, node.se)), j));
+            Node c7 = hold(successor(node.sw, j));
+            Node c8 = hold(successor(hold(horizontal(node.sw, node.se)), j));
+            Node c9 = hold(successor(node.se, j));
+
+            if (j < node.level - 2) {
+                // Slow path: the nine results already cover 2^j generations
+                result = join(
+                    hold(join(c1.se, c2.sw, c4.ne, c5.nw)),
+                    hold(join(c2.se, c3.sw, c5.ne, c6.nw)),
+                    hold(join(c4.se, c5.sw, c7.ne, c8.nw)),
+                    hold(join(c5.se, c6.sw, c8.ne, c9.nw))
+                );
+            } else {
+                // Full speed: a second round doubles the step to 2^(L - 2)
+                result = join(
+                    hold(successor(hold(join(c1, c2, c4, c5)), j)),
+                    hold(successor(hold(join(c2, c3, c5, c6)), j)),
+                    hold(successor(hold(join(c4, c5, c7, c8)), j)),
+                    hold(successor(hold(join(c5, c6, c8, c9)), j))
+                );
+            }
+        }
+        node.next = result;
+        release(frame);
+        return result;
+    }
+
+    // Keeps node through any collection until the frame it was held in
+    // is released
+    private Node hold(Node node) {
+        working.add(node);
+        return node;
+    }
+
+    private void release(int frame) {
+        working.subList(frame, working.size()).clear();
+    }
+
+    // One generation of the centre 2x2 of a 4x4 node
+    private Node successor4x4(Node node) {
+        int bits = 0;
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                if (cell(node, x, y)) bits |= 1 << (y * 4 + x);
+            }
+        }
+        return join(
+            nextCell(bits, 1, 1),
+            nextCell(bits, 2, 1),
+            nextCell(bits, 1, 2),
+            nextCell(bits, 2, 2)
+        );
+    }
+
+    private Node nextCell(int bits, int x, int y) {
+        int neighbours = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (dx == 0 && dy == 0) continue;
+                neighbours += (bits >>> ((y + dy) * 4 + x + dx)) & 1;
+            }
+        }
+        boolean current = ((bits >>> (y * 4 + x)) & 1) != 0;
+        boolean next = current
+            ? rule.isSurvival(neighbours)
+            : rule.isBirth(neighbours);
+        return next ? alive : dead;
+    }
+
+    private static boolean cell(Node node, int x, int y) {
+        while (node.level > 0) {
+            int half = 1 << (node.level - 1);
+            boolean east = x >= half;
+            boolean south = y >= half;
+            node = south
+                ? (east ? node.se : node.sw)
+                : (east ? node.ne : node.nw);
+            if (east) x -= half;
+            if (south) y -= half;
+        }
+        return node.population != 0;
+    }
+
+    private Node centre(Node node) {
+        return join(node.nw.se, node.ne.sw, node.sw.ne, node.se.nw);
+    }
+
+    private Node horizontal(Node west, Node east) {
+        return join(west.ne, east.nw, west.se, east.sw);
+    }
+
+    private Node vertical(Node north, Node south) {
+        return join(north.sw, north.se, south.nw, south.ne);
+    }
+
+    private Node empty(int level) {
+        while (emptyNodes.size() <= level) {
+            Node smaller = emptyNodes.get(emptyNodes.size() - 1);
+            emptyNodes.add(join(smaller, smaller, smaller, smaller));
+        }
+        return emptyNodes.get(level);
+    }
+
+    // Returns the canonical node for these four children
+    private Node join(Node nw, Node ne, Node sw, Node se) {
+        int slot = hash(nw, ne, sw, se) & (table.length - 1);
+        for (Node node = table[slot]; node != null; node = node.chain) {
+            if (node.nw == nw && node.ne == ne && node.sw == sw && node.se == se) {
+                return node;
+            }
+        }
+        if (size >= collectAt) {
+            // Safe mid-computation: every node a computation in progress
+            // holds is in working, and is kept with its memoized result
+            collect();
+        }
+        Node node = new Node(nw, ne, sw, se, nextId++);
+        insert(node);
+        return node;
+    }
+
+    private void insert(Node node) {
+        if (size >= table.length * 3 / 4) {
+            rehash(table.length * 2);
+        }
+        int slot = hash(node.nw, node.ne, node.sw, node.se) & (table.length - 1);
+        node.chain = table[slot];
+        table[slot] = node;
+        size++;
+    }
+
+    private void rehash(int capacity) {
+        Node[] old = table;
+        table = new Node[capacity];
+        size = 0;
+        for (Node head : old) {
+            Node node = head;
+            while (node != null) {
+                Node following = node.chain;
+                int slot =
+                    hash(node.nw, node.ne, node.sw, node.se) & (capacity - 1);
+                node.chain = table[slot];
+                table[slot] = node;
+                size++;
+                node = following;
+            }
+        }
+    }
+
+    private static int hash(Node nw, Node ne, Node sw, Node se) {
+        long h = nw.id * 0x9E3779B97F4A7C15L;
+        h = (h ^ ne.id) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ sw.id) * 0x165667B19E3779F9L;
+        h = (h ^ se.id) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void clearMemos() {
+        for (Node head : table) {
+            for (Node node = head; node != null; node = node.chain) {
+                node.next = null;
+            }
+        }
+    }
+
+    // Evicts every node neither the current pattern nor a computation in
+    // progress uses. Memoized results of kept nodes are kept too, unless
+    // that leaves the table over half the budget; then they are dropped,
+    // those of held nodes included, so only the live nodes remain.
+    private void collect() {
+        collections++;
+        mark(true);
+        if (size > maxNodes / 2) mark(false);
+        // Only a live set that alone exceeds the budget goes over it, and
+        // then by a quarter of the budget before the next collection
+        collectAt = size < maxNodes ? maxNodes : size + maxNodes / 4;
+    }
+
+    // Rebuilds the table from the roots: the pattern, the empty nodes and
+    // everything in working, following memoized results if keepMemos is
+    // set and dropping them otherwise
+    private void mark(boolean keepMemos) {
+        // Nodes left out are unreachable: callers hold theirs in working
+        table = new Node[table.length];
+        size = 0;
+
+        List<Node> keep = new ArrayList<>();
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        for (int level = 1; level < emptyNodes.size(); level++) {
+            pending.push(emptyNodes.get(level));
+        }
+        for (Node node : working) {
+            pending.push(node);
+        }
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            // The chain field doubles as the visited mark while collecting
+            if (node.level == 0 || node.chain == node) continue;
+            node.chain = node;
+            keep.add(node);
+            pending.push(node.nw);
+            pending.push(node.ne);
+            pending.push(node.sw);
+            pending.push(node.se);
+            if (keepMemos && node.next != null) pending.push(node.next);
+        }
+        for (Node node : keep) {
+            if (!keepMemos) node.next = null;
+            node.chain = null;
+            insert(node);
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package jfxlabproj.export;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.event.IIOWriteProgressListener;
+import javax.imageio.stream.ImageOutputStream;
+import jfxlabproj.filter.FlattenFilter;
+import jfxlabproj.raster.PixelSource;
+import jfxlabproj.raster.Raster;
+
+// Writes a raster to an image file off the FX thread. Pixels go into the
+// BufferedImage's int buffer in bulk, the writer reports progress as it
+// encodes, and cancelling aborts the writer and removes the partial file.
+// The target is only replaced once the encoded file is complete.
+public class ImageExporter {
+
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "image-export");
+            thread.setDaemon(true);
+            return thread;
+        }
+    );
+
+    // Runs the writers of one exportAll side by side; ImageIO writers
+    // are mostly CPU-bound, but each holds its own file open
+    private static final ExecutorService encoders = Executors.newCachedThreadPool(
+        runnable -> {
+            Thread thread = new Thread(runnable, "image-encode");
+            thread.setDaemon(true);
+            return thread;
+        }
+    );
+
+    // Formats without alpha are composited onto this
+    private int background = 0xFFFFFF;
+    private float jpegQuality = 0.9f;
+    // Deflate level, 0 (fastest, largest) to 9 (slowest, smallest); the
+    // JDK's PNG writer uses 4 unless told otherwise
+    private int pngCompressionLevel = 4;
+    private boolean parallelFormats = true;
+    // Rows fetched at a time when streaming a source that is not a raster
+    private static final int STREAM_BAND_ROWS = 256;
+
+    public interface ProgressListener {
+        // fraction runs from 0 to 1 over the encode
+        void progress(double fraction);
+    }
+
+    public void setBackground(int rgb) {
+        this.background = rgb & 0xFFFFFF;
+    }
+
+    public void setJpegQuality(float quality) {
+        if (quality < 0 || quality > 1) {
+            throw new IllegalArgumentException(
+                "JPEG quality must be 0-1, not " + quality
+            );
+        }
+        this.jpegQuality = quality;
+    }
+
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+
+    public void setPngCompressionLevel(int level) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException(
+                "PNG compression level must be 0-9, not " + level
+            );
+        }
+        this.pngCompressionLevel = level;
+    }
+
+    public int getPngCompressionLevel() {
+        return pngCompressionLevel;
+    }
+
+    // exportAll runs its writers side by side unless this is false, for
+    // callers that already run several exports at once
+    public void setParallelFormats(boolean parallelFormats) {
+        this.parallelFormats = parallelFormats;
+    }
+
+    public static boolean hasAlpha(String format) {
+        return normalize(format).equals("png");
+    }
+
+    public static class Result {
+
+        private final String format;
+        private final File file;
+        private final long bytes;
+        private final long convertNanos;
+        private final long encodeNanos;
+
+        Result(
+            String format,
+            File file,
+            long bytes,
+            long convertNanos,
+            long encodeNanos
+        ) {
+            this.format = format;
+            this.file = file;
+            this.bytes = bytes;
+            this.convertNanos = convertNanos;
+            this.encodeNanos = encodeNanos;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getConvertNanos() {
+            return convertNanos;
+        }
+
+        public long getEncodeNanos() {
+            return encodeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%s %d KB: convert %.1f ms, encode %.1f ms",
+                format.toUpperCase(Locale.ROOT),
+                bytes / 1024,
+                convertNanos / 1e6,
+                encodeNanos / 1e6
+            );
+        }
+    }
+
+    // Runs export on the export thread; cancel(true) on the future stops
+    // the encode. whenDone, if given, gets the future once it has finished
+    // or been cancelled.
+    public Future<Result> start(
+        PixelSource source,
+        String format,
+        File output,
+        ProgressListener listener,
+        Consumer<Future<Result>> whenDone
+    ) {
+        FutureTask<Result> task = new FutureTask<>(() ->
+            export(source, format, output, listener)
+        ) {
+            @Override
+            protected void done() {
+                if (whenDone != null) whenDone.accept(this);
+            }
+        };
+        worker.execute(task);
+        return task;
+    }
+
+    // A raster is converted whole; any other source, such as a TiledImage,
+    // is streamed to the writer a band of rows at a time
+    public Result export(
+        PixelSource source,
+        String format,
+        File output,
+        ProgressListener listener
+    ) throws IOException, InterruptedException {
+        String name = normalize(format);
+        ImageWriter writer = writerFor(name);
+        try {
+            long start = System.nanoTime();
+            RenderedImage image = image(source, name, null);
+            long convertNanos = System.nanoTime() - start;
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Export cancelled");
+            }
+            return write(writer, name, image, output, convertNanos, listener);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    // The image to encode for format; converted reuses a raster's earlier
+    // conversion for the same alpha mode
+    private RenderedImage image(
+        PixelSource source,
+        String format,
+        BufferedImage converted
+    ) throws IOException {
+        boolean alpha = hasAlpha(format);
+        if (source instanceof Raster) {
+            return converted != null ? converted : convert((Raster) source, alpha);
+        }
+        return new StreamedImage(
+            source,
+            alpha,
+            background,
+            !format.equals("png"),
+            STREAM_BAND_ROWS
+        );
+    }
+
+    // What one format of an exportAll came to: a result or an error
+    public static class Outcome {
+
+        private final String format;
+        private final File file;
+        private final Result result;
+        private final String error;
+
+        Outcome(String format, File file, Result result, String error) {
+            this.format = format;
+            this.file = file;
+            this.result = result;
+            this.error = error;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public boolean isWritten() {
+            return result != null;
+        }
+
+        // null unless written
+        public Result getResult() {
+            return result;
+        }
+
+        // null if written
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return result != null
+                ? file.getName() + ": " + result
+                : file.getName() + ": failed, " + error;
+        }
+    }
+
+    // Runs exportAll on the export thread, like start
+    public Future<List<Outcome>> startAll(
+        PixelSource source,
+        List<String> formats,
+        File base,
+        ProgressListener listener,
+        Consumer<Future<List<Outcome>>> whenDone
+    ) {
+        FutureTask<List<Outcome>> task = new FutureTask<>(() ->
+            exportAll(source, formats, base, listener)
+        ) {
+            @Override
+            protected void done() {
+                if (whenDone != null) whenDone.accept(this);
+            }
+        };
+        worker.execute(task);
+        return task;
+    }
+
+    // Writes base.jpg, base.png, ... one per format, with base's extension
+    // dropped. The raster is converted once per alpha mode, not once per
+    // format, and every writer encodes on its own thread. A format that
+    // fails, or has no writer at all, gets an Outcome saying why while
+    // the others carry on. listener sees the mean progress. Sources that
+    // are not rasters are streamed once per format, one format at a time.
+    public List<Outcome> exportAll(
+        PixelSource source,
+        List<String> formats,
+        File base,
+        ProgressListener listener
+    ) throws InterruptedException {
+        String stem = base.getName().replaceFirst("\\.[^.]*$", "");
+        Outcome[] outcomes = new Outcome[formats.size()];
+        ImageWriter[] writers = new ImageWriter[formats.size()];
+        boolean needAlpha = false;
+        boolean needOpaque = false;
+        for (int i = 0; i < outcomes.length; i++) {
+            String format = formats.get(i);
+            File file = new File(
+                base.getParentFile(),
+                stem + "." + format.toLowerCase(Locale.ROOT)
+            );
+            String name = normalize(format);
+            outcomes[i] = new Outcome(name, file, null, null);
+            try {
+                writers[i] = writerFor(name);
+            } catch (IOException e) {
+                outcomes[i] = new Outcome(name, file, null, e.getMessage());
+                continue;
+            }
+            if (hasAlpha(name)) {
+                needAlpha = true;
+            } else {
+                needOpaque = true;
+            }
+        }
+
+        List<FutureTask<Result>> encodes = new ArrayList<>();
+        try {
+            long start = System.nanoTime();
+            Raster raster = source instanceof Raster ? (Raster) source : null;
+            BufferedImage withAlpha = needAlpha && raster != null
+                ? convert(raster, true)
+                : null;
+            BufferedImage opaque = needOpaque && raster != null
+                ? convert(raster, false)
+                : null;
+            long convertNanos = System.nanoTime() - start;
+
+            double[] fractions = new double[outcomes.length];
+            long parts = Arrays.stream(writers).filter(w -> w != null).count();
+            for (int i = 0; i < outcomes.length; i++) {
+                if (writers[i] == null) {
+                    encodes.add(null);
+                    continue;
+                }
+                int index = i;
+                String name = outcomes[i].format;
+                BufferedImage converted = hasAlpha(name) ? withAlpha : opaque;
+                ProgressListener part = fraction -> {
+                    if (listener == null) return;
+                    double mean;
+                    synchronized (fractions) {
+                        fractions[index] = fraction;
+                        mean = Arrays.stream(fractions).sum() / parts;
+                    }
+                    listener.progress(mean);
+                };
+                File file = outcomes[i].file;
+                FutureTask<Result> encode = new FutureTask<>(() ->
+                    write(
+                        writers[index],
+                        name,
+                        image(source, name, converted),
+                        file,
+                        convertNanos,
+                        part
+                    )
+                );
+                encodes.add(encode);
+                if (parallelFormats && raster != null) {
+                    encoders.execute(encode);
+                } else {
+                    encode.run();
+                }
+            }
+
+            for (int i = 0; i < outcomes.length; i++) {
+                if (encodes.get(i) == null) continue;
+                Outcome pending = outcomes[i];
+                try {
+                    Result result = encodes.get(i).get();
+                    outcomes[i] = new Outcome(pending.format, pending.file, result, null);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    String message = cause.getMessage() != null
+                        ? cause.getMessage()
+                        : cause.toString();
+                    outcomes[i] = new Outcome(
+                        pending.format,
+                        pending.file,
+                        null,
+                        message
+                    );
+                }
+            }
+            return Arrays.asList(outcomes);
+        } finally {
+            // Cancelling the batch interrupts every encode still running
+            for (FutureTask<Result> encode : encodes) {
+                if (encode != null) encode.cancel(true);
+            }
+            for (ImageWriter writer : writers) {
+                if (writer != null) writer.dispose();
+            }
+        }
+    }
+
+    // Formats without alpha are flattened onto the background first
+    private BufferedImage convert(Raster raster, boolean alpha) {
+        if (!alpha) {
+            raster = new FlattenFilter(background).apply(raster);
+        }
+        return raster.toBufferedImage(
+            alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB
+        );
+    }
+
+    // Encodes to output.part and moves it over output once complete
+    private Result write(
+        ImageWriter writer,
+        String name,
+        RenderedImage image,
+        File output,
+        long convertNanos,
+        ProgressListener listener
+    ) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        File partial = new File(output.getPath() + ".part");
+        boolean done = false;
+        try {
+            try {
+                encode(writer, parameters(writer, name), image, partial, listener);
+            } catch (StreamedImage.Failure e) {
+                e.rethrow();
+            }
+            // An aborted writer returns normally with a truncated file
+            if (Thread.interrupted()) {
+                throw new InterruptedException("Export cancelled");
+            }
+            Files.move(
+                partial.toPath(),
+                output.toPath(),
+                StandardCopyOption.REPLACE_EXISTING
+            );
+            done = true;
+        } finally {
+            if (!done) Files.deleteIfExists(partial.toPath());
+        }
+        return new Result(
+            name,
+            output,
+            output.length(),
+            convertNanos,
+            System.nanoTime() - start
+        );
+    }
+
+    private static void encode(
+        ImageWriter writer,
+        ImageWriteParam param,
+        RenderedImage image,
+        File partial,
+        ProgressListener listener
+    ) throws IOException {
+        writer.addIIOWriteProgressListener(new IIOWriteProgressListener() {
+            @Override
+            public void imageProgress(ImageWriter source, float percentageDone) {
+                // The writer checks for abort between rows
+                if (Thread.currentThread().isInterrupted()) source.abort();
+                if (listener != null) listener.progress(percentageDone / 100);
+            }
+
+            @Override
+            public void imageStarted(ImageWriter source, int imageIndex) {}
+
+            @Override
+            public void imageComplete(ImageWriter source) {
+                if (listener != null) listener.progress(1);
+            }
+
+            @Override
+            public void thumbnailStarted(
+                ImageWriter source,
+                int imageIndex,
+                int thumbnailIndex
+            ) {}
+
+            @Override
+            public void thumbnailProgress(ImageWriter source, float percentageDone) {}
+
+            @Override
+            public void thumbnailComplete(ImageWriter source) {}
+
+            @Override
+            public void writeAborted(ImageWriter source) {}
+        });
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(partial)) {
+            if (stream == null) {
+                throw new IOException("Cannot write " + partial);
+            }
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+    }
+
+    private ImageWriteParam parameters(ImageWriter writer, String format) {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (!param.canWriteCompressed()) return param;
+        if (format.equals("jpeg")) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+        } else if (format.equals("png")) {
+            // The PNG writer turns quality q into deflate level 9 - round(9q)
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality((9 - pngCompressionLevel) / 9f);
+        }
+        return param;
+    }
+
+    private static ImageWriter writerFor(String format) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException(
+                "No image writer for " + format.toUpperCase(Locale.ROOT)
+            );
+        }
+        return writers.next();
+    }
+
+    private static String normalize(String format) {
+        String name = format.toLowerCase(Locale.ROOT);
+        return name.equals("jpg") ? "jpeg" : name;
+    }
+}
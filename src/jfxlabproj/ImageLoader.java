@@ -0,0 +1,418 @@
+package jfxlabproj.raster;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import javafx.scene.image.Image;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+
+// Opens image files off the FX thread. The first decode is subsampled
+// down to about the size it will be shown at, so a huge scan costs a
+// few megabytes until something needs every pixel; the full-resolution
+// raster is decoded on request and kept only while memory allows. The
+// preview's pyramid is built on the load thread too, so views can pick
+// the level that fills them. Cancelling aborts the reader between rows.
+public class ImageLoader {
+
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "image-load");
+            thread.setDaemon(true);
+            return thread;
+        }
+    );
+
+    public interface ProgressListener {
+        // fraction runs from 0 to 1 over the decode
+        void progress(double fraction);
+    }
+
+    // An opened file: its preview, and its full raster on demand
+    public static class Loaded {
+
+        private final File file;
+        private final int width;
+        private final int height;
+        private final int subsampling;
+        private final Image preview;
+        // Read on first use, under its own lock so close() never waits on it
+        private final Object hashLock = new Object();
+        private String contentHash;
+        private SoftReference<Raster> full = new SoftReference<>(null);
+        private TiledImage tiled;
+        // The opener's hold and one per save or scan still reading from
+        // the image; the last release closes it. A lock of its own, as
+        // releasing must not wait for a decode.
+        private final Object holdLock = new Object();
+        private int holds = 1;
+
+        private Loaded(
+            File file,
+            int width,
+            int height,
+            int subsampling,
+            Raster pixels
+        ) {
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.subsampling = subsampling;
+            this.preview = pixels.toImage();
+            if (subsampling == 1) full = new SoftReference<>(pixels);
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        // Full-resolution size
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        // Every subsampling-th pixel of every subsampling-th row is in the preview
+        public int getSubsampling() {
+            return subsampling;
+        }
+
+        public boolean isSubsampled() {
+            return subsampling > 1;
+        }
+
+        public Image getPreview() {
+            return preview;
+        }
+
+        // A hash of the file's bytes, for ResultCache keys. The whole file
+        // is read the first time, on the calling thread, so opening a huge
+        // scan does not wait for it; see startContentHash.
+        public String getContentHash() throws IOException {
+            synchronized (hashLock) {
+                if (contentHash == null) contentHash = ResultCache.hash(file);
+                return contentHash;
+            }
+        }
+
+        // getContentHash on the load thread, queued behind any load in progress
+        public Future<String> startContentHash(Consumer<Future<String>> whenDone) {
+            return run(this::getContentHash, whenDone);
+        }
+
+        // Halvings of the preview, from the shared cache; built again if
+        // the cache let them go
+        public ImagePyramid getPyramid() {
+            return PyramidCache.shared().get(
+                this,
+                () -> ImagePyramid.build(Raster.read(preview), preview)
+            );
+        }
+
+        // Decodes the whole image on the calling thread, or returns the
+        // copy kept from last time. Callers must not modify it.
+        public synchronized Raster getFullRaster(ProgressListener listener)
+            throws IOException, InterruptedException {
+            Raster raster = full.get();
+            if (raster == null) {
+                raster = isSubsampled()
+                    ? toRaster(decode(file, 1, listener))
+                    : Raster.read(preview);
+                full = new SoftReference<>(raster);
+            } else if (listener != null) {
+                listener.progress(1);
+            }
+            return raster;
+        }
+
+        // Whether the full image is worth holding as one raster: at most a
+        // quarter of the heap
+        public boolean fitsInMemory() {
+            return 4L * width * height <= Runtime.getRuntime().maxMemory() / 4;
+        }
+
+        // The full image to read from: the whole raster when it fits in
+        // memory, otherwise tiles decoded from the file as they are read,
+        // cached in an eighth of the heap and spilled to disk beyond that
+        public synchronized PixelSource getFullSource(ProgressListener listener)
+            throws IOException, InterruptedException {
+            if (fitsInMemory()) return getFullRaster(listener);
+            if (tiled == null) {
+                tiled = new TiledImage(file);
+                tiled.setCacheBytes(
+                    Math.max(
+                        4L * tiled.getTileSize() * tiled.getTileSize(),
+                        Runtime.getRuntime().maxMemory() / 8
+                    )
+                );
+                tiled.setSpill(true);
+            }
+            if (listener != null) listener.progress(1);
+            return tiled;
+        }
+
+        // getFullSource on the load thread, queued behind any load in progress
+        public Future<PixelSource> startFullSource(
+            ProgressListener listener,
+            Consumer<Future<PixelSource>> whenDone
+        ) {
+            return run(() -> getFullSource(listener), whenDone);
+        }
+
+        // Another hold on the image, released with release()
+        public Loaded retain() {
+            synchronized (holdLock) {
+                if (holds == 0) throw new IllegalStateException("Image already closed");
+                holds++;
+                return this;
+            }
+        }
+
+        // Drops a hold; closes the image when it was the last
+        public void release() throws IOException {
+            synchronized (holdLock) {
+                if (holds == 0) throw new IllegalStateException("Image already closed");
+                if (--holds > 0) return;
+            }
+            close();
+        }
+
+        // Releases the pyramid, and the tiled source's file and spill if
+        // one was opened, whatever holds remain
+        public synchronized void close() throws IOException {
+            PyramidCache.shared().evict(this);
+            full.clear();
+            if (tiled != null) {
+                tiled.close();
+                tiled = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return isSubsampled()
+                ? String.format(
+                    "%s %dx%d (preview 1/%d)",
+                    file.getName(),
+                    width,
+                    height,
+                    subsampling
+                )
+                : String.format("%s %dx%d", file.getName(), width, height);
+        }
+    }
+
+    // Runs load on the load thread; cancel(true) on the future stops the
+    // decode. whenDone, if given, gets the future once it has finished
+    // or been cancelled.
+    public static Future<Loaded> start(
+        File file,
+        int maxWidth,
+        int maxHeight,
+        ProgressListener listener,
+        Consumer<Future<Loaded>> whenDone
+    ) {
+        return run(() -> load(file, maxWidth, maxHeight, listener), whenDone);
+    }
+
+    // Decodes file subsampled so the preview is no larger than maxWidth
+    // by maxHeight, or nearly so: subsampling is by whole steps
+    public static Loaded load(
+        File file,
+        int maxWidth,
+        int maxHeight,
+        ProgressListener listener
+    ) throws IOException, InterruptedException {
+        if (maxWidth <= 0 || maxHeight <= 0) {
+            throw new IllegalArgumentException("Preview size must be positive");
+        }
+        int[] size = readSize(file);
+        int subsampling = Math.max(
+            1,
+            Math.max(ceilDiv(size[0], maxWidth), ceilDiv(size[1], maxHeight))
+        );
+        Raster pixels = toRaster(decode(file, subsampling, listener));
+        Loaded loaded = new Loaded(file, size[0], size[1], subsampling, pixels);
+        // Built here from the decoded pixels so the FX thread finds it ready
+        PyramidCache.shared().get(loaded, () -> ImagePyramid.build(pixels, loaded.preview));
+        return loaded;
+    }
+
+    private interface Load<T> {
+        T call() throws IOException, InterruptedException;
+    }
+
+    private static <T> Future<T> run(Load<T> load, Consumer<Future<T>> whenDone) {
+        FutureTask<T> task = new FutureTask<>(load::call) {
+            @Override
+            protected void done() {
+                if (whenDone != null) whenDone.accept(this);
+            }
+        };
+        worker.execute(task);
+        return task;
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    // Width and height from the header, without decoding any pixels
+    private static int[] readSize(File file) throws IOException {
+        try (ImageInputStream stream = open(file)) {
+            ImageReader reader = readerFor(file, stream);
+            try {
+                reader.setInput(stream, true, true);
+                return new int[] { reader.getWidth(0), reader.getHeight(0) };
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage decode(
+        File file,
+        int subsampling,
+        ProgressListener listener
+    ) throws IOException, InterruptedException {
+        try (ImageInputStream stream = open(file)) {
+            ImageReader reader = readerFor(file, stream);
+            try {
+                reader.setInput(stream, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return read(reader, param, listener);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Reads image 0 as packed ints where the reader allows, reporting
+    // progress; interrupting the thread aborts the read
+    static BufferedImage read(
+        ImageReader reader,
+        ImageReadParam param,
+        ProgressListener listener
+    ) throws IOException, InterruptedException {
+        ImageTypeSpecifier type = intType(reader);
+        if (type != null) param.setDestinationType(type);
+        reader.removeAllIIOReadProgressListeners();
+        reader.addIIOReadProgressListener(new ProgressAdapter(listener));
+        BufferedImage image = reader.read(0, param);
+        // An aborted read returns the rows decoded so far
+        if (Thread.interrupted()) {
+            throw new InterruptedException("Load cancelled");
+        }
+        return image;
+    }
+
+    static ImageInputStream open(File file) throws IOException {
+        ImageInputStream stream = ImageIO.createImageInputStream(file);
+        if (stream == null) {
+            throw new IOException("Cannot read " + file);
+        }
+        return stream;
+    }
+
+    static ImageReader readerFor(File file, ImageInputStream stream)
+        throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            throw new IOException("Not a readable image: " + file.getName());
+        }
+        return readers.next();
+    }
+
+    // Asks the reader for a packed int image when it can produce one, so
+    // the decoded buffer becomes the raster without a second copy
+    private static ImageTypeSpecifier intType(ImageReader reader) throws IOException {
+        ImageTypeSpecifier fallback = null;
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        while (types.hasNext()) {
+            ImageTypeSpecifier type = types.next();
+            int kind = type.getBufferedImageType();
+            if (kind == BufferedImage.TYPE_INT_ARGB) return type;
+            if (kind == BufferedImage.TYPE_INT_RGB && fallback == null) fallback = type;
+        }
+        return fallback;
+    }
+
+    static Raster toRaster(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_RGB) {
+            return Raster.read(image);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        if (type == BufferedImage.TYPE_INT_RGB) {
+            // The spare byte is undefined; the pixels are opaque
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] |= 0xFF000000;
+            }
+        }
+        return new Raster(pixels, 0, width, width, height, false);
+    }
+
+    private static class ProgressAdapter implements IIOReadProgressListener {
+
+        private final ProgressListener listener;
+
+        ProgressAdapter(ProgressListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone) {
+            // The reader checks for abort between rows
+            if (Thread.currentThread().isInterrupted()) source.abort();
+            if (listener != null) listener.progress(percentageDone / 100);
+        }
+
+        @Override
+        public void imageComplete(ImageReader source) {
+            if (listener != null) listener.progress(1);
+        }
+
+        @Override
+        public void sequenceStarted(ImageReader source, int minIndex) {}
+
+        @Override
+        public void sequenceComplete(ImageReader source) {}
+
+        @Override
+        public void imageStarted(ImageReader source, int imageIndex) {}
+
+        @Override
+        public void thumbnailStarted(
+            ImageReader source,
+            int imageIndex,
+            int thumbnailIndex
+        ) {}
+
+        @Override
+        public void thumbnailProgress(ImageReader source, float percentageDone) {}
+
+        @Override
+        public void thumbnailComplete(ImageReader source) {}
+
+        @Override
+        public void readAborted(ImageReader source) {}
+    }
+}
@@ -1,118 +1,150 @@
 // ImageProcessor.java
 package jfxlabproj;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import javafx.animation.FadeTransition;
-import javafx.scene.effect.Bloom;
-import javafx.scene.effect.ColorAdjust;
-import javafx.scene.effect.DropShadow;
-import javafx.scene.effect.GaussianBlur;
-import javafx.scene.effect.InnerShadow;
-import javafx.scene.effect.SepiaTone;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.paint.Color;
+import javafx.scene.image.WritableImage;
 import javafx.util.Duration;
+import jfxlabproj.filter.FilterChain;
+import jfxlabproj.filter.RasterFilter;
+import jfxlabproj.raster.Raster;
+import jfxlabproj.raster.ResultCache;
 
+// Filters are applied to the pixels rather than set as node effects, so
+// the view shows, and saveImage writes, the filtered image itself
 public class ImageProcessor {
 
-    public static void applySepia(ImageView imageView) {
-        if (imageView.getImage() != null) {
-            SepiaTone sepia = new SepiaTone(0.7);
-            Bloom bloom = new Bloom(0.2);
-            bloom.setInput(sepia);
-
-            DropShadow shadow = new DropShadow();
-            shadow.setRadius(10.0);
-            shadow.setSpread(0.3);
-            shadow.setColor(Color.rgb(0, 0, 0, 0.4));
-            shadow.setInput(bloom);
-
-            FadeTransition ft = new FadeTransition(
-                Duration.millis(300),
-                imageView
-            );
-            ft.setFromValue(0.7);
-            ft.setToValue(1.0);
-
-            imageView.setEffect(shadow);
-            ft.play();
+    // Orders requests and waits on the shared tile scheduler, which does
+    // the pixel work; cancelling interrupts the wait and skips the tiles
+    // not yet started
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "image-filter");
+            thread.setDaemon(true);
+            return thread;
         }
+    );
+
+    // Only touched on the FX thread; a result is shown only if no newer
+    // filter or reset came after it
+    private static long latestRequest;
+    private static Future<?> pending;
+    private static Consumer<Raster> onShown;
+
+    // Pixel hashes of the images filtered so far, so each is hashed once
+    private static final Map<Image, String> contentHashes = Collections.synchronizedMap(
+        new WeakHashMap<>()
+    );
+
+    // Called on the FX thread with each result as it replaces the view.
+    // Package-private, as Raster is not exported.
+    static void setOnShown(Consumer<Raster> listener) {
+        onShown = listener;
     }
 
-    public static void applyVignette(ImageView imageView) {
-        if (imageView.getImage() != null) {
-            // Create radial gradient for vignette effect
-            double width = imageView.getImage().getWidth();
-            double height = imageView.getImage().getHeight();
-            double radius = Math.max(width, height) * 0.7; // Adjust this value to control vignette size
-
-            InnerShadow innerShadow = new InnerShadow();
-            innerShadow.setRadius(radius * 0.3);
-            innerShadow.setChoke(0.2);
-            innerShadow.setColor(Color.rgb(0, 0, 0, 0.7));
-
-            DropShadow dropShadow = new DropShadow();
-            dropShadow.setRadius(radius * 0.2);
-            dropShadow.setSpread(0.4);
-            dropShadow.setColor(Color.rgb(0, 0, 0, 0.6));
-            dropShadow.setInput(innerShadow);
-
-            FadeTransition ft = new FadeTransition(
-                Duration.millis(300),
-                imageView
-            );
-            ft.setFromValue(0.7);
-            ft.setToValue(1.0);
-
-            imageView.setEffect(dropShadow);
-            ft.play();
-        }
+    // source is the image the preset is previewed on, so at scale 1
+    public static void applySepia(ImageView imageView, Image source) {
+        applyPreset(imageView, source, "sepia", 1);
     }
 
-    public static void applyBlur(ImageView imageView) {
-        if (imageView.getImage() != null) {
-            GaussianBlur blur = new GaussianBlur(15);
-            Bloom bloom = new Bloom(0.3);
-            bloom.setInput(blur);
-
-            DropShadow shadow = new DropShadow();
-            shadow.setRadius(15.0);
-            shadow.setSpread(0.4);
-            shadow.setColor(Color.rgb(0, 0, 0, 0.3));
-            shadow.setInput(bloom);
-
-            FadeTransition ft = new FadeTransition(
-                Duration.millis(300),
-                imageView
-            );
-            ft.setFromValue(0.7);
-            ft.setToValue(1.0);
-
-            imageView.setEffect(shadow);
-            ft.play();
-        }
+    public static void applyVignette(ImageView imageView, Image source) {
+        applyPreset(imageView, source, "vignette", 1);
+    }
+
+    public static void applyBlur(ImageView imageView, Image source) {
+        applyPreset(imageView, source, "blur", 1);
+    }
+
+    public static void applyGrayscale(ImageView imageView, Image source) {
+        applyPreset(imageView, source, "grayscale", 1);
+    }
+
+    // A FilterChain preset at scale, its result cached by preset, scale
+    // and image size
+    static void applyPreset(
+        ImageView imageView,
+        Image source,
+        String preset,
+        double scale
+    ) {
+        if (source == null) return;
+        int width = (int) source.getWidth();
+        int height = (int) source.getHeight();
+        apply(
+            imageView,
+            source,
+            FilterChain.preset(preset, width, height, scale),
+            "preset " + preset + " scale=" + scale + " " + width + "x" + height
+        );
+    }
+
+    // Runs the filter off the FX thread, then fades the result into the
+    // view. Package-private, as RasterFilter is not exported.
+    static void apply(ImageView imageView, Image source, RasterFilter filter) {
+        apply(imageView, source, filter, null);
+    }
+
+    // Same, looking the result up in the shared ResultCache first when
+    // operation names the filter and all its parameters
+    static void apply(
+        ImageView imageView,
+        Image source,
+        RasterFilter filter,
+        String operation
+    ) {
+        if (source == null) return;
+        cancel();
+        long request = latestRequest;
+        Raster pixels = Raster.read(source);
+        pending = worker.submit(() -> {
+            Raster filtered = filter(source, pixels, filter, operation);
+            WritableImage result = filtered.toImage();
+            Platform.runLater(() -> {
+                if (request != latestRequest) return;
+                imageView.setEffect(null);
+                imageView.setImage(result);
+                if (onShown != null) onShown.accept(filtered);
+
+                FadeTransition ft = new FadeTransition(
+                    Duration.millis(300),
+                    imageView
+                );
+                ft.setFromValue(0.7);
+                ft.setToValue(1.0);
+                ft.play();
+            });
+        });
+    }
+
+    private static Raster filter(
+        Image source,
+        Raster pixels,
+        RasterFilter filter,
+        String operation
+    ) {
+        if (operation == null) return filter.apply(pixels);
+        ResultCache cache = ResultCache.shared();
+        String hash = contentHashes.computeIfAbsent(source, image -> ResultCache.hash(pixels));
+        String key = ResultCache.key(hash, operation);
+        Raster result = cache.get(key, ResultCache.RASTERS);
+        return result != null ? result : cache.put(key, filter.apply(pixels), ResultCache.RASTERS);
     }
 
-    public static void applyGrayscale(ImageView imageView) {
-        if (imageView.getImage() != null) {
-            ColorAdjust grayscale = new ColorAdjust();
-            grayscale.setSaturation(-1);
-            grayscale.setContrast(0.2);
-            grayscale.setBrightness(0.1);
-
-            InnerShadow innerShadow = new InnerShadow();
-            innerShadow.setRadius(5.0);
-            innerShadow.setColor(Color.rgb(0, 0, 0, 0.3));
-            innerShadow.setInput(grayscale);
-
-            FadeTransition ft = new FadeTransition(
-                Duration.millis(300),
-                imageView
-            );
-            ft.setFromValue(0.7);
-            ft.setToValue(1.0);
-
-            imageView.setEffect(innerShadow);
-            ft.play();
+    // Drops any filter still running so it cannot replace a newer image
+    public static void cancel() {
+        latestRequest++;
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
         }
     }
 }
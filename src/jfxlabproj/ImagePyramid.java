@@ -0,0 +1,159 @@
+package jfxlabproj.raster;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.scene.image.Image;
+
+// Successive halvings of one image, each level a 2x2 box average of the
+// level above, down to about MIN_SIDE pixels. A view reads the smallest
+// level that still fills it, so interactive work touches a quarter of the
+// pixels per level skipped. JavaFX images of the levels are made on first use.
+public class ImagePyramid {
+
+    public static final int MIN_SIDE = 16;
+
+    private final Raster[] levels;
+    private final Image[] images;
+
+    private ImagePyramid(Raster[] levels, Image baseImage) {
+        this.levels = levels;
+        this.images = new Image[levels.length];
+        images[0] = baseImage;
+    }
+
+    // Builds every level below base, the tiles of each level in parallel.
+    // baseImage, if given, is base as a JavaFX image and is reused as level 0.
+    public static ImagePyramid build(Raster base, Image baseImage) {
+        List<Raster> levels = new ArrayList<>();
+        levels.add(base);
+        Raster level = base;
+        while (Math.min(level.getWidth(), level.getHeight()) >= 2 * MIN_SIDE) {
+            level = halve(level);
+            levels.add(level);
+        }
+        return new ImagePyramid(levels.toArray(new Raster[0]), baseImage);
+    }
+
+    // Half the size, rounded up; an odd last row or column averages with itself
+    private static Raster halve(Raster source) {
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        int width = (sourceWidth + 1) / 2;
+        int height = (sourceHeight + 1) / 2;
+        boolean premultiplied = source.isPremultiplied();
+        Raster target = new Raster(
+            new int[width * height],
+            0,
+            width,
+            width,
+            height,
+            premultiplied
+        );
+        int[] in = source.array();
+        int[] out = target.array();
+        TileScheduler.shared().forEachTile("pyramid", width, height, 0, (x0, y0, x1, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int top = source.rowOffset(2 * y);
+                int bottom = source.rowOffset(Math.min(2 * y + 1, sourceHeight - 1));
+                for (int x = x0; x < x1; x++) {
+                    int left = 2 * x;
+                    int right = Math.min(2 * x + 1, sourceWidth - 1);
+                    out[y * width + x] = average(
+                        in[top + left],
+                        in[top + right],
+                        in[bottom + left],
+                        in[bottom + right],
+                        premultiplied
+                    );
+                }
+            }
+        });
+        return target;
+    }
+
+    // Straight alpha is weighted by alpha, so transparent pixels lend no colour
+    private static int average(int a, int b, int c, int d, boolean premultiplied) {
+        int alphaA = a >>> 24;
+        int alphaB = b >>> 24;
+        int alphaC = c >>> 24;
+        int alphaD = d >>> 24;
+        int alpha = alphaA + alphaB + alphaC + alphaD;
+        if (premultiplied || alpha == 4 * 255) {
+            return ((alpha + 2) / 4) << 24 |
+                ((channel(a, 16) + channel(b, 16) + channel(c, 16) + channel(d, 16) + 2) / 4) << 16 |
+                ((channel(a, 8) + channel(b, 8) + channel(c, 8) + channel(d, 8) + 2) / 4) << 8 |
+                (channel(a, 0) + channel(b, 0) + channel(c, 0) + channel(d, 0) + 2) / 4;
+        }
+        if (alpha == 0) return 0;
+        int half = alpha / 2;
+        int red = (channel(a, 16) * alphaA + channel(b, 16) * alphaB +
+            channel(c, 16) * alphaC + channel(d, 16) * alphaD + half) / alpha;
+        int green = (channel(a, 8) * alphaA + channel(b, 8) * alphaB +
+            channel(c, 8) * alphaC + channel(d, 8) * alphaD + half) / alpha;
+        int blue = (channel(a, 0) * alphaA + channel(b, 0) * alphaB +
+            channel(c, 0) * alphaC + channel(d, 0) * alphaD + half) / alpha;
+        return ((alpha + 2) / 4) << 24 | red << 16 | green << 8 | blue;
+    }
+
+    private static int channel(int argb, int shift) {
+        return (argb >> shift) & 0xFF;
+    }
+
+    public int getLevels() {
+        return levels.length;
+    }
+
+    // Level 0 is the base; level n is 1/2^n of its size, rounded up
+    public Raster getLevel(int level) {
+        return levels[level];
+    }
+
+    public synchronized Image getImage(int level) {
+        if (images[level] == null) images[level] = levels[level].toImage();
+        return images[level];
+    }
+
+    // The smallest level with at least as many pixels as the base shows
+    // when fitted, ratio kept, into a width x height box
+    public int levelFor(double width, double height) {
+        Raster base = levels[0];
+        double scale = Math.min(width / base.getWidth(), height / base.getHeight());
+        long shownWidth = (long) Math.floor(base.getWidth() * scale);
+        long shownHeight = (long) Math.floor(base.getHeight() * scale);
+        for (int level = levels.length - 1; level > 0; level--) {
+            if (
+                levels[level].getWidth() >= shownWidth &&
+                levels[level].getHeight() >= shownHeight
+            ) {
+                return level;
+            }
+        }
+        return 0;
+    }
+
+    // Pixels held, as rasters and as the images made so far
+    public synchronized long bytes() {
+        long bytes = 0;
+        for (int level = 0; level < levels.length; level++) {
+            long pixels = (long) levels[level].getWidth() * levels[level].getHeight();
+            bytes += 4 * pixels;
+            if (images[level] != null) bytes += 4 * pixels;
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        Raster base = levels[0];
+        Raster last = levels[levels.length - 1];
+        return String.format(
+            "%d levels, %dx%d to %dx%d, %.1f MB",
+            levels.length,
+            base.getWidth(),
+            base.getHeight(),
+            last.getWidth(),
+            last.getHeight(),
+            bytes() / 1e6
+        );
+    }
+}
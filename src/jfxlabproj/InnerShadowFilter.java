@@ -0,0 +1,67 @@
+package jfxlabproj.filter;
+
+import jfxlabproj.raster.Raster;
+import jfxlabproj.raster.TileScheduler;
+
+// JavaFX InnerShadow with no offset: shadow cast inwards from everything
+// outside the image's alpha, including beyond its edges, and drawn only
+// where the image is
+public class InnerShadowFilter implements RasterFilter {
+
+    private final double radius;
+    private final double choke;
+    private final int color;
+
+    public InnerShadowFilter(double radius, double choke, int color) {
+        this(radius, choke, color, 1);
+    }
+
+    // radius as on an image scale times smaller, like DropShadowFilter
+    public InnerShadowFilter(double radius, double choke, int color, double scale) {
+        this.radius = Math.max(0, Math.min(DropShadowFilter.MAX_RADIUS, radius)) * scale;
+        this.choke = choke;
+        this.color = color;
+    }
+
+    @Override
+    public int getReach() {
+        return BoxBlur.boxRadius(radius) * 3;
+    }
+
+    @Override
+    public Raster apply(Raster source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] in = source.array();
+
+        int[] shadow = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int from = source.rowOffset(y);
+            for (int x = 0; x < width; x++) {
+                shadow[y * width + x] = 255 - (in[from + x] >>> 24);
+            }
+        }
+        BoxBlur.blurPlane(shadow, width, height, BoxBlur.boxRadius(radius), 3, 255);
+
+        Raster target = new Raster(width, height);
+        int[] out = target.array();
+        int colorAlpha = color >>> 24;
+        TileScheduler.shared().forEachTile(
+            "inner-shadow",
+            width,
+            height,
+            0,
+            (x0, y0, x1, y1) -> {
+                for (int y = y0; y < y1; y++) {
+                    int from = source.rowOffset(y);
+                    for (int x = x0; x < x1; x++) {
+                        int i = y * width + x;
+                        int weight = Blend.harden(shadow[i], choke) * colorAlpha / 255;
+                        out[i] = Blend.tint(in[from + x], color, weight);
+                    }
+                }
+            }
+        );
+        return target;
+    }
+}
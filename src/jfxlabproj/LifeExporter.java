@@ -0,0 +1,482 @@
+package jfxlabproj.gameoflife;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import jfxlabproj.raster.Raster;
+
+// Records a run to an animated GIF or numbered PNGs without a JavaFX stage.
+// One thread simulates and draws frames while the calling thread encodes
+// them; only a few frame buffers exist, recycled between the two.
+public class LifeExporter {
+
+    public enum Format {
+        GIF,
+        PNG,
+    }
+
+    private LifeSeeder seeder = new LifeSeeder();
+    private LifeRule rule = LifeRule.CONWAY;
+    private int colorBitsPerChannel = 0;
+    private long generations = 100;
+    private int frameStride = 1;
+    private int cellSize = 1;
+    private Format format = Format.GIF;
+    private int frameDelayMillis = 100;
+    private int bufferedFrames = 4;
+
+    public void setSeeder(LifeSeeder seeder) {
+        this.seeder = seeder;
+    }
+
+    public LifeSeeder getSeeder() {
+        return seeder;
+    }
+
+    public void setRule(LifeRule rule) {
+        this.rule = rule;
+    }
+
+    // 0 records the black and white board; 1-8 runs ColorLife bitplanes
+    public void setColorBitsPerChannel(int bits) {
+        if (bits < 0 || bits > 8) {
+            throw new IllegalArgumentException("Bits per channel must be 0-8");
+        }
+        this.colorBitsPerChannel = bits;
+    }
+
+    // Last generation recorded; generation 0 is always the first frame
+    public void setGenerations(long generations) {
+        this.generations = Math.max(0, generations);
+    }
+
+    // Generations between recorded frames
+    public void setFrameStride(int frameStride) {
+        this.frameStride = Math.max(1, frameStride);
+    }
+
+    // Pixels per cell side in the output
+    public void setCellSize(int cellSize) {
+        this.cellSize = Math.max(1, cellSize);
+    }
+
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    // GIF only; GIF stores delays in hundredths of a second
+    public void setFrameDelayMillis(int frameDelayMillis) {
+        this.frameDelayMillis = Math.max(0, frameDelayMillis);
+    }
+
+    // Frames drawn ahead of the encoder before the simulation waits
+    public void setBufferedFrames(int bufferedFrames) {
+        this.bufferedFrames = Math.max(1, bufferedFrames);
+    }
+
+    public static class Result {
+
+        private final long frames;
+        private final long generations;
+        private final long simulateNanos;
+        private final long drawNanos;
+        private final long encodeNanos;
+        private final long totalNanos;
+
+        Result(
+            long frames,
+            long generations,
+            long simulateNanos,
+            long drawNanos,
+            long encodeNanos,
+            long totalNanos
+        ) {
+            this.frames = frames;
+            this.generations = generations;
+            this.simulateNanos = simulateNanos;
+            this.drawNanos = drawNanos;
+            this.encodeNanos = encodeNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getGenerations() {
+            return generations;
+        }
+
+        public long getSimulateNanos() {
+            return simulateNanos;
+        }
+
+        public long getDrawNanos() {
+            return drawNanos;
+        }
+
+        public long getEncodeNanos() {
+            return encodeNanos;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public double getGenerationsPerSecond() {
+            return totalNanos == 0 ? 0 : generations * 1e9 / totalNanos;
+        }
+
+        public double getFramesPerSecond() {
+            return totalNanos == 0 ? 0 : frames * 1e9 / totalNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%d frames, %d generations in %.1f ms (%.1f gens/s, %.1f frames/s); " +
+                "simulate %.1f ms, draw %.1f ms, encode %.1f ms",
+                frames,
+                generations,
+                totalNanos / 1e6,
+                getGenerationsPerSecond(),
+                getFramesPerSecond(),
+                simulateNanos / 1e6,
+                drawNanos / 1e6,
+                encodeNanos / 1e6
+            );
+        }
+    }
+
+    // Queued after the last drawn frame
+    private static final Raster END = new Raster(0, 0);
+
+    // Runs export on a background thread and returns at once
+    public Future<Result> start(Raster seedImage, File output) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "life-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            return executor.submit(() -> export(seedImage, output));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public Result export(File seedImage, File output)
+        throws IOException, InterruptedException {
+        BufferedImage image = ImageIO.read(seedImage);
+        if (image == null) {
+            throw new IOException("Not a readable image: " + seedImage);
+        }
+        return export(Raster.read(image), output);
+    }
+
+    // Writes a GIF to output, or for PNG frame_000000.png onwards into the
+    // output directory. Blocks until the last frame is written.
+    public Result export(Raster seedImage, File output)
+        throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Automaton board = seeder.seedBoard(seedImage, rule, colorBitsPerChannel);
+        LifeRenderer renderer = new LifeRenderer(
+            board.getWidth() * cellSize,
+            board.getHeight() * cellSize,
+            cellSize
+        );
+
+        BlockingQueue<Raster> free = new ArrayBlockingQueue<>(bufferedFrames);
+        Raster shape = renderer.getFrame();
+        free.add(shape);
+        for (int i = 1; i < bufferedFrames; i++) {
+            free.add(new Raster(shape.getWidth(), shape.getHeight()));
+        }
+        // One extra slot so END always fits behind a full set of frames
+        BlockingQueue<Raster> drawn = new ArrayBlockingQueue<>(bufferedFrames + 1);
+        long[] simulateNanos = new long[1];
+        long[] drawNanos = new long[1];
+
+        ExecutorService simulation = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "life-export-sim");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Future<Long> simulated = simulation.submit(() -> {
+            try {
+                long generation = 0;
+                while (true) {
+                    Raster pixels = free.take();
+                    long drawStart = System.nanoTime();
+                    renderer.renderTo(board, pixels);
+                    drawNanos[0] += System.nanoTime() - drawStart;
+                    drawn.put(pixels);
+
+                    long steps = Math.min(frameStride, generations - generation);
+                    if (steps <= 0) return generation;
+                    long stepStart = System.nanoTime();
+                    for (long i = 0; i < steps; i++) {
+                        board.step();
+                    }
+                    simulateNanos[0] += System.nanoTime() - stepStart;
+                    generation += steps;
+                }
+            } finally {
+                drawn.put(END);
+            }
+        });
+        simulation.shutdown();
+
+        long frames = 0;
+        long encodeNanos = 0;
+        boolean finished = false;
+        try (FrameSink sink = openSink(output)) {
+            while (true) {
+                Raster pixels = drawn.take();
+                if (pixels == END) break;
+                long encodeStart = System.nanoTime();
+                sink.write(toEncodable(pixels), frames);
+                encodeNanos += System.nanoTime() - encodeStart;
+                frames++;
+                free.put(pixels);
+            }
+            finished = true;
+        } finally {
+            // Stops a simulation blocked on a buffer the encoder will never free
+            if (!finished) simulated.cancel(true);
+        }
+
+        long lastGeneration;
+        try {
+            lastGeneration = simulated.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        }
+        return new Result(
+            frames,
+            lastGeneration,
+            simulateNanos[0],
+            drawNanos[0],
+            encodeNanos,
+            System.nanoTime() - start
+        );
+    }
+
+    private interface FrameSink extends Closeable {
+        void write(BufferedImage frame, long index) throws IOException;
+    }
+
+    private FrameSink openSink(File output) throws IOException {
+        return format == Format.GIF
+            ? new GifSink(output, frameDelayMillis)
+            : new PngSink(output);
+    }
+
+    private static class PngSink implements FrameSink {
+
+        private final File directory;
+
+        PngSink(File directory) throws IOException {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+            this.directory = directory;
+        }
+
+        @Override
+        public void write(BufferedImage frame, long index) throws IOException {
+            File file = new File(
+                directory,
+                String.format("frame_%06d.png", index)
+            );
+            if (!ImageIO.write(frame, "png", file)) {
+                throw new IOException("No PNG writer available");
+            }
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    private static class GifSink implements FrameSink {
+
+        private final ImageWriter writer;
+        private final ImageOutputStream stream;
+        private final int delayCentis;
+
+        GifSink(File file, int delayMillis) throws IOException {
+            Iterator<ImageWriter> writers =
+                ImageIO.getImageWritersByFormatName("gif");
+            if (!writers.hasNext()) {
+                throw new IOException("No GIF writer available");
+            }
+            writer = writers.next();
+            stream = ImageIO.createImageOutputStream(file);
+            if (stream == null) {
+                throw new IOException("Cannot write " + file);
+            }
+            writer.setOutput(stream);
+            writer.prepareWriteSequence(null);
+            delayCentis = (delayMillis + 5) / 10;
+        }
+
+        @Override
+        public void write(BufferedImage frame, long index) throws IOException {
+            IIOMetadata metadata = writer.getDefaultImageMetadata(
+                ImageTypeSpecifier.createFromRenderedImage(frame),
+                null
+            );
+            String formatName = metadata.getNativeMetadataFormatName();
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(formatName);
+
+            IIOMetadataNode control = child(root, "GraphicControlExtension");
+            control.setAttribute("disposalMethod", "none");
+            control.setAttribute("userInputFlag", "FALSE");
+            control.setAttribute("transparentColorFlag", "FALSE");
+            control.setAttribute("delayTime", Integer.toString(delayCentis));
+            control.setAttribute("transparentColorIndex", "0");
+
+            if (frame.getColorModel() instanceof IndexColorModel) {
+                // Without its own table a frame would index the stream's
+                // default palette
+                root.appendChild(colorTable((IndexColorModel) frame.getColorModel()));
+            }
+            if (index == 0) {
+                // NETSCAPE2.0 block: loop forever
+                IIOMetadataNode application =
+                    new IIOMetadataNode("ApplicationExtension");
+                application.setAttribute("applicationID", "NETSCAPE");
+                application.setAttribute("authenticationCode", "2.0");
+                application.setUserObject(new byte[] { 1, 0, 0 });
+                child(root, "ApplicationExtensions").appendChild(application);
+            }
+            metadata.setFromTree(formatName, root);
+            writer.writeToSequence(new IIOImage(frame, null, metadata), null);
+        }
+
+        private static IIOMetadataNode colorTable(IndexColorModel model) {
+            IIOMetadataNode table = new IIOMetadataNode("LocalColorTable");
+            table.setAttribute(
+                "sizeOfLocalColorTable",
+                Integer.toString(model.getMapSize())
+            );
+            table.setAttribute("sortFlag", "FALSE");
+            for (int i = 0; i < model.getMapSize(); i++) {
+                IIOMetadataNode entry = new IIOMetadataNode("ColorTableEntry");
+                entry.setAttribute("index", Integer.toString(i));
+                entry.setAttribute("red", Integer.toString(model.getRed(i)));
+                entry.setAttribute("green", Integer.toString(model.getGreen(i)));
+                entry.setAttribute("blue", Integer.toString(model.getBlue(i)));
+                table.appendChild(entry);
+            }
+            return table;
+        }
+
+        private static IIOMetadataNode child(IIOMetadataNode root, String name) {
+            for (int i = 0; i < root.getLength(); i++) {
+                if (root.item(i).getNodeName().equals(name)) {
+                    return (IIOMetadataNode) root.item(i);
+                }
+            }
+            IIOMetadataNode node = new IIOMetadataNode(name);
+            root.appendChild(node);
+            return node;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writer.endWriteSequence();
+            } finally {
+                stream.close();
+                writer.dispose();
+            }
+        }
+    }
+
+    // Frames with at most 256 colours, which is every board except ColorLife
+    // above 2 bits per channel, go out indexed so the encoders skip colour
+    // quantisation. Deeper colour is quantised by the GIF writer; PNG keeps it.
+    static BufferedImage toEncodable(Raster frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int[] pixels = frame.array();
+        byte[] indices = new byte[width * height];
+        int[] keys = new int[512];
+        byte[] slots = new byte[512];
+        boolean[] used = new boolean[512];
+        int[] palette = new int[256];
+        int colors = 0;
+        int lastColor = 0;
+        byte lastIndex = 0;
+        boolean haveLast = false;
+
+        for (int y = 0; y < height; y++) {
+            int row = frame.rowOffset(y);
+            for (int x = 0; x < width; x++) {
+                int color = pixels[row + x] & 0xFFFFFF;
+                if (haveLast && color == lastColor) {
+                    indices[y * width + x] = lastIndex;
+                    continue;
+                }
+                int slot = (color * 0x9E3779B1) >>> 23;
+                while (used[slot] && keys[slot] != color) {
+                    slot = (slot + 1) & 511;
+                }
+                if (!used[slot]) {
+                    if (colors == 256) {
+                        return frame.toBufferedImage(BufferedImage.TYPE_INT_RGB);
+                    }
+                    used[slot] = true;
+                    keys[slot] = color;
+                    slots[slot] = (byte) colors;
+                    palette[colors++] = color;
+                }
+                lastColor = color;
+                lastIndex = slots[slot];
+                haveLast = true;
+                indices[y * width + x] = lastIndex;
+            }
+        }
+
+        // GIF colour tables come in powers of two
+        int size = 2;
+        while (size < colors) size <<= 1;
+        byte[] reds = new byte[size];
+        byte[] greens = new byte[size];
+        byte[] blues = new byte[size];
+        for (int i = 0; i < colors; i++) {
+            reds[i] = (byte) (palette[i] >>> 16);
+            greens[i] = (byte) (palette[i] >>> 8);
+            blues[i] = (byte) palette[i];
+        }
+        IndexColorModel model = new IndexColorModel(8, size, reds, greens, blues);
+        BufferedImage image = new BufferedImage(
+            width,
+            height,
+            BufferedImage.TYPE_BYTE_INDEXED,
+            model
+        );
+        byte[] target =
+            ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(indices, 0, target, 0, indices.length);
+        return image;
+    }
+}
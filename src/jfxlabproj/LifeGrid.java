@@ -0,0 +1,285 @@
+package jfxlabproj.gameoflife;
+
+import java.util.Arrays;
+
+// Bit-packed board specialised for B3/S23; other rules run on RuleGrid
+public class LifeGrid extends Automaton {
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    // Bit x % 64 of word x / 64 in a row is the cell at column x
+    private long[] cells;
+    private long[] next;
+    // Clears the unused high bits of the last word in every row
+    private final long lastWordMask;
+    private long generation;
+
+    private final int tileRows;
+    // Tiles recomputed by the next step: changed last step or next to one that did
+    private final boolean[] active;
+    // Tiles whose cells changed during the current step
+    private final boolean[] changed;
+    // Tiles changed since the last clearDirty(), for incremental rendering
+    private final boolean[] dirty;
+
+    public LifeGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.cells = new long[wordsPerRow * height];
+        this.next = new long[wordsPerRow * height];
+        this.lastWordMask = (width & 63) == 0 ? -1L : (1L << (width & 63)) - 1;
+        this.tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.active = new boolean[wordsPerRow * tileRows];
+        this.changed = new boolean[wordsPerRow * tileRows];
+        this.dirty = new boolean[wordsPerRow * tileRows];
+        Arrays.fill(active, true);
+        Arrays.fill(dirty, true);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    // Current generation, row-major with getWordsPerRow() words per row
+    public long[] words() {
+        return cells;
+    }
+
+    @Override
+    public int getTileColumns() {
+        return wordsPerRow;
+    }
+
+    @Override
+    public int getTileRows() {
+        return tileRows;
+    }
+
+    @Override
+    public boolean isTileDirty(int tileX, int tileY) {
+        return dirty[tileY * wordsPerRow + tileX];
+    }
+
+    @Override
+    public void clearDirty() {
+        Arrays.fill(dirty, false);
+    }
+
+    public int activeTiles() {
+        int count = 0;
+        for (boolean tile : active) {
+            if (tile) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public LifeRule getRule() {
+        return LifeRule.CONWAY;
+    }
+
+    @Override
+    public int getState(int x, int y) {
+        return get(x, y) ? 1 : 0;
+    }
+
+    public boolean get(int x, int y) {
+        return ((cells[y * wordsPerRow + (x >>> 6)] >>> x) & 1L) != 0;
+    }
+
+    public void set(int x, int y, boolean alive) {
+        int index = y * wordsPerRow + (x >>> 6);
+        if (alive) {
+            cells[index] |= 1L << x;
+        } else {
+            cells[index] &= ~(1L << x);
+        }
+        markAround(x >>> 6, y / TILE_SIZE, active);
+        dirty[(y / TILE_SIZE) * wordsPerRow + (x >>> 6)] = true;
+    }
+
+    @Override
+    LifeGrid emptyCopy() {
+        return new LifeGrid(width, height);
+    }
+
+    @Override
+    void copyStateFrom(Automaton other) {
+        copyFrom((LifeGrid) other);
+    }
+
+    // Copies the current generation of another grid of the same size and
+    // adds the other grid's dirty tiles to this one's
+    public void copyFrom(LifeGrid other) {
+        System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        generation = other.generation;
+        Arrays.fill(active, true);
+        for (int i = 0; i < dirty.length; i++) {
+            dirty[i] |= other.dirty[i];
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(cells, 0L);
+        generation = 0;
+        Arrays.fill(active, true);
+        Arrays.fill(dirty, true);
+    }
+
+    @Override
+    public int population() {
+        int count = 0;
+        for (long word : cells) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // Cells outside the grid count as dead. Inactive tiles are skipped:
+    // their cells did not change last step, so the next buffer already
+    // holds the same values.
+    @Override
+    void stepRows(int startY, int endY) {
+        for (int y = startY; y < endY; y++) {
+            int row = y * wordsPerRow;
+            int tileRow = (y / TILE_SIZE) * wordsPerRow;
+            int above = y > 0 ? row - wordsPerRow : -1;
+            int below = y < height - 1 ? row + wordsPerRow : -1;
+            for (int i = 0; i < wordsPerRow; i++) {
+                if (!active[tileRow + i]) continue;
+                long result = nextWord(above, row, below, i);
+                if (i == wordsPerRow - 1) result &= lastWordMask;
+                if (result != cells[row + i]) changed[tileRow + i] = true;
+                next[row + i] = result;
+            }
+        }
+    }
+
+    // Also works out which tiles the following step has to recompute
+    @Override
+    void swap() {
+        long[] previous = cells;
+        cells = next;
+        next = previous;
+        generation++;
+
+        Arrays.fill(active, false);
+        for (int tileY = 0; tileY < tileRows; tileY++) {
+            for (int tileX = 0; tileX < wordsPerRow; tileX++) {
+                int tile = tileY * wordsPerRow + tileX;
+                if (changed[tile]) {
+                    markAround(tileX, tileY, active);
+                    dirty[tile] = true;
+                    changed[tile] = false;
+                }
+            }
+        }
+    }
+
+    private void markAround(int tileX, int tileY, boolean[] tiles) {
+        for (
+            int ty = Math.max(0, tileY - 1);
+            ty <= Math.min(tileRows - 1, tileY + 1);
+            ty++
+        ) {
+            for (
+                int tx = Math.max(0, tileX - 1);
+                tx <= Math.min(wordsPerRow - 1, tileX + 1);
+                tx++
+            ) {
+                tiles[ty * wordsPerRow + tx] = true;
+            }
+        }
+    }
+
+    private long nextWord(int above, int row, int below, int i) {
+        long center = cells[row + i];
+        long s0 = 0;
+        long s1 = 0;
+        long s2 = 0;
+
+        // Bit-sliced counter over the eight neighbour masks, 64 cells at a
+        // time. s2 latches once a cell has four or more live neighbours.
+        long m = west(row, i);
+        long carry = s0 & m;
+        s0 ^= m;
+        s1 ^= carry;
+
+        m = east(row, i);
+        carry = s0 & m;
+        s0 ^= m;
+        s2 |= s1 & carry;
+        s1 ^= carry;
+
+        if (above >= 0) {
+            m = cells[above + i];
+            carry = s0 & m;
+            s0 ^= m;
+            s2 |= s1 & carry;
+            s1 ^= carry;
+
+            m = west(above, i);
+            carry = s0 & m;
+            s0 ^= m;
+            s2 |= s1 & carry;
+            s1 ^= carry;
+
+            m = east(above, i);
+            carry = s0 & m;
+            s0 ^= m;
+            s2 |= s1 & carry;
+            s1 ^= carry;
+        }
+        if (below >= 0) {
+            m = cells[below + i];
+            carry = s0 & m;
+            s0 ^= m;
+            s2 |= s1 & carry;
+            s1 ^= carry;
+
+            m = west(below, i);
+            carry = s0 & m;
+            s0 ^= m;
+            s2 |= s1 & carry;
+            s1 ^= carry;
+
+            m = east(below, i);
+            carry = s0 & m;
+            s0 ^= m;
+            s2 |= s1 & carry;
+            s1 ^= carry;
+        }
+
+        // Exactly three neighbours, or exactly two and already alive
+        return ~s2 & s1 & (s0 | center);
+    }
+
+    // Mask whose bit x holds the cell at x - 1
+    private long west(int row, int i) {
+        long word = cells[row + i] << 1;
+        return i > 0 ? word | (cells[row + i - 1] >>> 63) : word;
+    }
+
+    // Mask whose bit x holds the cell at x + 1
+    private long east(int row, int i) {
+        long word = cells[row + i] >>> 1;
+        return i < wordsPerRow - 1 ? word | (cells[row + i + 1] << 63) : word;
+    }
+}
@@ -0,0 +1,176 @@
+package jfxlabproj.gameoflife;
+
+import java.util.Arrays;
+import javafx.scene.image.WritableImage;
+import jfxlabproj.raster.Raster;
+
+public class LifeRenderer {
+
+    public static final int ALIVE = 0xFF000000;
+    public static final int DEAD = 0xFFFFFFFF;
+
+    private final int cellSize;
+    private final Raster frame;
+    private WritableImage image;
+    private int[] palette = { DEAD, ALIVE };
+
+    public LifeRenderer(int imageWidth, int imageHeight, int cellSize) {
+        this.cellSize = cellSize;
+        this.frame = new Raster(imageWidth, imageHeight);
+    }
+
+    public Raster getFrame() {
+        return frame;
+    }
+
+    // Created on first use so headless callers never touch JavaFX images
+    public WritableImage getImage() {
+        if (image == null) {
+            image = new WritableImage(frame.getWidth(), frame.getHeight());
+            frame.writeTo(image);
+        }
+        return image;
+    }
+
+    // Redraws only the grid's dirty tiles and uploads each run of adjacent
+    // dirty tiles as one rectangle, then clears the grid's dirty flags.
+    // Colour boards change almost everywhere at once, so their redrawn
+    // tiles go up as a single rectangle instead.
+    public void render(Automaton grid) {
+        WritableImage target = getImage();
+        int tilePixels = Automaton.TILE_SIZE * cellSize;
+        boolean uploadOnce = grid instanceof ColorLife;
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = 0;
+        int maxY = 0;
+
+        for (int tileY = 0; tileY < grid.getTileRows(); tileY++) {
+            int top = tileY * tilePixels;
+            int bottom = tileY == grid.getTileRows() - 1
+                ? frame.getHeight()
+                : Math.min(top + tilePixels, frame.getHeight());
+            if (top >= bottom) continue;
+
+            int tileX = 0;
+            while (tileX < grid.getTileColumns()) {
+                if (!grid.isTileDirty(tileX, tileY)) {
+                    tileX++;
+                    continue;
+                }
+                int runStart = tileX;
+                while (
+                    tileX < grid.getTileColumns() && grid.isTileDirty(tileX, tileY)
+                ) {
+                    tileX++;
+                }
+                int left = runStart * tilePixels;
+                int right = tileX == grid.getTileColumns()
+                    ? frame.getWidth()
+                    : Math.min(tileX * tilePixels, frame.getWidth());
+                if (left >= right) continue;
+
+                renderRegion(grid, frame, left, top, right, bottom);
+                if (uploadOnce) {
+                    minX = Math.min(minX, left);
+                    minY = Math.min(minY, top);
+                    maxX = Math.max(maxX, right);
+                    maxY = Math.max(maxY, bottom);
+                } else {
+                    frame
+                        .region(left, top, right - left, bottom - top)
+                        .writeTo(target, left, top);
+                }
+            }
+        }
+        if (uploadOnce && minX < maxX) {
+            frame
+                .region(minX, minY, maxX - minX, maxY - minY)
+                .writeTo(target, minX, minY);
+        }
+        grid.clearDirty();
+    }
+
+    public void renderTo(Automaton grid, Raster target) {
+        renderRegion(grid, target, 0, 0, target.getWidth(), target.getHeight());
+    }
+
+    // Fills the pixel rectangle [left, right) x [top, bottom) from the cells under it
+    private void renderRegion(
+        Automaton grid,
+        Raster target,
+        int left,
+        int top,
+        int right,
+        int bottom
+    ) {
+        int[] pixels = target.array();
+        int fromCell = Math.min(left / cellSize, grid.getWidth() - 1);
+        int toCell = Math.min((right - 1) / cellSize, grid.getWidth() - 1) + 1;
+        int[] cellColors = new int[toCell - fromCell];
+
+        int y = top;
+        while (y < bottom) {
+            int cellY = Math.min(y / cellSize, grid.getHeight() - 1);
+            int rowEnd = Math.min((y / cellSize + 1) * cellSize, bottom);
+            int row = target.rowOffset(y);
+
+            // Expand one row of cells into pixels, then copy it down
+            colorCells(grid, cellY, fromCell, toCell, cellColors);
+            int x = left;
+            while (x < right) {
+                int cellX = Math.min(x / cellSize, grid.getWidth() - 1);
+                int runEnd = Math.min((x / cellSize + 1) * cellSize, right);
+                Arrays.fill(
+                    pixels,
+                    row + x,
+                    row + runEnd,
+                    cellColors[cellX - fromCell]
+                );
+                x = runEnd;
+            }
+            for (int copyY = y + 1; copyY < rowEnd; copyY++) {
+                System.arraycopy(
+                    pixels,
+                    row + left,
+                    pixels,
+                    target.rowOffset(copyY) + left,
+                    right - left
+                );
+            }
+            y = rowEnd;
+        }
+    }
+
+    private void colorCells(
+        Automaton grid,
+        int cellY,
+        int fromCell,
+        int toCell,
+        int[] out
+    ) {
+        if (grid instanceof ColorLife) {
+            ((ColorLife) grid).compositeRow(cellY, fromCell, toCell, out);
+            return;
+        }
+        int[] colors = palette(grid.getRule().getStates());
+        for (int cellX = fromCell; cellX < toCell; cellX++) {
+            out[cellX - fromCell] = colors[grid.getState(cellX, cellY)];
+        }
+    }
+
+    // Decay states fade from dark to light grey on their way back to dead
+    private int[] palette(int states) {
+        if (palette.length != states) {
+            int[] colors = new int[states];
+            colors[0] = DEAD;
+            colors[1] = ALIVE;
+            for (int state = 2; state < states; state++) {
+                int grey = 64 + (state - 1) * 160 / (states - 1);
+                colors[state] = 0xFF000000 | grey * 0x010101;
+            }
+            palette = colors;
+        }
+        return palette;
+    }
+}
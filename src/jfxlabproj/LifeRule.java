@@ -0,0 +1,299 @@
+package jfxlabproj.gameoflife;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LifeRule {
+
+    public static final LifeRule CONWAY = parse("B3/S23");
+    public static final LifeRule HIGHLIFE = parse("B36/S23");
+    public static final LifeRule DAY_AND_NIGHT = parse("B3678/S34678");
+    public static final LifeRule BRIANS_BRAIN = parse("B2/S/C3");
+    public static final LifeRule BUGS = parse("R5,C0,M1,S34..58,B34..45,NM");
+
+    private final boolean[] birth;
+    private final boolean[] survival;
+    private final int states;
+    private final int radius;
+    private final boolean includeCenter;
+
+    private LifeRule(
+        boolean[] birth,
+        boolean[] survival,
+        int states,
+        int radius,
+        boolean includeCenter
+    ) {
+        this.birth = birth;
+        this.survival = survival;
+        this.states = states;
+        this.radius = radius;
+        this.includeCenter = includeCenter;
+    }
+
+    // Accepts B/S notation with optional C (states) and R (radius) parts,
+    // e.g. "B36/S23", "B2/S/C3" or "R5/B34-45/S34-58", and Golly's
+    // Larger than Life form, e.g. "R5,C0,M1,S34..58,B34..45,NM"
+    public static LifeRule parse(String spec) {
+        String text = spec.trim().toUpperCase();
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Empty rule");
+        }
+        // Golly's form has no slashes; slashed lists such as R2/B3,12/S do
+        return text.contains(",") && text.startsWith("R") && !text.contains("/")
+            ? parseLargerThanLife(spec, text)
+            : parseSlashed(spec, text);
+    }
+
+    private static LifeRule parseSlashed(String spec, String text) {
+        String birthPart = null;
+        String survivalPart = null;
+        int states = 2;
+        int radius = 1;
+        boolean includeCenter = false;
+        for (String token : text.split("/", -1)) {
+            token = token.trim();
+            if (token.isEmpty()) {
+                throw new IllegalArgumentException(
+                    "Rule must name its parts (B, S, C, R, M): " + spec
+                );
+            }
+            char part = token.charAt(0);
+            String value = token.substring(1);
+            switch (part) {
+                case 'B':
+                    birthPart = value;
+                    break;
+                case 'S':
+                    survivalPart = value;
+                    break;
+                case 'C':
+                case 'G':
+                    states = parseNumber(value, spec);
+                    break;
+                case 'R':
+                    radius = parseNumber(value, spec);
+                    break;
+                case 'M':
+                    includeCenter = parseNumber(value, spec) != 0;
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                        "Unknown rule part '" + part + "' in " + spec
+                    );
+            }
+        }
+        if (birthPart == null || survivalPart == null) {
+            throw new IllegalArgumentException("Rule needs B and S parts: " + spec);
+        }
+        return build(spec, birthPart, survivalPart, states, radius, includeCenter);
+    }
+
+    private static LifeRule parseLargerThanLife(String spec, String text) {
+        String birthPart = null;
+        String survivalPart = null;
+        int states = 2;
+        int radius = 1;
+        boolean includeCenter = false;
+        for (String token : text.split(",")) {
+            token = token.trim();
+            if (token.isEmpty()) continue;
+            String value = token.substring(1);
+            switch (token.charAt(0)) {
+                case 'R':
+                    radius = parseNumber(value, spec);
+                    break;
+                case 'C':
+                    // Golly writes two-state rules as C0 or C2
+                    states = Math.max(2, parseNumber(value, spec));
+                    break;
+                case 'M':
+                    includeCenter = parseNumber(value, spec) != 0;
+                    break;
+                case 'S':
+                    survivalPart = value;
+                    break;
+                case 'B':
+                    birthPart = value;
+                    break;
+                case 'N':
+                    if (!value.equals("M")) {
+                        throw new IllegalArgumentException(
+                            "Only the Moore neighbourhood (NM) is supported: " + spec
+                        );
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                        "Unknown rule part '" + token + "' in " + spec
+                    );
+            }
+        }
+        if (birthPart == null || survivalPart == null) {
+            throw new IllegalArgumentException("Rule needs B and S parts: " + spec);
+        }
+        return build(spec, birthPart, survivalPart, states, radius, includeCenter);
+    }
+
+    private static LifeRule build(
+        String spec,
+        String birthPart,
+        String survivalPart,
+        int states,
+        int radius,
+        boolean includeCenter
+    ) {
+        if (radius < 1 || radius > 100) {
+            throw new IllegalArgumentException("Radius out of range: " + spec);
+        }
+        if (states < 2 || states > 256) {
+            throw new IllegalArgumentException("State count out of range: " + spec);
+        }
+        int side = 2 * radius + 1;
+        int maxCount = side * side - (includeCenter ? 0 : 1);
+        return new LifeRule(
+            parseCounts(birthPart, maxCount, spec),
+            parseCounts(survivalPart, maxCount, spec),
+            states,
+            radius,
+            includeCenter
+        );
+    }
+
+    // "23" lists single digits; "3,6" or "34-45" or "34..45" list numbers and ranges
+    private static boolean[] parseCounts(String part, int maxCount, String spec) {
+        boolean[] counts = new boolean[maxCount + 1];
+        if (part.isEmpty()) return counts;
+        boolean listed =
+            part.contains(",") || part.contains("-") || part.contains("..");
+        if (!listed) {
+            for (char digit : part.toCharArray()) {
+                mark(counts, parseNumber(String.valueOf(digit), spec), spec);
+            }
+            return counts;
+        }
+        for (String item : part.replace("..", "-").split(",")) {
+            if (item.isEmpty()) continue;
+            int dash = item.indexOf('-');
+            int from = parseNumber(dash < 0 ? item : item.substring(0, dash), spec);
+            int to = dash < 0 ? from : parseNumber(item.substring(dash + 1), spec);
+            for (int count = from; count <= to; count++) {
+                mark(counts, count, spec);
+            }
+        }
+        return counts;
+    }
+
+    private static void mark(boolean[] counts, int count, String spec) {
+        if (count >= counts.length) {
+            throw new IllegalArgumentException(
+                "Neighbour count " + count + " impossible in " + spec
+            );
+        }
+        counts[count] = true;
+    }
+
+    private static int parseNumber(String value, String spec) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number in rule " + spec, e);
+        }
+    }
+
+    public int getStates() {
+        return states;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    public boolean includesCenter() {
+        return includeCenter;
+    }
+
+    public int getMaxCount() {
+        return birth.length - 1;
+    }
+
+    public boolean isBirth(int count) {
+        return count < birth.length && birth[count];
+    }
+
+    public boolean isSurvival(int count) {
+        return count < survival.length && survival[count];
+    }
+
+    // Two states on the radius-1 Moore neighbourhood without the centre cell
+    public boolean isLifeLike() {
+        return states == 2 && radius == 1 && !includeCenter;
+    }
+
+    // Next state indexed by state * (getMaxCount() + 1) + live neighbour count.
+    // State 0 is dead, 1 alive, and 2 and up are Generations decay states.
+    public byte[] buildTable() {
+        int counts = getMaxCount() + 1;
+        byte[] table = new byte[states * counts];
+        for (int count = 0; count < counts; count++) {
+            table[count] = (byte) (birth[count] ? 1 : 0);
+            table[counts + count] = (byte) (survival[count]
+                    ? 1
+                    : (states > 2 ? 2 : 0));
+            for (int state = 2; state < states; state++) {
+                table[state * counts + count] = (byte) (state + 1 < states
+                        ? state + 1
+                        : 0);
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof LifeRule && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        if (radius > 1 || includeCenter) {
+            text.append('R').append(radius).append('/');
+            if (includeCenter) text.append("M1/");
+        }
+        text.append('B').append(describe(birth));
+        text.append("/S").append(describe(survival));
+        if (states > 2) text.append("/C").append(states);
+        return text.toString();
+    }
+
+    private String describe(boolean[] counts) {
+        List<String> parts = new ArrayList<>();
+        boolean digits = counts.length <= 10;
+        int count = 0;
+        while (count < counts.length) {
+            if (!counts[count]) {
+                count++;
+                continue;
+            }
+            int end = count;
+            while (end + 1 < counts.length && counts[end + 1]) end++;
+            if (digits) {
+                for (int c = count; c <= end; c++) parts.add(String.valueOf(c));
+            } else {
+                parts.add(end == count ? String.valueOf(count) : count + "-" + end);
+            }
+            count = end + 1;
+        }
+        // A lone count of 10 or more would read back as its digits
+        if (!digits && parts.size() == 1 && parts.get(0).matches("\\d{2,}")) {
+            return parts.get(0) + "-" + parts.get(0);
+        }
+        return String.join(digits ? "" : ",", parts);
+    }
+}
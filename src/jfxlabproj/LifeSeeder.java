@@ -0,0 +1,254 @@
+package jfxlabproj.gameoflife;
+
+import jfxlabproj.raster.Raster;
+import jfxlabproj.raster.SummedAreaTable;
+import jfxlabproj.raster.TileScheduler;
+
+public class LifeSeeder {
+
+    public enum Threshold {
+        // Image mean scaled by a variance weight, as the original seeding did
+        GLOBAL,
+        // Each cell compares against the mean of a window of cells around it
+        ADAPTIVE,
+    }
+
+    private int columns = 80;
+    private int rows = 0; // 0 keeps the source aspect ratio
+    private Threshold threshold = Threshold.GLOBAL;
+    private int windowCells = 15;
+    private double sensitivity = 0.15;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long lastSeedNanos;
+
+    // Board width in cells, at most one cell per source pixel
+    public void setColumns(int columns) {
+        this.columns = Math.max(1, columns);
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public void setRows(int rows) {
+        this.rows = Math.max(0, rows);
+    }
+
+    public void setThreshold(Threshold threshold) {
+        this.threshold = threshold;
+    }
+
+    public Threshold getThreshold() {
+        return threshold;
+    }
+
+    // Side of the ADAPTIVE comparison window, in cells
+    public void setWindowCells(int windowCells) {
+        this.windowCells = Math.max(1, windowCells);
+    }
+
+    // How far below the local mean a cell must be to start alive
+    public void setSensitivity(double sensitivity) {
+        this.sensitivity = sensitivity;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public long getLastSeedNanos() {
+        return lastSeedNanos;
+    }
+
+    public int boardColumns(int sourceWidth) {
+        return Math.min(columns, sourceWidth);
+    }
+
+    public int boardRows(int sourceWidth, int sourceHeight) {
+        if (rows > 0) return Math.min(rows, sourceHeight);
+        int cols = boardColumns(sourceWidth);
+        long scaled = ((long) sourceHeight * cols + sourceWidth - 1) / sourceWidth;
+        return (int) Math.max(1, Math.min(sourceHeight, scaled));
+    }
+
+    // The board a run starts from: the thresholded seed under the given
+    // rule, or with colorBitsPerChannel 1-8 one board per bitplane
+    public Automaton seedBoard(Raster source, LifeRule rule, int colorBitsPerChannel)
+        throws InterruptedException {
+        if (colorBitsPerChannel > 0) {
+            return ColorLife.withRule(
+                seedColor(source, colorBitsPerChannel),
+                colorBitsPerChannel,
+                rule
+            );
+        }
+        LifeGrid seed = seed(source);
+        // Conway's rule keeps the bit-packed board; every other rule runs
+        // on the table-driven one
+        return rule.equals(LifeRule.CONWAY) ? seed : RuleGrid.fromSeed(seed, rule);
+    }
+
+    // Dark cells start alive. Every block average and threshold comes from
+    // one summed-area table over the source brightness.
+    public LifeGrid seed(Raster source) throws InterruptedException {
+        long start = System.nanoTime();
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        int cols = boardColumns(sourceWidth);
+        int boardRows = boardRows(sourceWidth, sourceHeight);
+        SummedAreaTable table = SummedAreaTable.ofBrightness(source, threads);
+
+        // Cell edges in source pixels; cell c spans [edge[c], edge[c + 1])
+        int[] xEdges = edges(cols, sourceWidth);
+        int[] yEdges = edges(boardRows, sourceHeight);
+
+        double globalThreshold = 0;
+        if (threshold == Threshold.GLOBAL) {
+            double pixels = (double) sourceWidth * sourceHeight;
+            double mean = table.total() / pixels;
+            double variance = table.totalSquares() / pixels - mean * mean;
+            // Same weighting as before, on 0-255 samples instead of 0-1
+            double varianceWeight = Math.min(
+                1.0,
+                Math.max(0.1, variance / (255.0 * 255.0) * 10)
+            );
+            globalThreshold = mean * varianceWeight;
+        }
+
+        // A fresh grid is fully active, so rows can be written straight
+        // into its words from several threads at once
+        LifeGrid grid = new LifeGrid(cols, boardRows);
+        double fixedThreshold = globalThreshold;
+        inParallel(boardRows, (startY, endY) ->
+            seedRows(grid, table, xEdges, yEdges, fixedThreshold, startY, endY)
+        );
+        lastSeedNanos = System.nanoTime() - start;
+        return grid;
+    }
+
+    // One board per bitplane for ColorLife: plane channel * bitsPerChannel
+    // + bit holds bit (7 - bit) of each cell's mean red, green or blue
+    public LifeGrid[] seedColor(Raster source, int bitsPerChannel)
+        throws InterruptedException {
+        long start = System.nanoTime();
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        int cols = boardColumns(sourceWidth);
+        int boardRows = boardRows(sourceWidth, sourceHeight);
+        int[] xEdges = edges(cols, sourceWidth);
+        int[] yEdges = edges(boardRows, sourceHeight);
+
+        Raster.Channel[] channels = {
+            Raster.Channel.RED,
+            Raster.Channel.GREEN,
+            Raster.Channel.BLUE,
+        };
+        LifeGrid[] planes = new LifeGrid[channels.length * bitsPerChannel];
+        for (int c = 0; c < channels.length; c++) {
+            // One table at a time keeps the extra memory to one per pixel
+            SummedAreaTable table = SummedAreaTable.ofChannel(
+                source,
+                channels[c],
+                threads
+            );
+            LifeGrid[] channelPlanes = new LifeGrid[bitsPerChannel];
+            for (int bit = 0; bit < bitsPerChannel; bit++) {
+                channelPlanes[bit] = new LifeGrid(cols, boardRows);
+                planes[c * bitsPerChannel + bit] = channelPlanes[bit];
+            }
+            inParallel(boardRows, (startY, endY) ->
+                seedPlaneRows(channelPlanes, table, xEdges, yEdges, startY, endY)
+            );
+        }
+        lastSeedNanos = System.nanoTime() - start;
+        return planes;
+    }
+
+    private static void seedPlaneRows(
+        LifeGrid[] planes,
+        SummedAreaTable table,
+        int[] xEdges,
+        int[] yEdges,
+        int startY,
+        int endY
+    ) {
+        int cols = planes[0].getWidth();
+        int wordsPerRow = planes[0].getWordsPerRow();
+        for (int cy = startY; cy < endY; cy++) {
+            int row = cy * wordsPerRow;
+            for (int cx = 0; cx < cols; cx++) {
+                int mean = (int) Math.round(
+                    table.mean(xEdges[cx], yEdges[cy], xEdges[cx + 1], yEdges[cy + 1])
+                );
+                for (int bit = 0; bit < planes.length; bit++) {
+                    if ((mean & (0x80 >>> bit)) != 0) {
+                        planes[bit].words()[row + (cx >>> 6)] |= 1L << cx;
+                    }
+                }
+            }
+        }
+    }
+
+    private interface RowRange {
+        void run(int startY, int endY);
+    }
+
+    // Splits [0, rows) into one stripe per thread and runs them on the
+    // shared raster scheduler
+    private void inParallel(int rows, RowRange task) throws InterruptedException {
+        int stripes = Math.max(1, Math.min(threads, rows));
+        int rowsPerStripe = rows / stripes;
+        TileScheduler.shared().forEachInterruptibly("seed", stripes, i -> {
+            int startY = i * rowsPerStripe;
+            int endY = (i == stripes - 1) ? rows : (i + 1) * rowsPerStripe;
+            task.run(startY, endY);
+        });
+    }
+
+    private void seedRows(
+        LifeGrid grid,
+        SummedAreaTable table,
+        int[] xEdges,
+        int[] yEdges,
+        double globalThreshold,
+        int startY,
+        int endY
+    ) {
+        long[] words = grid.words();
+        int cols = grid.getWidth();
+        int boardRows = grid.getHeight();
+        int half = windowCells / 2;
+        for (int cy = startY; cy < endY; cy++) {
+            int row = cy * grid.getWordsPerRow();
+            for (int cx = 0; cx < cols; cx++) {
+                double cellMean = table.mean(
+                    xEdges[cx],
+                    yEdges[cy],
+                    xEdges[cx + 1],
+                    yEdges[cy + 1]
+                );
+                double cellThreshold = globalThreshold;
+                if (threshold == Threshold.ADAPTIVE) {
+                    cellThreshold = table.mean(
+                            xEdges[Math.max(0, cx - half)],
+                            yEdges[Math.max(0, cy - half)],
+                            xEdges[Math.min(cols, cx + half + 1)],
+                            yEdges[Math.min(boardRows, cy + half + 1)]
+                        ) *
+                        (1 - sensitivity);
+                }
+                if (cellMean < cellThreshold) {
+                    words[row + (cx >>> 6)] |= 1L << cx;
+                }
+            }
+        }
+    }
+
+    private static int[] edges(int cells, int pixels) {
+        int[] edges = new int[cells + 1];
+        for (int c = 0; c <= cells; c++) {
+            edges[c] = (int) ((long) c * pixels / cells);
+        }
+        return edges;
+    }
+}
@@ -0,0 +1,155 @@
+package jfxlabproj.gameoflife;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+public class LifeSimulation {
+
+    private static final long RATE_WINDOW_NANOS = 500_000_000L;
+
+    private final Automaton grid;
+    private final Automaton snapshot;
+    private final int stripes;
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    // 0 means step as fast as the cores allow
+    private volatile double maxGenerationsPerSecond;
+    private long nextGenerationAt;
+
+    private volatile double generationsPerSecond;
+    private long windowStart;
+    private long windowGenerations;
+
+    // The UI asks for a frame; the simulation fills the snapshot and flags it
+    private final AtomicBoolean frameWanted = new AtomicBoolean(true);
+    private volatile boolean frameReady;
+
+    public LifeSimulation(Automaton grid, int threads) {
+        this.grid = grid;
+        this.snapshot = grid.emptyCopy();
+        this.snapshot.copyStateFrom(grid);
+        this.stripes = Math.max(1, Math.min(threads, grid.getHeight()));
+    }
+
+    public void setMaxGenerationsPerSecond(double rate) {
+        maxGenerationsPerSecond = Math.max(0, rate);
+    }
+
+    public double getMaxGenerationsPerSecond() {
+        return maxGenerationsPerSecond;
+    }
+
+    public double getGenerationsPerSecond() {
+        return generationsPerSecond;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        windowStart = System.nanoTime();
+        windowGenerations = 0;
+        nextGenerationAt = windowStart;
+
+        // Every stripe reads its neighbours' edge rows straight from the
+        // shared current buffer, so halo rows need no copying. The last
+        // stripe to reach the barrier publishes the finished generation.
+        CyclicBarrier barrier = new CyclicBarrier(stripes, this::finishGeneration);
+        executor = Executors.newFixedThreadPool(stripes, runnable -> {
+            Thread thread = new Thread(runnable, "life-stripe");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int rowsPerStripe = grid.getHeight() / stripes;
+        for (int i = 0; i < stripes; i++) {
+            final int startY = i * rowsPerStripe;
+            final int endY = (i == stripes - 1)
+                ? grid.getHeight()
+                : (i + 1) * rowsPerStripe;
+            executor.submit(() -> runStripe(barrier, startY, endY));
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    // Called from the UI thread; returns the newest finished generation or
+    // null if none has completed since the last call. The returned grid is
+    // only valid until the next call.
+    public Automaton pollFrame() {
+        if (!frameReady) return null;
+        frameReady = false;
+        return snapshot;
+    }
+
+    // Lets the simulation overwrite the grid returned by pollFrame
+    public void releaseFrame() {
+        frameWanted.set(true);
+    }
+
+    private void runStripe(CyclicBarrier barrier, int startY, int endY) {
+        try {
+            while (running) {
+                grid.stepRows(startY, endY);
+                barrier.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (BrokenBarrierException e) {
+            // Another stripe stopped; nothing left to do
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            running = false;
+            barrier.reset();
+        }
+    }
+
+    // Runs once per generation while every stripe waits at the barrier
+    private void finishGeneration() {
+        grid.swap();
+
+        if (frameWanted.compareAndSet(true, false)) {
+            // The snapshot collects every tile changed since the last frame
+            snapshot.copyStateFrom(grid);
+            grid.clearDirty();
+            frameReady = true;
+        }
+
+        long now = System.nanoTime();
+        windowGenerations++;
+        if (now - windowStart >= RATE_WINDOW_NANOS) {
+            generationsPerSecond = windowGenerations * 1e9 / (now - windowStart);
+            windowStart = now;
+            windowGenerations = 0;
+        }
+
+        double rate = maxGenerationsPerSecond;
+        if (rate > 0) {
+            nextGenerationAt = Math.max(
+                nextGenerationAt + (long) (1e9 / rate),
+                now - (long) (1e9 / rate)
+            );
+            while (running && System.nanoTime() < nextGenerationAt) {
+                LockSupport.parkNanos(nextGenerationAt - System.nanoTime());
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
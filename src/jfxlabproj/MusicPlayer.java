@@ -7,12 +7,12 @@ import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.TextArea;
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import javax.sound.sampled.*;
+import jfxlabproj.raster.Raster;
 
 public class MusicPlayer {
 
@@ -143,29 +143,30 @@ public class MusicPlayer {
 
         playThread = new Thread(() -> {
             try {
-                PixelReader pixelReader = image.getPixelReader();
                 int width = (int) image.getWidth();
                 int height = (int) image.getHeight();
                 int bufferIndex = 0;
 
                 for (int y = 0; y < height && isPlaying; y += PIXEL_SKIP) {
+                    // Only the sampled row is copied out of the image
+                    Raster row = Raster.readRows(image, y, 1, false);
                     for (int x = 0; x < width && isPlaying; x += PIXEL_SKIP) {
-                        Color color = pixelReader.getColor(x, y);
+                        int argb = row.get(x, 0);
 
                         // Map colors to pentatonic scale frequencies
                         double baseFreq = 220.0; // A3
                         int[] pentatonic = { 0, 2, 4, 7, 9, 12 }; // Pentatonic scale intervals
-                        int noteIndex = (int) (color.getRed() * 5);
+                        int noteIndex = (Raster.red(argb) * 5) / 255;
                         double redFreq =
                             baseFreq *
                             Math.pow(2, pentatonic[noteIndex] / 12.0);
 
-                        noteIndex = (int) (color.getGreen() * 5);
+                        noteIndex = (Raster.green(argb) * 5) / 255;
                         double greenFreq =
                             (baseFreq * 2) *
                             Math.pow(2, pentatonic[noteIndex] / 12.0);
 
-                        noteIndex = (int) (color.getBlue() * 5);
+                        noteIndex = (Raster.blue(argb) * 5) / 255;
                         double blueFreq =
                             (baseFreq * 4) *
                             Math.pow(2, pentatonic[noteIndex] / 12.0);
@@ -176,7 +177,7 @@ public class MusicPlayer {
                         // Slower, smoother transition
                         lastFrequency =
                             lastFrequency + (targetFreq - lastFrequency) * 0.1;
-                        double amplitude = color.getBrightness() * 0.3; // Reduced volume further
+                        double amplitude = Raster.brightness(argb) * 0.3; // Reduced volume further
 
                         audioData[audioDataIndex] = amplitude;
                         audioDataIndex =
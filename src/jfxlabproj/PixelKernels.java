@@ -0,0 +1,84 @@
+package jfxlabproj.filter;
+
+// Bulk loops behind the point filters, run over one row of a tile in
+// place. This class is the scalar backend; VectorKernels overrides each
+// loop with jdk.incubator.vector when that module is in the boot layer.
+// Both backends do the same integer arithmetic, so their output matches
+// bit for bit. Run with -Djfxlabproj.simd=false to force the scalar path.
+class PixelKernels {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final PixelKernels INSTANCE = select();
+
+    static PixelKernels get() {
+        return INSTANCE;
+    }
+
+    private static PixelKernels select() {
+        boolean enabled = Boolean.parseBoolean(
+            System.getProperty("jfxlabproj.simd", "true")
+        );
+        if (!enabled || ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return new PixelKernels();
+        }
+        try {
+            // Loaded by name so no vector type is touched without the module
+            return (PixelKernels) Class.forName("jfxlabproj.filter.VectorKernels")
+                .getDeclaredConstructor()
+                .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new PixelKernels();
+        }
+    }
+
+    String getName() {
+        return "scalar";
+    }
+
+    // ColorMatrix in 16.16 fixed point: rows R, G, B, A of 5 entries each
+    void matrix(int[] fixed, int[] argb, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int pixel = argb[i];
+            int a = pixel >>> 24;
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+            argb[i] = (channel(fixed, 15, r, g, b, a) << 24) |
+                (channel(fixed, 0, r, g, b, a) << 16) |
+                (channel(fixed, 5, r, g, b, a) << 8) |
+                channel(fixed, 10, r, g, b, a);
+        }
+    }
+
+    static int channel(int[] fixed, int base, int r, int g, int b, int a) {
+        int value = fixed[base] * r + fixed[base + 1] * g + fixed[base + 2] * b +
+            fixed[base + 3] * a + fixed[base + 4];
+        return value <= 0 ? 0 : value >= 255 << 16 ? 255 : value >> 16;
+    }
+
+    // ChannelLut: one 256-entry table per channel
+    void lut(
+        int[] red,
+        int[] green,
+        int[] blue,
+        int[] alpha,
+        int[] argb,
+        int from,
+        int to
+    ) {
+        for (int i = from; i < to; i++) {
+            int pixel = argb[i];
+            argb[i] = (alpha[pixel >>> 24] << 24) |
+                (red[(pixel >> 16) & 0xFF] << 16) |
+                (green[(pixel >> 8) & 0xFF] << 8) |
+                blue[pixel & 0xFF];
+        }
+    }
+
+    // FlattenFilter: source over an opaque background
+    void flatten(int background, int[] argb, int from, int to) {
+        for (int i = from; i < to; i++) {
+            argb[i] = Blend.over(argb[i], background);
+        }
+    }
+}
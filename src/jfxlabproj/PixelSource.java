@@ -0,0 +1,17 @@
+package jfxlabproj.raster;
+
+import java.io.IOException;
+
+// An image read a rectangle at a time, for images that may be too large
+// to hold whole. A Raster is its own source; TiledImage decodes from a
+// file and FilteredSource filters another source piece by piece.
+public interface PixelSource {
+    int getWidth();
+
+    int getHeight();
+
+    // The given rectangle, which must lie inside the image. The result may
+    // share storage with the source, so callers must not modify it.
+    Raster region(int x, int y, int width, int height)
+        throws IOException, InterruptedException;
+}
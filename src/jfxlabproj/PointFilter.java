@@ -0,0 +1,72 @@
+package jfxlabproj.filter;
+
+import jfxlabproj.raster.Raster;
+import jfxlabproj.raster.TileScheduler;
+
+// A filter whose output pixel depends only on the input pixel and its
+// position. Runs of these fuse into one pass; see FusedPointFilter.
+public interface PointFilter extends RasterFilter {
+
+    int filter(int argb, int x, int y, int width, int height);
+
+    // Filters argb[from, to) in place, pixel from being (x, y). Filters
+    // that ignore position override this with a PixelKernels loop.
+    default void filterRow(
+        int[] argb,
+        int from,
+        int to,
+        int x,
+        int y,
+        int width,
+        int height
+    ) {
+        for (int i = from; i < to; i++) {
+            argb[i] = filter(argb[i], x + i - from, y, width, height);
+        }
+    }
+
+    @Override
+    default Raster apply(Raster source) {
+        return applyRegion(source, 0, 0, source.getWidth(), source.getHeight());
+    }
+
+    // Tiles are independent, so they run on the shared scheduler; each
+    // tile row is copied across and filtered in place, at its position
+    // in the whole image
+    @Override
+    default Raster applyRegion(
+        Raster source,
+        int left,
+        int top,
+        int imageWidth,
+        int imageHeight
+    ) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int[] in = source.array();
+        Raster target = new Raster(width, height);
+        int[] out = target.array();
+        TileScheduler.shared().forEachTile(
+            "point",
+            width,
+            height,
+            0,
+            (x0, y0, x1, y1) -> {
+                for (int y = y0; y < y1; y++) {
+                    int to = y * width + x0;
+                    System.arraycopy(in, source.rowOffset(y) + x0, out, to, x1 - x0);
+                    filterRow(
+                        out,
+                        to,
+                        to + x1 - x0,
+                        left + x0,
+                        top + y,
+                        imageWidth,
+                        imageHeight
+                    );
+                }
+            }
+        );
+        return target;
+    }
+}
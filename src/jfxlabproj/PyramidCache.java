@@ -0,0 +1,87 @@
+package jfxlabproj.raster;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Pyramids of open images, by key. Past the byte budget the least
+// recently used pyramids go first; the one just asked for is kept even
+// if it alone is over. Owners evict their pyramid when the image changes.
+public class PyramidCache {
+
+    private static final PyramidCache SHARED = new PyramidCache(64L << 20);
+
+    // Access-ordered, so iteration starts at the least recently used pyramid
+    private final Map<Object, ImagePyramid> pyramids = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private int hits;
+    private int builds;
+    private int evictions;
+
+    public PyramidCache(long maxBytes) {
+        setMaxBytes(maxBytes);
+    }
+
+    public static PyramidCache shared() {
+        return SHARED;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxBytes = maxBytes;
+        trim(null);
+    }
+
+    // The pyramid for key, built on the calling thread if it is not held
+    public synchronized ImagePyramid get(Object key, Supplier<ImagePyramid> build) {
+        ImagePyramid pyramid = pyramids.get(key);
+        if (pyramid != null) {
+            hits++;
+        } else {
+            builds++;
+            pyramid = build.get();
+            pyramids.put(key, pyramid);
+        }
+        trim(key);
+        return pyramid;
+    }
+
+    public synchronized void evict(Object key) {
+        if (pyramids.remove(key) != null) evictions++;
+    }
+
+    public synchronized String describe() {
+        long bytes = 0;
+        for (ImagePyramid pyramid : pyramids.values()) {
+            bytes += pyramid.bytes();
+        }
+        return String.format(
+            "%d pyramids (%.1f MB), %d hits, %d builds, %d evictions",
+            pyramids.size(),
+            bytes / 1e6,
+            hits,
+            builds,
+            evictions
+        );
+    }
+
+    // Level images are made after a pyramid is stored, so the total is
+    // counted afresh; there are only ever a few pyramids
+    private void trim(Object keep) {
+        long bytes = 0;
+        for (ImagePyramid pyramid : pyramids.values()) {
+            bytes += pyramid.bytes();
+        }
+        Iterator<Map.Entry<Object, ImagePyramid>> entries = pyramids.entrySet().iterator();
+        while (bytes > maxBytes && entries.hasNext()) {
+            Map.Entry<Object, ImagePyramid> entry = entries.next();
+            if (entry.getKey() == keep) continue;
+            bytes -= entry.getValue().bytes();
+            entries.remove();
+            evictions++;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package jfxlabproj.raster;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.IntBuffer;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+import javafx.scene.image.WritablePixelFormat;
+
+public class Raster implements PixelSource {
+
+    public enum Channel {
+        ALPHA(24),
+        RED(16),
+        GREEN(8),
+        BLUE(0);
+
+        private final int shift;
+
+        Channel(int shift) {
+            this.shift = shift;
+        }
+
+        public int of(int argb) {
+            return (argb >>> shift) & 0xFF;
+        }
+    }
+
+    private final int[] pixels;
+    private final int offset;
+    private final int stride;
+    private final int width;
+    private final int height;
+    private final boolean premultiplied;
+
+    public Raster(int width, int height) {
+        this(new int[width * height], 0, width, width, height, false);
+    }
+
+    public Raster(
+        int[] pixels,
+        int offset,
+        int stride,
+        int width,
+        int height,
+        boolean premultiplied
+    ) {
+        this.pixels = pixels;
+        this.offset = offset;
+        this.stride = stride;
+        this.width = width;
+        this.height = height;
+        this.premultiplied = premultiplied;
+    }
+
+    // Reads the whole image with straight (non-premultiplied) alpha, like getColor
+    public static Raster read(Image image) {
+        return read(image, false);
+    }
+
+    public static Raster read(Image image, boolean premultiplied) {
+        return readRows(image, 0, (int) image.getHeight(), premultiplied);
+    }
+
+    // Reads a band of full rows; only this band is copied out of the image
+    public static Raster readRows(
+        Image image,
+        int startY,
+        int rows,
+        boolean premultiplied
+    ) {
+        return readRegion(
+            image.getPixelReader(),
+            0,
+            startY,
+            (int) image.getWidth(),
+            rows,
+            premultiplied
+        );
+    }
+
+    public static Raster readRegion(
+        PixelReader reader,
+        int x,
+        int y,
+        int width,
+        int height,
+        boolean premultiplied
+    ) {
+        int[] pixels = new int[width * height];
+        reader.getPixels(
+            x,
+            y,
+            width,
+            height,
+            format(premultiplied),
+            pixels,
+            0,
+            width
+        );
+        return new Raster(pixels, 0, width, width, height, premultiplied);
+    }
+
+    // Reads an AWT image, e.g. from ImageIO, without a JavaFX toolkit
+    public static Raster read(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        return new Raster(pixels, 0, width, width, height, false);
+    }
+
+    public static WritablePixelFormat<IntBuffer> format(boolean premultiplied) {
+        return premultiplied
+            ? WritablePixelFormat.getIntArgbPreInstance()
+            : WritablePixelFormat.getIntArgbInstance();
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isPremultiplied() {
+        return premultiplied;
+    }
+
+    // Backing array; row y starts at rowOffset(y) and rows are getStride() apart
+    public int[] array() {
+        return pixels;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public int rowOffset(int y) {
+        return offset + y * stride;
+    }
+
+    public int get(int x, int y) {
+        return pixels[offset + y * stride + x];
+    }
+
+    public void set(int x, int y, int argb) {
+        pixels[offset + y * stride + x] = argb;
+    }
+
+    public IntBuffer row(int y) {
+        return IntBuffer.wrap(pixels, rowOffset(y), width).slice();
+    }
+
+    // Tile view sharing this raster's storage
+    @Override
+    public Raster region(int x, int y, int width, int height) {
+        if (
+            x < 0 ||
+            y < 0 ||
+            x + width > this.width ||
+            y + height > this.height
+        ) {
+            throw new IndexOutOfBoundsException(
+                "Region " + width + "x" + height + " at " + x + "," + y +
+                " outside " + this.width + "x" + this.height
+            );
+        }
+        return new Raster(
+            pixels,
+            rowOffset(y) + x,
+            stride,
+            width,
+            height,
+            premultiplied
+        );
+    }
+
+    public ChannelView channel(Channel channel) {
+        return new ChannelView(this, channel);
+    }
+
+    // Compact copy whose stride equals its width
+    public Raster copy() {
+        Raster copy = new Raster(
+            new int[width * height],
+            0,
+            width,
+            width,
+            height,
+            premultiplied
+        );
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(pixels, rowOffset(y), copy.pixels, y * width, width);
+        }
+        return copy;
+    }
+
+    public void writeTo(WritableImage image) {
+        writeTo(image, 0, 0);
+    }
+
+    public void writeTo(WritableImage image, int x, int y) {
+        image
+            .getPixelWriter()
+            .setPixels(
+                x,
+                y,
+                width,
+                height,
+                format(premultiplied),
+                pixels,
+                offset,
+                stride
+            );
+    }
+
+    // Copies rows straight into the image's int buffer. TYPE_INT_RGB drops
+    // alpha; otherwise the image is ARGB, premultiplied like this raster.
+    public BufferedImage toBufferedImage(int type) {
+        if (type != BufferedImage.TYPE_INT_RGB) {
+            type = premultiplied
+                ? BufferedImage.TYPE_INT_ARGB_PRE
+                : BufferedImage.TYPE_INT_ARGB;
+        }
+        BufferedImage image = new BufferedImage(width, height, type);
+        int[] target = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(pixels, rowOffset(y), target, y * width, width);
+        }
+        return image;
+    }
+
+    public WritableImage toImage() {
+        WritableImage image = new WritableImage(width, height);
+        writeTo(image);
+        return image;
+    }
+
+    public static int red(int argb) {
+        return (argb >> 16) & 0xFF;
+    }
+
+    public static int green(int argb) {
+        return (argb >> 8) & 0xFF;
+    }
+
+    public static int blue(int argb) {
+        return argb & 0xFF;
+    }
+
+    // Same value as Color.getBrightness() for an opaque pixel
+    public static double brightness(int argb) {
+        return maxChannel(argb) / 255.0;
+    }
+
+    // Brightness as an 8-bit sample
+    public static int maxChannel(int argb) {
+        return Math.max(red(argb), Math.max(green(argb), blue(argb)));
+    }
+
+    public static class ChannelView {
+
+        private final Raster raster;
+        private final Channel channel;
+
+        ChannelView(Raster raster, Channel channel) {
+            this.raster = raster;
+            this.channel = channel;
+        }
+
+        public int get(int x, int y) {
+            return channel.of(raster.get(x, y));
+        }
+
+        public int getWidth() {
+            return raster.width;
+        }
+
+        public int getHeight() {
+            return raster.height;
+        }
+
+        // Copies the channel into a dense array of 0-255 samples
+        public byte[] toArray() {
+            byte[] samples = new byte[raster.width * raster.height];
+            int i = 0;
+            for (int y = 0; y < raster.height; y++) {
+                int row = raster.rowOffset(y);
+                for (int x = 0; x < raster.width; x++) {
+                    samples[i++] = (byte) channel.of(raster.pixels[row + x]);
+                }
+            }
+            return samples;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package jfxlabproj.filter;
+
+import jfxlabproj.raster.Raster;
+
+// A CPU image operation on straight (non-premultiplied) ARGB rasters.
+// Filters never modify their input and may return a larger raster when
+// their result spills past the source bounds, as shadows do.
+public interface RasterFilter {
+    Raster apply(Raster source);
+
+    // How far from an output pixel, in source pixels, its inputs can lie.
+    // FilteredSource reads this much extra around each piece it filters.
+    default int getReach() {
+        return 0;
+    }
+
+    // Pixels the result grows by on every side
+    default int getGrowth() {
+        return 0;
+    }
+
+    // Filters region, the part of an imageWidth x imageHeight source whose
+    // top-left corner is (x, y). The result is that part of the whole
+    // image's result, grown by getGrowth() on every side; pixels within
+    // getReach() of an edge of region inside the image are not valid.
+    default Raster applyRegion(
+        Raster region,
+        int x,
+        int y,
+        int imageWidth,
+        int imageHeight
+    ) {
+        return apply(region);
+    }
+}
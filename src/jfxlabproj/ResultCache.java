@@ -0,0 +1,402 @@
+package jfxlabproj.raster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Results of filters and analyses, keyed by a hash of the pixels or file
+// they came from plus the operation that made them, so the same work on
+// the same image is done once. Results live in an LRU bounded by bytes.
+// With a directory set, every result is also written there, deflated,
+// on a background thread so callers never wait on the disk, and a result
+// not in memory is looked for on disk before it counts as a miss, so
+// results survive a restart; the directory has its own budget, least
+// recently used files deleted first.
+public class ResultCache {
+
+    // Bumped whenever a stored format, or what an operation name means,
+    // changes; files from another version are misses
+    private static final int VERSION = 1;
+    private static final int MAGIC = 0x4A465243;
+
+    private static final ResultCache SHARED = new ResultCache(64L << 20);
+
+    // Writes stored results to disk, in the order they were put
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(
+        runnable -> {
+            Thread thread = new Thread(runnable, "result-cache");
+            thread.setDaemon(true);
+            return thread;
+        }
+    );
+
+    // How a kind of result is sized, stored and read back
+    public interface Codec<T> {
+        long bytes(T value);
+
+        void write(T value, DataOutputStream out) throws IOException;
+
+        T read(DataInputStream in) throws IOException;
+    }
+
+    public static final Codec<Raster> RASTERS = new Codec<>() {
+        @Override
+        public long bytes(Raster raster) {
+            return 4L * raster.getWidth() * raster.getHeight();
+        }
+
+        @Override
+        public void write(Raster raster, DataOutputStream out) throws IOException {
+            int width = raster.getWidth();
+            out.writeInt(width);
+            out.writeInt(raster.getHeight());
+            out.writeBoolean(raster.isPremultiplied());
+            ByteBuffer row = ByteBuffer.allocate(4 * width);
+            for (int y = 0; y < raster.getHeight(); y++) {
+                row.clear();
+                row.asIntBuffer().put(raster.array(), raster.rowOffset(y), width);
+                out.write(row.array());
+            }
+        }
+
+        @Override
+        public Raster read(DataInputStream in) throws IOException {
+            int width = in.readInt();
+            int height = in.readInt();
+            boolean premultiplied = in.readBoolean();
+            if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+                throw new IOException("Bad raster size " + width + "x" + height);
+            }
+            int[] pixels = new int[width * height];
+            byte[] row = new byte[4 * width];
+            for (int y = 0; y < height; y++) {
+                in.readFully(row);
+                ByteBuffer.wrap(row).asIntBuffer().get(pixels, y * width, width);
+            }
+            return new Raster(pixels, 0, width, width, height, premultiplied);
+        }
+    };
+
+    private static class Entry {
+
+        final Object value;
+        final long bytes;
+
+        Entry(Object value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    // Access-ordered, so iteration starts at the least recently used result
+    private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long maxBytes;
+    private long cachedBytes;
+    private File directory;
+    private long maxDiskBytes = 256L << 20;
+    private long diskBytes;
+    private int hits;
+    private int diskHits;
+    private int misses;
+    private int evictions;
+    private int diskEvictions;
+
+    public ResultCache(long maxBytes) {
+        setMaxBytes(maxBytes);
+    }
+
+    public static ResultCache shared() {
+        return SHARED;
+    }
+
+    // Results kept in memory, in bytes
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    // Where results are also stored, created if missing; null keeps them
+    // in memory only
+    public synchronized void setDirectory(File directory) throws IOException {
+        if (directory != null) {
+            Files.createDirectories(directory.toPath());
+        }
+        this.directory = directory;
+        diskBytes = 0;
+        for (File file : files()) {
+            diskBytes += file.length();
+        }
+        trimDisk();
+    }
+
+    public synchronized File getDirectory() {
+        return directory;
+    }
+
+    // Bytes of stored results on disk
+    public synchronized void setMaxDiskBytes(long maxDiskBytes) {
+        if (maxDiskBytes <= 0) {
+            throw new IllegalArgumentException("Disk budget must be positive");
+        }
+        this.maxDiskBytes = maxDiskBytes;
+        trimDisk();
+    }
+
+    // The key for operation applied to content; operation should name
+    // every parameter the result depends on
+    public static String key(String content, String operation) {
+        return content + "/" + operation;
+    }
+
+    // A hash of the pixels, for results computed from a raster in memory
+    public static String hash(Raster raster) {
+        MessageDigest digest = sha256();
+        int width = raster.getWidth();
+        ByteBuffer row = ByteBuffer.allocate(4 * width);
+        row.putInt(width);
+        row.flip();
+        digest.update(row);
+        for (int y = 0; y < raster.getHeight(); y++) {
+            row.clear();
+            row.asIntBuffer().put(raster.array(), raster.rowOffset(y), width);
+            digest.update(row.array());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // A hash of the file's bytes, for results computed from the whole
+    // image without decoding it first
+    public static String hash(File file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JDK has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The result stored under key, from memory or disk, or null. Callers
+    // must not modify it.
+    public <T> T get(String key, Codec<T> codec) {
+        File file;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                @SuppressWarnings("unchecked")
+                T value = (T) entry.value;
+                return value;
+            }
+            file = file(key);
+        }
+        T value = file == null ? null : load(file, key, codec);
+        synchronized (this) {
+            if (value == null) {
+                misses++;
+                return null;
+            }
+            diskHits++;
+            remember(key, value, codec.bytes(value));
+        }
+        return value;
+    }
+
+    // Stores value under key, replacing any earlier result, and returns it.
+    // The disk copy is written later, on the cache's own thread; value
+    // must not be modified afterwards.
+    public <T> T put(String key, T value, Codec<T> codec) {
+        File file;
+        synchronized (this) {
+            remember(key, value, codec.bytes(value));
+            file = file(key);
+        }
+        if (file != null) writer.execute(() -> store(file, key, value, codec));
+        return value;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized int getEvictions() {
+        return evictions;
+    }
+
+    public synchronized String describe() {
+        String memory = String.format(
+            "%d results (%.1f MB), %d hits, %d from disk, %d misses, %d evicted",
+            entries.size(),
+            cachedBytes / 1e6,
+            hits,
+            diskHits,
+            misses,
+            evictions
+        );
+        if (directory == null) return memory;
+        return memory + String.format(
+            ", %.1f MB on disk, %d deleted",
+            diskBytes / 1e6,
+            diskEvictions
+        );
+    }
+
+    private void remember(String key, Object value, long bytes) {
+        Entry old = entries.remove(key);
+        if (old != null) cachedBytes -= old.bytes;
+        // Larger than the whole budget: only the disk copy is kept
+        if (bytes > maxBytes) return;
+        entries.put(key, new Entry(value, bytes));
+        cachedBytes += bytes;
+        trim();
+    }
+
+    private void trim() {
+        Iterator<Entry> values = entries.values().iterator();
+        while (cachedBytes > maxBytes && values.hasNext()) {
+            cachedBytes -= values.next().bytes;
+            values.remove();
+            evictions++;
+        }
+    }
+
+    // One file per key, named by the key's hash
+    private File file(String key) {
+        if (directory == null) return null;
+        MessageDigest digest = sha256();
+        digest.update(key.getBytes(StandardCharsets.UTF_8));
+        return new File(directory, HexFormat.of().formatHex(digest.digest()) + ".res");
+    }
+
+    private File[] files() {
+        File[] files = directory == null
+            ? null
+            : directory.listFiles(file -> file.getName().endsWith(".res"));
+        return files == null ? new File[0] : files;
+    }
+
+    // Any unreadable, stale or foreign file is a miss, and is deleted
+    private <T> T load(File file, String key, Codec<T> codec) {
+        if (!file.isFile()) return null;
+        try (
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new InflaterInputStream(
+                    Files.newInputStream(file.toPath())
+                ))
+            )
+        ) {
+            if (in.readInt() == MAGIC && in.readInt() == VERSION && in.readUTF().equals(key)) {
+                T value = codec.read(in);
+                // Reading counts as use for the disk LRU
+                file.setLastModified(System.currentTimeMillis());
+                return value;
+            }
+        } catch (IOException | RuntimeException e) {
+            // Treated as absent
+        }
+        delete(file);
+        return null;
+    }
+
+    // Written to a temporary file and moved into place, so a reader never
+    // sees half a result
+    private <T> void store(File file, String key, T value, Codec<T> codec) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(file.getParentFile().toPath(), "result", ".tmp");
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (
+                OutputStream raw = Files.newOutputStream(temp);
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new DeflaterOutputStream(raw, deflater))
+                )
+            ) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(key);
+                codec.write(value, out);
+            } finally {
+                deflater.end();
+            }
+            long replaced = file.length();
+            Files.move(
+                temp,
+                file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            );
+            temp = null;
+            synchronized (this) {
+                diskBytes += file.length() - replaced;
+                trimDisk();
+            }
+        } catch (IOException e) {
+            // The result is still in memory; only persistence is lost
+        } finally {
+            if (temp != null) temp.toFile().delete();
+        }
+    }
+
+    private synchronized void delete(File file) {
+        long length = file.length();
+        if (file.delete()) diskBytes -= length;
+    }
+
+    private void trimDisk() {
+        if (directory == null || diskBytes <= maxDiskBytes) return;
+        File[] files = files();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (diskBytes <= maxDiskBytes) break;
+            long length = file.length();
+            if (file.delete()) {
+                diskBytes -= length;
+                diskEvictions++;
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package jfxlabproj.gameoflife;
+
+import java.util.Arrays;
+
+// One byte per cell, stepped for any LifeRule by a single core: box sums
+// of live cells from sliding column and row windows, then one lookup in
+// the rule's precomputed table. Cost per cell does not depend on radius.
+public class RuleGrid extends Automaton {
+
+    private final int width;
+    private final int height;
+    private final LifeRule rule;
+    private final byte[] table;
+    private final int counts;
+    private final int tileColumns;
+    private final int tileRows;
+    private byte[] cells;
+    private byte[] next;
+    private long generation;
+    // Tiles whose cells changed during the current step
+    private final boolean[] changed;
+    // Tiles changed since the last clearDirty(), for incremental rendering
+    private final boolean[] dirty;
+
+    public RuleGrid(int width, int height, LifeRule rule) {
+        this.width = width;
+        this.height = height;
+        this.rule = rule;
+        this.table = rule.buildTable();
+        this.counts = rule.getMaxCount() + 1;
+        this.tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.cells = new byte[width * height];
+        this.next = new byte[width * height];
+        this.changed = new boolean[tileColumns * tileRows];
+        this.dirty = new boolean[tileColumns * tileRows];
+        Arrays.fill(dirty, true);
+    }
+
+    // Starts a rule from a thresholded seed: live seed cells become state 1
+    public static RuleGrid fromSeed(LifeGrid seed, LifeRule rule) {
+        RuleGrid grid = new RuleGrid(seed.getWidth(), seed.getHeight(), rule);
+        for (int y = 0; y < seed.getHeight(); y++) {
+            for (int x = 0; x < seed.getWidth(); x++) {
+                if (seed.get(x, y)) grid.cells[y * grid.width + x] = 1;
+            }
+        }
+        grid.generation = seed.getGeneration();
+        return grid;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public LifeRule getRule() {
+        return rule;
+    }
+
+    @Override
+    public int getState(int x, int y) {
+        return cells[y * width + x] & 0xFF;
+    }
+
+    public void setState(int x, int y, int state) {
+        cells[y * width + x] = (byte) state;
+        dirty[(y / TILE_SIZE) * tileColumns + x / TILE_SIZE] = true;
+    }
+
+    // Current generation, row-major, one state per byte
+    public byte[] states() {
+        return cells;
+    }
+
+    @Override
+    public int population() {
+        int count = 0;
+        for (byte cell : cells) {
+            if (cell == 1) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int getTileColumns() {
+        return tileColumns;
+    }
+
+    @Override
+    public int getTileRows() {
+        return tileRows;
+    }
+
+    @Override
+    public boolean isTileDirty(int tileX, int tileY) {
+        return dirty[tileY * tileColumns + tileX];
+    }
+
+    @Override
+    public void clearDirty() {
+        Arrays.fill(dirty, false);
+    }
+
+    @Override
+    void stepRows(int startY, int endY) {
+        int radius = rule.getRadius();
+        boolean excludeCenter = !rule.includesCenter();
+        // Live cells per column over rows [y - radius, y + radius]
+        int[] columnSums = new int[width];
+        for (
+            int y = Math.max(0, startY - radius);
+            y <= Math.min(height - 1, startY + radius);
+            y++
+        ) {
+            addRow(columnSums, y, 1);
+        }
+
+        for (int y = startY; y < endY; y++) {
+            if (y > startY) {
+                if (y + radius < height) addRow(columnSums, y + radius, 1);
+                if (y - radius - 1 >= 0) addRow(columnSums, y - radius - 1, -1);
+            }
+
+            int row = y * width;
+            int tileRow = (y / TILE_SIZE) * tileColumns;
+            int window = 0;
+            for (int x = 0; x <= Math.min(radius, width - 1); x++) {
+                window += columnSums[x];
+            }
+            for (int x = 0; x < width; x++) {
+                int state = cells[row + x] & 0xFF;
+                int count = excludeCenter && state == 1 ? window - 1 : window;
+                byte result = table[state * counts + count];
+                if ((result & 0xFF) != state) {
+                    changed[tileRow + x / TILE_SIZE] = true;
+                }
+                next[row + x] = result;
+
+                if (x + radius + 1 < width) window += columnSums[x + radius + 1];
+                if (x - radius >= 0) window -= columnSums[x - radius];
+            }
+        }
+    }
+
+    private void addRow(int[] columnSums, int y, int sign) {
+        int row = y * width;
+        for (int x = 0; x < width; x++) {
+            if (cells[row + x] == 1) columnSums[x] += sign;
+        }
+    }
+
+    @Override
+    void swap() {
+        byte[] previous = cells;
+        cells = next;
+        next = previous;
+        generation++;
+        for (int tile = 0; tile < changed.length; tile++) {
+            if (changed[tile]) {
+                dirty[tile] = true;
+                changed[tile] = false;
+            }
+        }
+    }
+
+    @Override
+    RuleGrid emptyCopy() {
+        return new RuleGrid(width, height, rule);
+    }
+
+    @Override
+    void copyStateFrom(Automaton other) {
+        RuleGrid source = (RuleGrid) other;
+        System.arraycopy(source.cells, 0, cells, 0, cells.length);
+        generation = source.generation;
+        for (int i = 0; i < dirty.length; i++) {
+            dirty[i] |= source.dirty[i];
+        }
+    }
+}
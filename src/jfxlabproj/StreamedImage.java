@@ -0,0 +1,271 @@
+package jfxlabproj.export;
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Vector;
+import jfxlabproj.filter.FlattenFilter;
+import jfxlabproj.raster.PixelSource;
+
+// A PixelSource as an AWT image an ImageWriter can encode from without
+// the whole image in memory. Rows are fetched a band at a time as the
+// writer reaches them, flattened first for formats without alpha.
+//
+// The PNG writer asks for a row at a time, so the image is tiled by bands.
+// Other writers, JPEG among them, copy the whole image unless it is one
+// tile; for them the single tile's buffer fetches bands on demand.
+class StreamedImage implements RenderedImage {
+
+    private static final int[] ARGB_MASKS = {
+        0x00FF0000,
+        0x0000FF00,
+        0x000000FF,
+        0xFF000000,
+    };
+    private static final int[] RGB_MASKS = { 0x00FF0000, 0x0000FF00, 0x000000FF };
+
+    private final PixelSource source;
+    private final FlattenFilter flatten;
+    private final boolean singleTile;
+    private final int width;
+    private final int height;
+    private final int bandRows;
+    private final int[] masks;
+    private final ColorModel colorModel;
+
+    // The band last fetched: rows [bandTop, bandTop + bandHeight)
+    private int[] band;
+    private int bandTop = -1;
+    private int bandHeight;
+
+    // Checked failures of the source, carried out through the writer
+    static class Failure extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        Failure(Exception cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        void rethrow() throws IOException, InterruptedException {
+            Throwable cause = getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw (IOException) cause;
+        }
+    }
+
+    StreamedImage(
+        PixelSource source,
+        boolean alpha,
+        int background,
+        boolean singleTile,
+        int bandRows
+    ) throws IOException {
+        this.source = source;
+        this.flatten = alpha ? null : new FlattenFilter(background);
+        this.singleTile = singleTile;
+        this.width = source.getWidth();
+        this.height = source.getHeight();
+        this.bandRows = Math.max(1, Math.min(bandRows, height));
+        if (singleTile && (long) width * height >= Integer.MAX_VALUE) {
+            throw new IOException(
+                "Image too large to stream as one tile: " + width + "x" + height
+            );
+        }
+        this.masks = alpha ? ARGB_MASKS : RGB_MASKS;
+        this.colorModel = alpha
+            ? ColorModel.getRGBdefault()
+            : new DirectColorModel(24, RGB_MASKS[0], RGB_MASKS[1], RGB_MASKS[2]);
+    }
+
+    // Makes rows [y, ...) current, fetching the band that holds row y
+    private void fetch(int y) {
+        if (y >= bandTop && y < bandTop + bandHeight) return;
+        int top = y / bandRows * bandRows;
+        int rows = Math.min(bandRows, height - top);
+        try {
+            jfxlabproj.raster.Raster pixels = source.region(0, top, width, rows);
+            if (flatten != null) {
+                pixels = flatten.apply(pixels);
+            } else if (pixels.rowOffset(0) != 0 || pixels.getStride() != width) {
+                pixels = pixels.copy();
+            }
+            band = pixels.array();
+        } catch (IOException | InterruptedException e) {
+            throw new Failure(e);
+        }
+        bandTop = top;
+        bandHeight = rows;
+    }
+
+    private int pixel(int x, int y) {
+        fetch(y);
+        return band[(y - bandTop) * width + x];
+    }
+
+    @Override
+    public Raster getData(Rectangle rect) {
+        Rectangle area = rect.intersection(new Rectangle(0, 0, width, height));
+        int[] pixels = new int[area.width * area.height];
+        for (int y = 0; y < area.height; y++) {
+            fetch(area.y + y);
+            System.arraycopy(
+                band,
+                (area.y + y - bandTop) * width + area.x,
+                pixels,
+                y * area.width,
+                area.width
+            );
+        }
+        return Raster.createPackedRaster(
+            new DataBufferInt(pixels, pixels.length),
+            area.width,
+            area.height,
+            area.width,
+            masks,
+            new Point(area.x, area.y)
+        );
+    }
+
+    @Override
+    public Raster getData() {
+        return getData(new Rectangle(0, 0, width, height));
+    }
+
+    @Override
+    public WritableRaster copyData(WritableRaster target) {
+        Rectangle bounds = new Rectangle(0, 0, width, height);
+        if (target == null) {
+            target = colorModel.createCompatibleWritableRaster(width, height);
+        } else {
+            bounds = bounds.intersection(target.getBounds());
+        }
+        for (int y = bounds.y; y < bounds.y + bounds.height; y += bandRows) {
+            int rows = Math.min(bandRows, bounds.y + bounds.height - y);
+            target.setRect(getData(new Rectangle(bounds.x, y, bounds.width, rows)));
+        }
+        return target;
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+        if (!singleTile) {
+            return getData(new Rectangle(0, tileY * bandRows, width, bandRows));
+        }
+        // Reads through to the bands; nothing is copied up front
+        DataBuffer buffer = new DataBuffer(DataBuffer.TYPE_INT, width * height) {
+            @Override
+            public int getElem(int bank, int i) {
+                return pixel(i % width, i / width);
+            }
+
+            @Override
+            public void setElem(int bank, int i, int value) {
+                throw new UnsupportedOperationException("Read-only image");
+            }
+        };
+        return Raster.createRaster(getSampleModel(), buffer, new Point(0, 0));
+    }
+
+    @Override
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(String name) {
+        return Image.UndefinedProperty;
+    }
+
+    @Override
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    @Override
+    public ColorModel getColorModel() {
+        return colorModel;
+    }
+
+    @Override
+    public SampleModel getSampleModel() {
+        return new SinglePixelPackedSampleModel(
+            DataBuffer.TYPE_INT,
+            getTileWidth(),
+            getTileHeight(),
+            masks
+        );
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMinX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinY() {
+        return 0;
+    }
+
+    @Override
+    public int getNumXTiles() {
+        return 1;
+    }
+
+    @Override
+    public int getNumYTiles() {
+        return singleTile ? 1 : (height + bandRows - 1) / bandRows;
+    }
+
+    @Override
+    public int getMinTileX() {
+        return 0;
+    }
+
+    @Override
+    public int getMinTileY() {
+        return 0;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return width;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return singleTile ? height : bandRows;
+    }
+
+    @Override
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    @Override
+    public int getTileGridYOffset() {
+        return 0;
+    }
+}
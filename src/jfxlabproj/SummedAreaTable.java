@@ -0,0 +1,179 @@
+package jfxlabproj.raster;
+
+import java.util.function.IntUnaryOperator;
+
+public class SummedAreaTable {
+
+    // Rectangles at most this large are summed in one lookup
+    private static final long MAX_LOOKUP_AREA = (1L << 24) - 1;
+
+    private final int width;
+    private final int height;
+    private final int rowsPerStripe;
+    // Row y holds sums over [0, x) x [stripe start, y]. Sums wrap around
+    // in 32 bits; differences are still exact while the true rectangle
+    // sum fits, which MAX_LOOKUP_AREA guarantees for 8-bit samples.
+    private final int[] local;
+    // Row s holds sums over [0, x) x [0, start of stripe s)
+    private final int[] carry;
+    private final long total;
+    private final long totalSquares;
+
+    private SummedAreaTable(
+        int width,
+        int height,
+        int rowsPerStripe,
+        int[] local,
+        int[] carry,
+        long total,
+        long totalSquares
+    ) {
+        this.width = width;
+        this.height = height;
+        this.rowsPerStripe = rowsPerStripe;
+        this.local = local;
+        this.carry = carry;
+        this.total = total;
+        this.totalSquares = totalSquares;
+    }
+
+    // Builds the table over per-pixel brightness (max of R, G, B, 0-255)
+    // with one parallel pass over the pixels
+    public static SummedAreaTable ofBrightness(Raster raster, int threads)
+        throws InterruptedException {
+        return build(raster, Raster::maxChannel, threads);
+    }
+
+    // Same, over one 8-bit channel of each pixel
+    public static SummedAreaTable ofChannel(
+        Raster raster,
+        Raster.Channel channel,
+        int threads
+    ) throws InterruptedException {
+        return build(raster, channel::of, threads);
+    }
+
+    // sample must map each pixel to 0-255 for sums to stay exact
+    private static SummedAreaTable build(
+        Raster raster,
+        IntUnaryOperator sample,
+        int threads
+    ) throws InterruptedException {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int stride = width + 1;
+        int stripes = Math.max(1, Math.min(threads, height));
+        int rowsPerStripe = Math.max(1, height / stripes);
+        stripes = (height + rowsPerStripe - 1) / rowsPerStripe;
+        int[] local = new int[stride * height];
+
+        // Each stripe only reads its own rows and writes its own sums
+        int stripeCount = stripes;
+        long[][] sums = new long[stripeCount][];
+        TileScheduler.shared().forEachInterruptibly("summed-area", stripeCount, s -> {
+            int startY = s * rowsPerStripe;
+            int endY = Math.min(height, startY + rowsPerStripe);
+            sums[s] = buildStripe(raster, sample, local, startY, endY);
+        });
+        long total = 0;
+        long totalSquares = 0;
+        for (long[] stripe : sums) {
+            total += stripe[0];
+            totalSquares += stripe[1];
+        }
+
+        // Carry each stripe's bottom row into the stripes below it
+        int[] carry = new int[stride * stripes];
+        for (int s = 1; s < stripes; s++) {
+            int lastRow = (s * rowsPerStripe - 1) * stride;
+            for (int x = 0; x < stride; x++) {
+                carry[s * stride + x] =
+                    carry[(s - 1) * stride + x] + local[lastRow + x];
+            }
+        }
+        return new SummedAreaTable(
+            width,
+            height,
+            rowsPerStripe,
+            local,
+            carry,
+            total,
+            totalSquares
+        );
+    }
+
+    private static long[] buildStripe(
+        Raster raster,
+        IntUnaryOperator sample,
+        int[] local,
+        int startY,
+        int endY
+    ) {
+        int[] pixels = raster.array();
+        int width = raster.getWidth();
+        int stride = width + 1;
+        long total = 0;
+        long totalSquares = 0;
+        for (int y = startY; y < endY; y++) {
+            int source = raster.rowOffset(y);
+            int row = y * stride;
+            int above = y == startY ? -1 : row - stride;
+            int rowSum = 0;
+            for (int x = 0; x < width; x++) {
+                int value = sample.applyAsInt(pixels[source + x]);
+                rowSum += value;
+                totalSquares += value * value;
+                local[row + x + 1] = above < 0
+                    ? rowSum
+                    : local[above + x + 1] + rowSum;
+            }
+            total += rowSum;
+        }
+        return new long[] { total, totalSquares };
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public long totalSquares() {
+        return totalSquares;
+    }
+
+    // Sum over columns [x0, x1) and rows [y0, y1)
+    public long sum(int x0, int y0, int x1, int y1) {
+        if (x1 <= x0 || y1 <= y0) return 0;
+        int rowsPerLookup = (int) Math.max(1, MAX_LOOKUP_AREA / (x1 - x0));
+        long sum = 0;
+        for (int top = y0; top < y1; top += rowsPerLookup) {
+            int bottom = (int) Math.min(y1, (long) top + rowsPerLookup);
+            int wrapped =
+                prefix(x1, bottom) - prefix(x0, bottom) -
+                prefix(x1, top) + prefix(x0, top);
+            sum += wrapped & 0xFFFFFFFFL;
+        }
+        return sum;
+    }
+
+    public double mean(int x0, int y0, int x1, int y1) {
+        long area = (long) (x1 - x0) * (y1 - y0);
+        return area == 0 ? 0 : sum(x0, y0, x1, y1) / (double) area;
+    }
+
+    // Sum over [0, x) x [0, y)
+    private int prefix(int x, int y) {
+        if (y == 0) return 0;
+        int row = y - 1;
+        int stride = width + 1;
+        int stripe = row / rowsPerStripe;
+        return local[row * stride + x] + carry[stripe * stride + x];
+    }
+}
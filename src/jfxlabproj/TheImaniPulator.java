@@ -1,16 +1,23 @@
 package jfxlabproj;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.embed.swing.SwingFXUtils;
@@ -20,10 +27,16 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.TextField;
+import javafx.scene.control.Tooltip;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelReader;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
@@ -31,115 +44,367 @@ import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import javax.imageio.ImageIO;
+import javafx.stage.Window;
+import javafx.util.Duration;
+import jfxlabproj.analysis.ColorHistogram;
+import jfxlabproj.analysis.ColorSample;
+import jfxlabproj.analysis.ColorSketch;
+import jfxlabproj.export.ImageExporter;
+import jfxlabproj.filter.FilterChain;
+import jfxlabproj.filter.FilteredSource;
 import jfxlabproj.gameoflife.GameOfLifeProcessor;
 import jfxlabproj.musicplayer.MusicPlayer;
+import jfxlabproj.raster.EditHistory;
+import jfxlabproj.raster.ImageLoader;
+import jfxlabproj.raster.ImagePyramid;
+import jfxlabproj.raster.PixelSource;
+import jfxlabproj.raster.PyramidCache;
+import jfxlabproj.raster.ResultCache;
+import jfxlabproj.raster.Raster;
 
 public class TheImaniPulator extends Application {
 
+    // Previews are decoded at up to twice the view's 400x500, enough for
+    // a HiDPI screen; the full image is read only to analyze or save
+    private static final int PREVIEW_WIDTH = 800;
+    private static final int PREVIEW_HEIGHT = 1000;
+    private static final int VIEW_WIDTH = 400;
+    private static final int VIEW_HEIGHT = 500;
+    // History tag of a Game of Life frame; other states are tagged with
+    // their preset, or null for the original
+    private static final String LIFE_VIEW = "Game of Life";
+    // Quick colours: every share within a point of the truth, 19 times in 20
+    private static final double QUICK_CONFIDENCE = 0.95;
+    private static final double QUICK_MARGIN = 0.01;
+    // Runs what withFullImage hands the full image to, off the load thread
+    private static final ExecutorService fullImageWorker = Executors.newCachedThreadPool(
+        runnable -> {
+            Thread thread = new Thread(runnable, "full-image");
+            thread.setDaemon(true);
+            return thread;
+        }
+    );
+
     private ImageView imageView;
+    // The pyramid level that fills the view; filters, Game of Life and
+    // music all start from it
     private Image originalImage;
+    private ImageLoader.Loaded loaded;
+    private Future<ImageLoader.Loaded> pendingLoad;
+    // Reads of the full image in progress, by what they are for
+    private final Map<String, FullImageTask> pendingFull = new HashMap<>();
+    // Preset shown in the view, or null for the original; the full image
+    // gets the same preset when it is saved
+    private String activeFilter;
+    private boolean lifeRunning;
+    // Every state the view has shown since the image was loaded
+    private final EditHistory history = new EditHistory(64L << 20);
     private MusicPlayer musicPlayer;
     private Button activeButton = null;
     private Label statusLabel;
+    private final ImageExporter exporter = new ImageExporter();
+    private Future<ImageExporter.Result> pendingSave;
+    private File pendingSaveFile;
 
     // Store color frequency analysis results
     private LinkedList<String> topColors;
 
-    // Helper class to store color counts for sorting
-    private class ColorCount implements Comparable<ColorCount> {
-
-        String hexColor;
-        int count;
-
-        ColorCount(String hexColor, int count) {
-            this.hexColor = hexColor;
-            this.count = count;
-        }
-
-        @Override
-        public int compareTo(ColorCount other) {
-            return other.count - this.count; // For descending order
-        }
-    }
-
     // Method to analyze color frequencies in image
     private void analyzeColors() {
         if (originalImage == null) return;
 
-        // Use ConcurrentHashMap for thread safety
-        Map<String, Integer> colorFrequency = new ConcurrentHashMap<>();
-
-        // Get PixelReader to read image colors
-        PixelReader pixelReader = originalImage.getPixelReader();
-
-        int height = (int) originalImage.getHeight();
-        int width = (int) originalImage.getWidth();
-        int numThreads = Runtime.getRuntime().availableProcessors();
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
-
-        // Split image into rows for parallel processing
-        int rowsPerThread = height / numThreads;
-
-        for (int i = 0; i < numThreads; i++) {
-            final int startY = i * rowsPerThread;
-            final int endY = (i == numThreads - 1)
-                ? height
-                : (i + 1) * rowsPerThread;
-
-            executor.submit(() -> {
-                for (int y = startY; y < endY; y++) {
-                    for (int x = 0; x < width; x++) {
-                        Color color = pixelReader.getColor(x, y);
-                        String hex = String.format(
-                            "#%02X%02X%02X",
-                            (int) (color.getRed() * 255),
-                            (int) (color.getGreen() * 255),
-                            (int) (color.getBlue() * 255)
-                        );
-                        colorFrequency.merge(hex, 1, Integer::sum);
-                    }
+        // The same file analyzed before is answered from the result cache.
+        // The key hashes the whole file, so it is read on the load thread
+        // the first time, not while opening the image.
+        ImageLoader.Loaded file = loaded;
+        file.startContentHash(hashed -> {
+            String key;
+            try {
+                key = ResultCache.key(hashed.get(), "histogram top=10");
+            } catch (CancellationException | InterruptedException e) {
+                return;
+            } catch (ExecutionException e) {
+                // Analyzed without the cache; reading the image reports the error
+                key = null;
+            }
+            String resultKey = key;
+            ColorHistogram.Result cached = key == null
+                ? null
+                : ResultCache.shared().get(key, ColorHistogram.CODEC);
+            Platform.runLater(() -> {
+                if (loaded != file) return;
+                if (cached != null) {
+                    showColors(cached, "cached; " + ResultCache.shared().describe());
+                    return;
                 }
+
+                // Every pixel of the original, decoded in full if only a
+                // preview is loaded, or streamed tile by tile if it is too
+                // large to hold
+                long readStart = System.nanoTime();
+                withFullImage("analyze", "Reading image for analysis", false, source ->
+                    analyzeColors(source, resultKey, System.nanoTime() - readStart)
+                );
             });
-        }
+        });
+    }
 
-        executor.shutdown();
+    private void analyzeColors(PixelSource source, String key, long readNanos) {
+        ColorHistogram.Result histogram;
         try {
-            executor.awaitTermination(30, TimeUnit.SECONDS);
+            histogram = ColorHistogram.compute(source, 10);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             return;
+        } catch (IOException | IllegalArgumentException e) {
+            Platform.runLater(() -> {
+                updateStatus("Analysis failed");
+                Alert alert = new Alert(AlertType.ERROR);
+                alert.setTitle("Error");
+                alert.setHeaderText("Could not analyze image");
+                alert.setContentText("Error: " + e.getMessage());
+                alert.showAndWait();
+            });
+            return;
         }
+        if (key != null) ResultCache.shared().put(key, histogram, ColorHistogram.CODEC);
 
-        // Priority queue to find top 10 colors
-        PriorityQueue<ColorCount> pq = new PriorityQueue<>();
-        for (Map.Entry<String, Integer> entry : colorFrequency.entrySet()) {
-            pq.offer(new ColorCount(entry.getKey(), entry.getValue()));
-        }
+        String timings = String.format(
+            "read %.1f ms, %s",
+            readNanos / 1e6,
+            histogram.describeTimings()
+        );
+        Platform.runLater(() -> showColors(histogram, timings));
+    }
 
-        // Get top 10 colors
-        topColors = new LinkedList<>();
-        for (int i = 0; i < 10 && !pq.isEmpty(); i++) {
-            ColorCount cc = pq.poll();
-            topColors.add(
-                String.format("%s: %d pixels", cc.hexColor, cc.count)
-            );
-        }
+    // Top colours from a fixed-size streaming sketch instead of an exact
+    // count: memory stays the same however large the image, and the
+    // leading colours show in the status line while the scan runs
+    private void approximateColors() {
+        if (originalImage == null) return;
+        withFullImage("approximate", "Reading image for analysis", false, source -> {
+            long start = System.nanoTime();
+            ColorSketch.Estimate estimate;
+            try {
+                estimate = ColorSketch.scan(
+                    source,
+                    10,
+                    ColorSketch.DEFAULT_CAPACITY,
+                    partial ->
+                        Platform.runLater(() ->
+                            updateStatus(
+                                String.format(
+                                    "Sketching colors %.0f%%: %s",
+                                    partial.getProgress() * 100,
+                                    partial.size() == 0 ? "-" : partial.getHex(0)
+                                )
+                            )
+                        )
+                );
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                Platform.runLater(() -> {
+                    updateStatus("Analysis failed");
+                    Alert alert = new Alert(AlertType.ERROR);
+                    alert.setTitle("Error");
+                    alert.setHeaderText("Could not analyze image");
+                    alert.setContentText("Error: " + e.getMessage());
+                    alert.showAndWait();
+                });
+                return;
+            }
+            long nanos = System.nanoTime() - start;
+            ColorSketch.Estimate result = estimate;
+            Platform.runLater(() -> {
+                updateStatus("Approximate Colors");
+                Alert alert = new Alert(AlertType.INFORMATION);
+                alert.setTitle("Approximate Color Analysis");
+                alert.setHeaderText("Top 10 Colors (approximate):");
+                alert.setContentText(
+                    String.join("\n", result.describeTopColors()) +
+                    String.format(
+                        "\n\n%s (%.1f ms)",
+                        result.describeBounds(),
+                        nanos / 1e6
+                    )
+                );
+                alert.showAndWait();
+            });
+        });
+    }
+
+    // Dominant colours in milliseconds from a stratified sample of the
+    // preview, which holds real pixels of the original, sized for
+    // QUICK_CONFIDENCE and QUICK_MARGIN. The dialog opens at once and is
+    // refined in the background: larger samples of the preview, then an
+    // exact count over the full image. Closing it stops the refinement.
+    private void quickColors() {
+        if (originalImage == null) return;
+        Raster sampled = loaded == null
+            ? Raster.read(originalImage)
+            : loaded.getPyramid().getLevel(0);
+        long population = loaded == null
+            ? (long) sampled.getWidth() * sampled.getHeight()
+            : (long) loaded.getWidth() * loaded.getHeight();
+        int samples = ColorSample.sampleSize(QUICK_CONFIDENCE, QUICK_MARGIN);
+
+        long start = System.nanoTime();
+        ColorSample.Estimate first = ColorSample.estimate(
+            sampled,
+            population,
+            samples,
+            QUICK_CONFIDENCE,
+            ColorSample.DEFAULT_BITS,
+            start
+        );
+        Alert alert = new Alert(AlertType.INFORMATION);
+        alert.setTitle("Quick Color Analysis");
+        showQuickColors(alert, first, System.nanoTime() - start);
+        alert.show();
+        if (first.isExact()) return;
+
+        Future<ColorSample.Estimate> refinement = ColorSample.refine(
+            sampled,
+            population,
+            samples * 4,
+            QUICK_CONFIDENCE,
+            ColorSample.DEFAULT_BITS,
+            estimate -> {
+                long nanos = System.nanoTime() - start;
+                Platform.runLater(() -> showQuickColors(alert, estimate, nanos));
+            },
+            done -> {
+                if (done.isCancelled()) return;
+                try {
+                    if (done.get().isExact()) return;
+                } catch (InterruptedException | ExecutionException e) {
+                    return;
+                }
+                Platform.runLater(() -> {
+                    if (alert.isShowing()) countQuickColors(alert, start);
+                });
+            }
+        );
+        alert.setOnHidden(e -> refinement.cancel(true));
+    }
+
+    // The last step of quickColors: every pixel of the original. It is
+    // read and counted on futures of its own rather than withFullImage's,
+    // so a save or analysis already reading the full image is left alone.
+    // Closing the dialog cancels both. The image is held until the count
+    // ends, so opening another leaves its tiles open until then.
+    private void countQuickColors(Alert alert, long start) {
+        if (loaded == null) return;
+        ImageLoader.Loaded file = loaded.retain();
+        AtomicBoolean closed = new AtomicBoolean();
+        AtomicReference<Future<ColorSample.Estimate>> counting = new AtomicReference<>();
+        Future<PixelSource> reading = file.startFullSource(
+            progress("Counting colors"),
+            full -> {
+                PixelSource source;
+                try {
+                    source = full.get();
+                } catch (CancellationException | InterruptedException e) {
+                    release(file);
+                    return;
+                } catch (ExecutionException e) {
+                    release(file);
+                    quickColorsFailed(alert, e.getCause());
+                    return;
+                }
+                counting.set(
+                    ColorSample.startCount(
+                        source,
+                        QUICK_CONFIDENCE,
+                        ColorSample.DEFAULT_BITS,
+                        done -> {
+                            release(file);
+                            ColorSample.Estimate exact;
+                            try {
+                                exact = done.get();
+                            } catch (CancellationException | InterruptedException e) {
+                                return;
+                            } catch (ExecutionException e) {
+                                quickColorsFailed(alert, e.getCause());
+                                return;
+                            }
+                            long nanos = System.nanoTime() - start;
+                            Platform.runLater(() -> {
+                                if (alert.isShowing()) showQuickColors(alert, exact, nanos);
+                                updateStatus("Quick Colors");
+                            });
+                        }
+                    )
+                );
+                // Closed while the image was being read
+                if (closed.get()) counting.get().cancel(true);
+            }
+        );
+        alert.setOnHidden(e -> {
+            closed.set(true);
+            reading.cancel(true);
+            Future<ColorSample.Estimate> count = counting.get();
+            if (count != null) count.cancel(true);
+            updateStatus("Quick Colors");
+        });
+    }
 
-        // Show results in alert on JavaFX thread
+    private void quickColorsFailed(Alert alert, Throwable cause) {
         Platform.runLater(() -> {
-            Alert alert = new Alert(AlertType.INFORMATION);
-            alert.setTitle("Color Analysis");
-            alert.setHeaderText("Top 10 Most Common Colors in this image:");
-            alert.setContentText(String.join("\n", topColors));
-            alert.showAndWait();
+            updateStatus("Could not count every pixel");
+            if (alert.isShowing()) {
+                alert.setHeaderText("Could not count every pixel: " + cause.getMessage());
+            }
         });
     }
 
+    // Puts an estimate in the quick colours dialog; runs on the JavaFX thread
+    private void showQuickColors(Alert alert, ColorSample.Estimate estimate, long nanos) {
+        alert.setHeaderText(
+            estimate.isExact()
+                ? "Top 10 Colors (exact):"
+                : "Top 10 Colors (estimated, refining):"
+        );
+        alert.setContentText(
+            String.join("\n", estimate.describeTopColors()) +
+            String.format("\n\n%s (%.1f ms)", estimate.describeSample(), nanos / 1e6)
+        );
+    }
+
+    // Shows the results in an alert; runs on the JavaFX thread
+    private void showColors(ColorHistogram.Result histogram, String timings) {
+        // Get top 10 colors
+        topColors = new LinkedList<>(histogram.describeTopColors());
+
+        Alert alert = new Alert(AlertType.INFORMATION);
+        alert.setTitle("Color Analysis");
+        alert.setHeaderText("Top 10 Most Common Colors in this image:");
+        alert.setContentText(
+            String.join("\n", topColors) +
+            String.format(
+                "\n\n%d distinct colors (%s)",
+                histogram.getDistinctColors(),
+                timings
+            )
+        );
+        alert.showAndWait();
+    }
+
     @Override
     public void start(Stage primaryStage) {
         primaryStage.setTitle("Image Processor");
 
+        // Filter and analysis results outlive the session here
+        try {
+            ResultCache.shared().setDirectory(
+                new File(System.getProperty("user.home"), ".jfxlabproj/cache")
+            );
+        } catch (IOException e) {
+            // Results are then cached in memory only
+        }
+
         Scene welcomeScene = WelcomeScreen.createScene(primaryStage);
         primaryStage.setScene(welcomeScene);
 
@@ -166,8 +431,8 @@ public class TheImaniPulator extends Application {
         );
 
         imageView = new ImageView();
-        imageView.setFitWidth(400);
-        imageView.setFitHeight(500);
+        imageView.setFitWidth(VIEW_WIDTH);
+        imageView.setFitHeight(VIEW_HEIGHT);
         imageView.setPreserveRatio(true);
         imageView.setStyle(
             "-fx-effect: dropshadow(gaussian, rgba(0,0,0,0.1), 10, 0, 0, 5);"
@@ -181,12 +446,19 @@ public class TheImaniPulator extends Application {
 
         Button loadButton = new Button("Choose Image");
         Button analyzeButton = new Button("Analyze Colors"); // New button for color analysis
+        Button approximateButton = new Button("Approximate Colors");
+        Button quickButton = new Button("Quick Colors");
         styleButton(loadButton);
         styleButton(analyzeButton);
+        styleButton(approximateButton);
+        styleButton(quickButton);
+
+        HBox analyzeButtons = new HBox(10, analyzeButton, approximateButton, quickButton);
+        analyzeButtons.setAlignment(Pos.CENTER);
 
         leftSide
             .getChildren()
-            .addAll(imageView, loadButton, analyzeButton, statusLabel);
+            .addAll(imageView, loadButton, analyzeButtons, statusLabel);
 
         VBox rightSide = new VBox(15);
         rightSide.setAlignment(Pos.TOP_CENTER);
@@ -218,13 +490,45 @@ public class TheImaniPulator extends Application {
         Button grayscaleButton = new Button("Grayscale");
         Button sepiaButton = new Button("Sepia");
         Button resetButton = new Button("Reset");
+        Button undoButton = new Button("Undo");
+        Button redoButton = new Button("Redo");
         Button saveAsJpegButton = new Button("Save as JPEG");
         Button saveAsPngButton = new Button("Save as PNG");
         Button saveAsHeifButton = new Button("Save as HEIF");
+        Button saveAllButton = new Button("Save All Formats");
         Button gameOfLifeButton = new Button("Game of Life");
+        Button jumpButton = new Button("Jump 2^k");
         Button playMusicButton = new Button("Play as Music");
         Button pauseMusicButton = new Button("Pause Music");
         Button vignetteButton = new Button("Vignette");
+        // B/S/C rule for the next Game of Life, e.g. B36/S23 for HighLife
+        TextField ruleField = new TextField(GameOfLifeProcessor.getRule().toString());
+        ruleField.setPromptText("Rule, e.g. B3/S23");
+        // Black and white, or colour kept to 1-8 bits per channel, each
+        // bitplane its own board; the index is the bit count
+        ChoiceBox<String> lifeColorChoice = new ChoiceBox<>();
+        lifeColorChoice.getItems().add("Black & white");
+        for (int bits = 1; bits <= 8; bits++) {
+            lifeColorChoice.getItems().add("Colour, " + bits + (bits == 1 ? " bit" : " bits"));
+        }
+        lifeColorChoice.getSelectionModel().select(GameOfLifeProcessor.getColorBitsPerChannel());
+        // Caps the simulation apart from the display's refresh; 0 lifts the cap
+        Spinner<Integer> lifeRateSpinner = new Spinner<>(
+            0,
+            1000,
+            (int) GameOfLifeProcessor.getMaxGenerationsPerSecond()
+        );
+        lifeRateSpinner.setEditable(true);
+        lifeRateSpinner.setTooltip(new Tooltip("Most generations per second; 0 for no cap"));
+        lifeRateSpinner
+            .valueProperty()
+            .addListener((observable, old, rate) ->
+                GameOfLifeProcessor.setMaxGenerationsPerSecond(rate)
+            );
+        // k for Jump: HashLife shows the board 2^k generations on
+        Spinner<Integer> jumpSpinner = new Spinner<>(0, 61, 10);
+        jumpSpinner.setEditable(true);
+        jumpSpinner.setTooltip(new Tooltip("Jump 2^k generations ahead"));
 
         // Style reset button differently
         resetButton.setStyle(
@@ -239,13 +543,17 @@ public class TheImaniPulator extends Application {
 
         int buttonWidth = 150;
         for (Button btn : new Button[] {
+            undoButton,
+            redoButton,
             blurButton,
             grayscaleButton,
             sepiaButton,
             saveAsJpegButton,
             saveAsPngButton,
             saveAsHeifButton,
+            saveAllButton,
             gameOfLifeButton,
+            jumpButton,
             playMusicButton,
             pauseMusicButton,
             vignetteButton,
@@ -254,6 +562,10 @@ public class TheImaniPulator extends Application {
             btn.setPrefWidth(buttonWidth);
             btn.setWrapText(true);
         }
+        ruleField.setPrefWidth(buttonWidth);
+        lifeColorChoice.setPrefWidth(buttonWidth);
+        lifeRateSpinner.setPrefWidth(buttonWidth);
+        jumpSpinner.setPrefWidth(buttonWidth);
 
         GridPane filterGrid = new GridPane();
         filterGrid.setHgap(10);
@@ -267,6 +579,8 @@ public class TheImaniPulator extends Application {
         resetGrid.setHgap(10);
         resetGrid.setVgap(10);
         resetGrid.add(resetButton, 0, 0);
+        resetGrid.add(undoButton, 0, 1);
+        resetGrid.add(redoButton, 1, 1);
 
         GridPane saveGrid = new GridPane();
         saveGrid.setHgap(10);
@@ -274,10 +588,17 @@ public class TheImaniPulator extends Application {
         saveGrid.add(saveAsJpegButton, 0, 0);
         saveGrid.add(saveAsPngButton, 1, 0);
         saveGrid.add(saveAsHeifButton, 0, 1);
+        saveGrid.add(saveAllButton, 1, 1);
 
         GridPane specialGrid = new GridPane();
         specialGrid.setHgap(10);
+        specialGrid.setVgap(10);
         specialGrid.add(gameOfLifeButton, 0, 0);
+        specialGrid.add(ruleField, 1, 0);
+        specialGrid.add(lifeColorChoice, 1, 1);
+        specialGrid.add(lifeRateSpinner, 0, 1);
+        specialGrid.add(jumpButton, 0, 2);
+        specialGrid.add(jumpSpinner, 1, 2);
 
         GridPane musicGrid = new GridPane();
         musicGrid.setHgap(10);
@@ -291,48 +612,79 @@ public class TheImaniPulator extends Application {
             }
         });
 
+        approximateButton.setOnAction(e -> {
+            if (originalImage != null) {
+                approximateColors();
+                updateStatus("Approximate Colors");
+            }
+        });
+
+        quickButton.setOnAction(e -> {
+            if (originalImage != null) {
+                quickColors();
+                updateStatus("Quick Colors");
+            }
+        });
+
         blurButton.setOnAction(e -> {
             if (originalImage != null) {
+                recordLife();
                 setActiveButton(blurButton);
-                ImageProcessor.applyBlur(imageView);
+                showFilter("blur");
+                ImageProcessor.applyBlur(imageView, originalImage);
                 updateStatus("Blur");
             }
         });
 
         grayscaleButton.setOnAction(e -> {
             if (originalImage != null) {
+                recordLife();
                 setActiveButton(grayscaleButton);
-                ImageProcessor.applyGrayscale(imageView);
+                showFilter("grayscale");
+                ImageProcessor.applyGrayscale(imageView, originalImage);
                 updateStatus("Grayscale");
             }
         });
 
         sepiaButton.setOnAction(e -> {
             if (originalImage != null) {
+                recordLife();
                 setActiveButton(sepiaButton);
-                ImageProcessor.applySepia(imageView);
+                showFilter("sepia");
+                ImageProcessor.applySepia(imageView, originalImage);
                 updateStatus("Sepia");
             }
         });
 
         vignetteButton.setOnAction(e -> {
             if (originalImage != null) {
+                recordLife();
                 setActiveButton(vignetteButton);
-                ImageProcessor.applyVignette(imageView);
+                showFilter("vignette");
+                ImageProcessor.applyVignette(imageView, originalImage);
                 updateStatus("Vignette");
             }
         });
 
         resetButton.setOnAction(e -> {
             if (originalImage != null) {
+                recordLife();
                 GameOfLifeProcessor.stopGameOfLife();
+                ImageProcessor.cancel();
+                cancelFullImage();
+                showFilter(null);
                 setActiveButton(null);
                 imageView.setImage(originalImage);
                 imageView.setEffect(null);
+                history.record(Raster.read(originalImage), null);
                 updateStatus("Image Processor");
             }
         });
 
+        undoButton.setOnAction(e -> undo());
+        redoButton.setOnAction(e -> redo());
+        ImageProcessor.setOnShown(result -> history.record(result, activeFilter));
+
         saveAsJpegButton.setOnAction(e -> {
             saveImage(primaryStage, "jpg"); // Changed from jpeg to jpg
             updateStatus("Saving as JPEG");
@@ -348,14 +700,68 @@ public class TheImaniPulator extends Application {
             updateStatus("Saving as HEIF");
         });
 
+        saveAllButton.setOnAction(e -> saveAllFormats(primaryStage));
+
         gameOfLifeButton.setOnAction(e -> {
-            if (originalImage != null) {
+            if (originalImage != null && applyLifeRule(ruleField.getText())) {
+                GameOfLifeProcessor.setColorBitsPerChannel(
+                    lifeColorChoice.getSelectionModel().getSelectedIndex()
+                );
+                recordLife();
                 setActiveButton(gameOfLifeButton);
+                lifeRunning = true;
                 GameOfLifeProcessor.startGameOfLife(imageView);
                 updateStatus("Game of Life");
             }
         });
 
+        // The measured rate in the status line while the game runs, unless
+        // something else has taken the status line since
+        Timeline lifeRate = new Timeline(
+            new KeyFrame(Duration.millis(500), e -> {
+                if (
+                    GameOfLifeProcessor.isRunning() &&
+                    statusLabel.getText().startsWith(LIFE_VIEW)
+                ) {
+                    updateStatus(
+                        String.format(
+                            "%s - %.1f gen/s",
+                            LIFE_VIEW,
+                            GameOfLifeProcessor.getGenerationsPerSecond()
+                        )
+                    );
+                }
+            })
+        );
+        lifeRate.setCycleCount(Animation.INDEFINITE);
+        lifeRate.play();
+
+        // Far ahead without the generations in between; HashLife takes
+        // two-state radius-1 rules only, in black and white
+        jumpButton.setOnAction(e -> {
+            if (originalImage != null && applyLifeRule(ruleField.getText())) {
+                int log2Generations = jumpSpinner.getValue();
+                recordLife();
+                try {
+                    GameOfLifeProcessor.jumpGameOfLife(imageView, log2Generations);
+                } catch (IllegalArgumentException ex) {
+                    updateStatus("Cannot jump");
+                    Alert alert = new Alert(AlertType.ERROR);
+                    alert.setTitle("Error");
+                    alert.setHeaderText("Could not jump ahead");
+                    alert.setContentText("Error: " + ex.getMessage());
+                    alert.showAndWait();
+                    return;
+                }
+                setActiveButton(jumpButton);
+                lifeRunning = true;
+                updateStatus(String.format("%s + 2^%d generations", LIFE_VIEW, log2Generations));
+            }
+        });
+
+        // Enter in the rule field starts the game under the new rule
+        ruleField.setOnAction(e -> gameOfLifeButton.fire());
+
         playMusicButton.setOnAction(e -> {
             if (originalImage != null) {
                 setActiveButton(playMusicButton);
@@ -391,11 +797,7 @@ public class TheImaniPulator extends Application {
                 );
             File file = fileChooser.showOpenDialog(primaryStage);
             if (file != null) {
-                Image image = new Image(file.toURI().toString());
-                imageView.setImage(image);
-                originalImage = image;
-                setActiveButton(null);
-                updateStatus("Image Processor");
+                loadImage(file);
             }
         });
 
@@ -419,10 +821,308 @@ public class TheImaniPulator extends Application {
 
         Scene scene = new Scene(root, 1000, 700);
         scene.setFill(Color.web("#F5F5F7"));
+        scene
+            .getAccelerators()
+            .put(new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN), this::undo);
+        scene
+            .getAccelerators()
+            .put(
+                new KeyCodeCombination(
+                    KeyCode.Z,
+                    KeyCombination.SHORTCUT_DOWN,
+                    KeyCombination.SHIFT_DOWN
+                ),
+                this::redo
+            );
 
         return scene;
     }
 
+    // Decodes a preview in the background; the current image stays up
+    // until it is ready, and loading another file cancels this one
+    private void loadImage(File file) {
+        if (pendingLoad != null) pendingLoad.cancel(true);
+        String label = "Loading " + file.getName();
+        updateStatus(label);
+        pendingLoad = ImageLoader.start(
+            file,
+            PREVIEW_WIDTH,
+            PREVIEW_HEIGHT,
+            progress(label),
+            load -> Platform.runLater(() -> reportLoad(load))
+        );
+    }
+
+    // Runs on the FX thread once the load has finished, failed or been cancelled
+    private void reportLoad(Future<ImageLoader.Loaded> load) {
+        if (load != pendingLoad) return;
+        pendingLoad = null;
+        try {
+            ImageLoader.Loaded result = load.get();
+            GameOfLifeProcessor.stopGameOfLife();
+            ImageProcessor.cancel();
+            cancelFullImage();
+            // A save or count still streaming from the old image holds
+            // its tiles until it ends, but its pyramid is no longer shown
+            if (loaded != null) {
+                PyramidCache.shared().evict(loaded);
+                release(loaded);
+            }
+            loaded = result;
+            originalImage = viewImage(result);
+            imageView.setImage(originalImage);
+            imageView.setEffect(null);
+            history.reset(Raster.read(originalImage), null);
+            showFilter(null);
+            setActiveButton(null);
+            updateStatus(result.isSubsampled() ? result.toString() : "Image Processor");
+        } catch (CancellationException | InterruptedException e) {
+            updateStatus("Load cancelled");
+        } catch (ExecutionException e) {
+            updateStatus("Load failed");
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setHeaderText("Could not open image");
+            alert.setContentText("Error: " + e.getCause().getMessage());
+            alert.showAndWait();
+        }
+    }
+
+    // The smallest pyramid level that fills the view at the window's
+    // pixel density
+    private Image viewImage(ImageLoader.Loaded result) {
+        Window window = imageView.getScene() == null
+            ? null
+            : imageView.getScene().getWindow();
+        double scale = window == null ? 1 : window.getOutputScaleX();
+        ImagePyramid pyramid = result.getPyramid();
+        return pyramid.getImage(
+            pyramid.levelFor(VIEW_WIDTH * scale, VIEW_HEIGHT * scale)
+        );
+    }
+
+    // Sets the rule the next Game of Life runs under; a rule that does not
+    // parse is reported and the last one stays
+    private boolean applyLifeRule(String spec) {
+        try {
+            GameOfLifeProcessor.setRule(spec);
+            return true;
+        } catch (IllegalArgumentException e) {
+            updateStatus("Invalid rule");
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setHeaderText("Could not read the Game of Life rule");
+            alert.setContentText("Error: " + e.getMessage());
+            alert.showAndWait();
+            return false;
+        }
+    }
+
+    // Records the Game of Life frame on screen, so undo can come back to it
+    private void recordLife() {
+        if (lifeRunning && imageView.getImage() != null) {
+            history.record(Raster.read(imageView.getImage()), LIFE_VIEW);
+        }
+    }
+
+    private void undo() {
+        if (originalImage == null) return;
+        recordLife();
+        restore(history.undo(), "Nothing to undo");
+    }
+
+    private void redo() {
+        if (originalImage == null) return;
+        restore(history.redo(), "Nothing to redo");
+    }
+
+    // Shows a state from the history, with the preset or Game of Life
+    // flag it was recorded with so saves reproduce it
+    private void restore(Raster state, String none) {
+        if (state == null) {
+            updateStatus(none);
+            return;
+        }
+        GameOfLifeProcessor.stopGameOfLife();
+        ImageProcessor.cancel();
+        cancelFullImage();
+        Object tag = history.getTag();
+        showFilter(LIFE_VIEW.equals(tag) ? null : (String) tag);
+        lifeRunning = LIFE_VIEW.equals(tag);
+        setActiveButton(null);
+        imageView.setImage(state.toImage());
+        imageView.setEffect(null);
+        updateStatus(
+            (tag == null ? "Original" : tag) +
+            " (" + history.getUndoSteps() + " undo, " + history.getRedoSteps() + " redo)"
+        );
+    }
+
+    private void showFilter(String preset) {
+        activeFilter = preset;
+        lifeRunning = false;
+    }
+
+    // Hands action the pixels to save or analyze. The view only holds a
+    // pyramid level, so the full image is opened first on the load
+    // thread, and given the view's filter if filtered is set; action then
+    // runs on a work thread of its own, so a long scan neither holds up
+    // the next load nor outlives cancelFullImage. Images too large to
+    // hold arrive as tiles read on demand. The Game of Life view is saved
+    // as shown, at once. Each kind of use has its own read: a new one
+    // replaces only a pending read of the same kind, so Analyze leaves a
+    // save alone.
+    private void withFullImage(
+        String kind,
+        String label,
+        boolean filtered,
+        Consumer<PixelSource> action
+    ) {
+        Image shown = filtered ? imageView.getImage() : originalImage;
+        if (loaded == null || (filtered && lifeRunning)) {
+            action.accept(Raster.read(shown));
+            return;
+        }
+        cancelFullImage(kind);
+        String preset = filtered ? activeFilter : null;
+        // The preset was previewed on originalImage; its radii are widened
+        // by as much as the full image is larger
+        double previewWidth = originalImage.getWidth();
+        FullImageTask task = new FullImageTask(loaded.retain());
+        pendingFull.put(kind, task);
+        task.setReading(
+            loaded.startFullSource(
+                progress(label),
+                full -> {
+                    PixelSource source;
+                    try {
+                        source = full.get();
+                    } catch (CancellationException | InterruptedException e) {
+                        task.release();
+                        Platform.runLater(() -> updateStatus("Cancelled"));
+                        return;
+                    } catch (ExecutionException e) {
+                        task.release();
+                        Platform.runLater(() -> {
+                            updateStatus("Could not read the full image");
+                            Alert alert = new Alert(AlertType.ERROR);
+                            alert.setTitle("Error");
+                            alert.setHeaderText("Could not read the full image");
+                            alert.setContentText("Error: " + e.getCause().getMessage());
+                            alert.showAndWait();
+                        });
+                        return;
+                    }
+                    if (preset != null) {
+                        source = FilteredSource.of(
+                            source,
+                            FilterChain.preset(
+                                preset,
+                                source.getWidth(),
+                                source.getHeight(),
+                                source.getWidth() / previewWidth
+                            )
+                        );
+                    }
+                    PixelSource read = source;
+                    task.startWork(() -> action.accept(read));
+                }
+            )
+        );
+    }
+
+    private void cancelFullImage(String kind) {
+        FullImageTask task = pendingFull.remove(kind);
+        if (task != null) task.cancel();
+    }
+
+    // Every read of the full image, when the view no longer shows what
+    // they were started from
+    private void cancelFullImage() {
+        for (FullImageTask task : pendingFull.values()) {
+            task.cancel();
+        }
+        pendingFull.clear();
+    }
+
+    // One use of the full image: the read on the load thread, then the
+    // action on the work thread. cancel() interrupts whichever is running,
+    // and keeps the action from starting if the read has not finished.
+    // The image is held from the read until the action returns; an
+    // action that hands the pixels on holds it again itself.
+    private static class FullImageTask {
+
+        private final ImageLoader.Loaded file;
+        private Future<PixelSource> reading;
+        private Future<?> working;
+        private boolean cancelled;
+        private boolean started;
+        private boolean released;
+
+        FullImageTask(ImageLoader.Loaded file) {
+            this.file = file;
+        }
+
+        synchronized void setReading(Future<PixelSource> reading) {
+            this.reading = reading;
+            if (cancelled) reading.cancel(true);
+        }
+
+        synchronized void startWork(Runnable action) {
+            if (cancelled) {
+                release();
+                return;
+            }
+            working = fullImageWorker.submit(() -> {
+                synchronized (this) {
+                    if (cancelled) return;
+                    started = true;
+                }
+                try {
+                    action.run();
+                } finally {
+                    release();
+                }
+            });
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (reading != null) reading.cancel(true);
+            if (working != null) {
+                working.cancel(true);
+                // An action that never ran has no finally to release in
+                if (!started) release();
+            }
+        }
+
+        // Once, whichever of the read's failure, the action's end or
+        // cancel gets here first
+        synchronized void release() {
+            if (released) return;
+            released = true;
+            TheImaniPulator.release(file);
+        }
+    }
+
+    // Drops a hold on file; the last one closes its tiles and spill
+    private static void release(ImageLoader.Loaded file) {
+        if (file == null) return;
+        try {
+            file.release();
+        } catch (IOException ignored) {
+            // Only the spill file's cleanup is lost
+        }
+    }
+
+    // Shows label and a percentage in the status line, from any thread
+    private ImageLoader.ProgressListener progress(String label) {
+        return fraction ->
+            Platform.runLater(() ->
+                updateStatus(String.format("%s %.0f%%", label, fraction * 100))
+            );
+    }
+
     private void updateStatus(String status) {
         statusLabel.setText(status);
     }
@@ -461,40 +1161,131 @@ public class TheImaniPulator extends Application {
                 );
             File file = fileChooser.showSaveDialog(stage);
             if (file != null) {
-                try {
-                    // Get the original image directly instead of taking a snapshot
-                    Image image = imageView.getImage();
-                    int width = (int) image.getWidth();
-                    int height = (int) image.getHeight();
-
-                    BufferedImage bufferedImage = new BufferedImage(
-                        width,
-                        height,
-                        BufferedImage.TYPE_INT_RGB
-                    );
-
-                    PixelReader reader = image.getPixelReader();
-                    for (int x = 0; x < width; x++) {
-                        for (int y = 0; y < height; y++) {
-                            Color color = reader.getColor(x, y);
-                            int rgb =
-                                ((int) (color.getRed() * 255) << 16) |
-                                ((int) (color.getGreen() * 255) << 8) |
-                                ((int) (color.getBlue() * 255));
-                            bufferedImage.setRGB(x, y, rgb);
-                        }
+                // What the user sees, at full resolution; encoding runs
+                // off the FX thread, holding the image until it ends
+                ImageLoader.Loaded image = loaded;
+                withFullImage(
+                    "save " + file,
+                    "Reading full image",
+                    true,
+                    source -> {
+                        ImageLoader.Loaded held = image == null ? null : image.retain();
+                        Platform.runLater(() -> save(source, held, format, file));
                     }
+                );
+            }
+        }
+    }
 
-                    ImageIO.write(bufferedImage, format, file);
-                } catch (IOException ex) {
-                    Alert alert = new Alert(AlertType.ERROR);
-                    alert.setTitle("Error");
-                    alert.setHeaderText("Could not save image");
-                    alert.setContentText("Error: " + ex.getMessage());
-                    alert.showAndWait();
-                }
+    private void save(PixelSource source, ImageLoader.Loaded held, String format, File file) {
+        String label = "Saving " + file.getName();
+        // A second save to the same file replaces the first
+        if (pendingSave != null && file.equals(pendingSaveFile)) {
+            pendingSave.cancel(true);
+        }
+        pendingSave = exporter.start(
+            source,
+            format,
+            file,
+            fraction ->
+                Platform.runLater(() ->
+                    updateStatus(String.format("%s %.0f%%", label, fraction * 100))
+                ),
+            save -> {
+                release(held);
+                reportSave(save, file);
+            }
+        );
+        pendingSaveFile = file;
+    }
+
+    // Called once the save has finished, failed or been cancelled
+    private void reportSave(Future<ImageExporter.Result> save, File file) {
+        try {
+            ImageExporter.Result result = save.get();
+            Platform.runLater(() ->
+                updateStatus("Saved " + file.getName() + " (" + result + ")")
+            );
+        } catch (CancellationException | InterruptedException e) {
+            Platform.runLater(() -> updateStatus("Save cancelled"));
+        } catch (ExecutionException e) {
+            Platform.runLater(() -> {
+                updateStatus("Save failed");
+                Alert alert = new Alert(AlertType.ERROR);
+                alert.setTitle("Error");
+                alert.setHeaderText("Could not save image");
+                alert.setContentText("Error: " + e.getCause().getMessage());
+                alert.showAndWait();
+            });
+        }
+    }
+
+    // Saves JPEG, PNG and HEIF side by side from one conversion of the image
+    private void saveAllFormats(Stage stage) {
+        if (imageView.getImage() == null) return;
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save Image in All Formats");
+        fileChooser.setInitialFileName("processed_image");
+        File base = fileChooser.showSaveDialog(stage);
+        if (base == null) return;
+
+        ImageLoader.Loaded image = loaded;
+        withFullImage(
+            "save all " + base,
+            "Reading full image",
+            true,
+            source -> {
+                ImageLoader.Loaded held = image == null ? null : image.retain();
+                Platform.runLater(() -> saveAll(source, held, base));
             }
+        );
+    }
+
+    private void saveAll(PixelSource source, ImageLoader.Loaded held, File base) {
+        updateStatus("Saving all formats");
+        exporter.startAll(
+            source,
+            List.of("jpg", "png", "heif"),
+            base,
+            fraction ->
+                Platform.runLater(() ->
+                    updateStatus(String.format("Saving all formats %.0f%%", fraction * 100))
+                ),
+            save -> {
+                release(held);
+                reportSaveAll(save);
+            }
+        );
+    }
+
+    // One line per format; formats that failed are listed with the reason
+    private void reportSaveAll(Future<List<ImageExporter.Outcome>> save) {
+        List<String> lines = new ArrayList<>();
+        int written = 0;
+        int total = 0;
+        try {
+            for (ImageExporter.Outcome outcome : save.get()) {
+                lines.add(outcome.toString());
+                if (outcome.isWritten()) written++;
+                total++;
+            }
+        } catch (CancellationException | InterruptedException e) {
+            Platform.runLater(() -> updateStatus("Save cancelled"));
+            return;
+        } catch (ExecutionException e) {
+            lines.add("Error: " + e.getCause().getMessage());
         }
+        String status = "Saved " + written + " of " + total + " formats";
+        boolean complete = total > 0 && written == total;
+        Platform.runLater(() -> {
+            updateStatus(status);
+            if (complete) return;
+            Alert alert = new Alert(AlertType.WARNING);
+            alert.setTitle("Save All Formats");
+            alert.setHeaderText("Some formats could not be saved");
+            alert.setContentText(String.join("\n", lines));
+            alert.showAndWait();
+        });
     }
 
     private void styleButton(Button button) {
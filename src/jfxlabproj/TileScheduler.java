@@ -0,0 +1,257 @@
+package jfxlabproj.raster;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+// One work-stealing pool for all raster work. An operation is cut into
+// tiles small enough that a source and a target tile stay in cache; idle
+// workers steal halves of other workers' tile ranges, so uneven tiles
+// still finish together. Every run reports its tile count and time.
+public class TileScheduler {
+
+    // 128 x 128 ARGB pixels is 64 KB, so a source tile and its target
+    // tile fit together in a typical 256 KB L2 cache
+    public static final int DEFAULT_TILE_SIZE = 128;
+    // Neighbourhood operations grow their tiles so the halo each tile
+    // reads is at most this fraction of the tile's side
+    private static final int HALO_FRACTION = 4;
+
+    private static final TileScheduler SHARED = new TileScheduler(
+        Runtime.getRuntime().availableProcessors(),
+        DEFAULT_TILE_SIZE
+    );
+
+    private final ForkJoinPool pool;
+    private final int tileSize;
+    private final Map<String, Run> lastRuns = new ConcurrentHashMap<>();
+
+    public TileScheduler(int parallelism, int tileSize) {
+        this.pool = new ForkJoinPool(
+            Math.max(1, parallelism),
+            pool -> {
+                ForkJoinWorkerThread thread =
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("raster-tile-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            },
+            null,
+            false
+        );
+        this.tileSize = Math.max(16, tileSize);
+    }
+
+    public static TileScheduler shared() {
+        return SHARED;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    // Side of the tiles used for an operation that reads halo pixels
+    // beyond each tile on every side
+    public int tileSizeFor(int halo) {
+        return Math.max(tileSize, Math.max(0, halo) * HALO_FRACTION);
+    }
+
+    // The most recent run of each named operation
+    public Run getLastRun(String name) {
+        return lastRuns.get(name);
+    }
+
+    public interface TileTask {
+        // Handles pixels [x0, x1) x [y0, y1)
+        void run(int x0, int y0, int x1, int y1);
+    }
+
+    public interface IndexTask {
+        void run(int index);
+    }
+
+    // Runs task over a width x height image cut into tiles. Tasks that read
+    // up to halo pixels beyond their tile get larger tiles, so the overlap
+    // read twice stays small. Throws CancellationException if the run is
+    // cancelled or the calling thread is interrupted while it waits.
+    public Run forEachTile(
+        String name,
+        int width,
+        int height,
+        int halo,
+        TileTask task
+    ) {
+        int side = tileSizeFor(halo);
+        int columns = (width + side - 1) / side;
+        int rows = (height + side - 1) / side;
+        return execute(name, columns * rows, side, index -> {
+            int x0 = (index % columns) * side;
+            int y0 = (index / columns) * side;
+            task.run(x0, y0, Math.min(width, x0 + side), Math.min(height, y0 + side));
+        });
+    }
+
+    // Runs task once for every index in [0, count), in any order
+    public Run forEach(String name, int count, IndexTask task) {
+        return execute(name, count, 0, task);
+    }
+
+    // Same, reporting cancellation as the InterruptedException that
+    // callers waiting on the old per-call thread pools expect
+    public Run forEachInterruptibly(String name, int count, IndexTask task)
+        throws InterruptedException {
+        try {
+            return forEach(name, count, task);
+        } catch (CancellationException e) {
+            Thread.interrupted();
+            InterruptedException interrupted = new InterruptedException(
+                name + " cancelled"
+            );
+            interrupted.initCause(e);
+            throw interrupted;
+        }
+    }
+
+    private Run execute(String name, int count, int side, IndexTask task) {
+        Run run = new Run(name, count, side);
+        long start = System.nanoTime();
+        if (count > 0) {
+            Range range = new Range(run, task, 0, count);
+            if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool) {
+                // Nested inside another tile: help out rather than block a worker
+                range.invoke();
+            } else {
+                await(run, pool.submit(range));
+            }
+        }
+        run.nanos = System.nanoTime() - start;
+        lastRuns.put(name, run);
+        if (run.cancelled) {
+            throw new CancellationException(name + " cancelled");
+        }
+        return run;
+    }
+
+    private static void await(Run run, ForkJoinTask<Void> task) {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            // Remaining tiles are skipped; wait for the ones already running
+            // so no worker writes into the target after we return
+            run.cancel();
+            task.quietlyJoin();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(run.name + " failed", cause);
+        }
+    }
+
+    // Splits its index range in half until one index is left; the halves
+    // forked last are the first stolen, so thieves take large ranges.
+    // ForkJoinTask is Serializable, but a Range is never serialized.
+    @SuppressWarnings("serial")
+    private static class Range extends RecursiveAction {
+
+        private final Run run;
+        private final IndexTask task;
+        private final int from;
+        private final int to;
+
+        Range(Run run, IndexTask task, int from, int to) {
+            this.run = run;
+            this.task = task;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                    new Range(run, task, from, middle),
+                    new Range(run, task, middle, to)
+                );
+                return;
+            }
+            if (run.cancelled) return;
+            task.run(from);
+            run.completed.increment();
+        }
+    }
+
+    // Timing of one operation; tiles is the number of tiles or indices
+    public static class Run {
+
+        private final String name;
+        private final int tiles;
+        private final int tileSize;
+        private final LongAdder completed = new LongAdder();
+        private volatile boolean cancelled;
+        private volatile long nanos;
+
+        Run(String name, int tiles, int tileSize) {
+            this.name = name;
+            this.tiles = tiles;
+            this.tileSize = tileSize;
+        }
+
+        // Tiles not yet started are skipped
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getTiles() {
+            return tiles;
+        }
+
+        public long getCompletedTiles() {
+            return completed.sum();
+        }
+
+        // 0 for index runs, which have no tile shape
+        public int getTileSize() {
+            return tileSize;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getTilesPerSecond() {
+            return nanos == 0 ? 0 : getCompletedTiles() * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%s %.1f ms, %d tiles (%.0f tiles/s)",
+                name,
+                nanos / 1e6,
+                getCompletedTiles(),
+                getTilesPerSecond()
+            );
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package jfxlabproj.raster;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+// An image file decoded a tile at a time with ImageReader source regions,
+// for images too large to hold as one raster. Decoded tiles are kept in
+// an LRU bounded by bytes; with spilling on, tiles pushed out of it go to
+// a memory-mapped temporary file instead of being decoded again.
+//
+// Formats stored as tiles (tiled TIFF) decode only the region asked for.
+// Strip formats such as PNG and baseline JPEG decode from the top on every
+// read, so a miss decodes as wide and tall a strip as half the cache
+// holds, and callers should walk the image in rows of tiles.
+public class TiledImage implements PixelSource, Closeable {
+
+    public static final int DEFAULT_TILE_SIZE = 512;
+
+    private final File file;
+    private final ImageInputStream stream;
+    private final ImageReader reader;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tilesX;
+    private final int tilesY;
+    private long cacheBytes = 256L << 20;
+    private boolean spill;
+
+    // Access-ordered, so iteration starts at the least recently used tile
+    private final Map<Integer, Raster> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+    private Spill spilled;
+    private int decodes;
+    private int hits;
+    private int misses;
+
+    public TiledImage(File file) throws IOException {
+        this(file, DEFAULT_TILE_SIZE);
+    }
+
+    public TiledImage(File file, int tileSize) throws IOException {
+        if (tileSize < 16) {
+            throw new IllegalArgumentException("Tile size must be at least 16");
+        }
+        this.file = file;
+        this.tileSize = tileSize;
+        stream = ImageLoader.open(file);
+        try {
+            reader = ImageLoader.readerFor(file, stream);
+            // Not forward-only: every region read seeks back to the image
+            reader.setInput(stream, false, true);
+            width = reader.getWidth(0);
+            height = reader.getHeight(0);
+        } catch (IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+        tilesX = (width + tileSize - 1) / tileSize;
+        tilesY = (height + tileSize - 1) / tileSize;
+    }
+
+    // Decoded tiles kept in memory, in bytes
+    public synchronized void setCacheBytes(long cacheBytes) {
+        if (cacheBytes < 4L * tileSize * tileSize) {
+            throw new IllegalArgumentException("Cache must hold at least one tile");
+        }
+        this.cacheBytes = cacheBytes;
+        trim();
+    }
+
+    // Whether tiles evicted from memory go to a temporary mapped file
+    public synchronized void setSpill(boolean spill) {
+        this.spill = spill;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    // Region reads issued to the image reader so far
+    public synchronized int getDecodes() {
+        return decodes;
+    }
+
+    public synchronized String describeCache() {
+        return String.format(
+            "%d tiles cached (%.1f MB), %d spilled, %d hits, %d misses, %d decodes",
+            cache.size(),
+            cachedBytes / 1e6,
+            spilled == null ? 0 : spilled.count(),
+            hits,
+            misses,
+            decodes
+        );
+    }
+
+    // Tile (tx, ty); edge tiles are cut short by the image edge
+    public synchronized Raster tile(int tx, int ty) throws IOException, InterruptedException {
+        if (tx < 0 || ty < 0 || tx >= tilesX || ty >= tilesY) {
+            throw new IndexOutOfBoundsException("No tile " + tx + "," + ty);
+        }
+        int index = ty * tilesX + tx;
+        Raster tile = cache.get(index);
+        if (tile != null) {
+            hits++;
+            return tile;
+        }
+        misses++;
+        if (spilled != null && spilled.contains(index)) {
+            tile = spilled.read(index, tileWidth(tx), tileHeight(ty));
+            put(index, tile);
+            return tile;
+        }
+        decodeStrip(tx, ty);
+        return cache.get(index);
+    }
+
+    // Copies the tiles under the rectangle into one raster, or returns
+    // the tile itself when the rectangle is exactly one tile
+    @Override
+    public synchronized Raster region(int x, int y, int width, int height)
+        throws IOException, InterruptedException {
+        if (
+            x < 0 ||
+            y < 0 ||
+            width < 0 ||
+            height < 0 ||
+            x + width > this.width ||
+            y + height > this.height
+        ) {
+            throw new IndexOutOfBoundsException(
+                "Region " + width + "x" + height + " at " + x + "," + y +
+                " outside " + this.width + "x" + this.height
+            );
+        }
+        if (
+            width > 0 &&
+            height > 0 &&
+            x % tileSize == 0 &&
+            y % tileSize == 0 &&
+            width == tileWidth(x / tileSize) &&
+            height == tileHeight(y / tileSize)
+        ) {
+            return tile(x / tileSize, y / tileSize);
+        }
+        Raster target = new Raster(width, height);
+        int[] out = target.array();
+        for (int ty = y / tileSize; ty * tileSize < y + height; ty++) {
+            for (int tx = x / tileSize; tx * tileSize < x + width; tx++) {
+                Raster tile = tile(tx, ty);
+                int left = Math.max(x, tx * tileSize);
+                int right = Math.min(x + width, tx * tileSize + tile.getWidth());
+                int top = Math.max(y, ty * tileSize);
+                int bottom = Math.min(y + height, ty * tileSize + tile.getHeight());
+                for (int row = top; row < bottom; row++) {
+                    System.arraycopy(
+                        tile.array(),
+                        tile.rowOffset(row - ty * tileSize) + left - tx * tileSize,
+                        out,
+                        (row - y) * width + left - x,
+                        right - left
+                    );
+                }
+            }
+        }
+        return target;
+    }
+
+    private int tileWidth(int tx) {
+        return Math.min(tileSize, width - tx * tileSize);
+    }
+
+    private int tileHeight(int ty) {
+        return Math.min(tileSize, height - ty * tileSize);
+    }
+
+    // Decodes a strip starting at the missing tile: whole rows of tiles
+    // when a row fits in half the cache, otherwise a run along its row
+    private void decodeStrip(int tx, int ty) throws IOException, InterruptedException {
+        long tileBytes = 4L * tileSize * tileSize;
+        long budget = Math.max(tileBytes, cacheBytes / 2);
+        long rowBytes = tileBytes * tilesX;
+        int x0;
+        int columns;
+        int rows;
+        if (rowBytes <= budget) {
+            x0 = 0;
+            columns = tilesX;
+            rows = (int) Math.min(tilesY - ty, budget / rowBytes);
+        } else {
+            x0 = tx;
+            columns = (int) Math.min(tilesX - tx, budget / tileBytes);
+            rows = 1;
+        }
+        Rectangle area = new Rectangle(
+            x0 * tileSize,
+            ty * tileSize,
+            Math.min(width, (x0 + columns) * tileSize) - x0 * tileSize,
+            Math.min(height, (ty + rows) * tileSize) - ty * tileSize
+        );
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(area);
+        decodes++;
+        BufferedImage image = ImageLoader.read(reader, param, null);
+        Raster strip = ImageLoader.toRaster(image);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int index = (ty + row) * tilesX + x0 + column;
+                if (cache.containsKey(index)) continue;
+                put(
+                    index,
+                    strip
+                        .region(
+                            column * tileSize,
+                            row * tileSize,
+                            tileWidth(x0 + column),
+                            tileHeight(ty + row)
+                        )
+                        .copy()
+                );
+            }
+        }
+    }
+
+    private void put(int index, Raster tile) {
+        cache.put(index, tile);
+        cachedBytes += 4L * tile.getWidth() * tile.getHeight();
+        trim();
+    }
+
+    // Evicts least recently used tiles, spilling them if asked to, until
+    // the cache is within budget
+    private void trim() {
+        Iterator<Map.Entry<Integer, Raster>> entries = cache.entrySet().iterator();
+        while (cachedBytes > cacheBytes && entries.hasNext()) {
+            Map.Entry<Integer, Raster> entry = entries.next();
+            Raster tile = entry.getValue();
+            if (spill) {
+                try {
+                    if (spilled == null) spilled = new Spill(tileSize, tilesX * tilesY);
+                    spilled.write(entry.getKey(), tile);
+                } catch (IOException e) {
+                    // The tile can still be decoded again
+                    spill = false;
+                }
+            }
+            cachedBytes -= 4L * tile.getWidth() * tile.getHeight();
+            entries.remove();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        cache.clear();
+        cachedBytes = 0;
+        reader.dispose();
+        try {
+            stream.close();
+        } finally {
+            if (spilled != null) spilled.close();
+            spilled = null;
+        }
+    }
+
+    // Tiles in a sparse temporary file, one fixed slot per tile index,
+    // mapped a chunk at a time since one mapping stops at 2 GB
+    private static class Spill {
+
+        private static final long CHUNK_BYTES = 1L << 30;
+
+        private final Path path;
+        private final FileChannel channel;
+        private final long slotBytes;
+        private final long slotsPerChunk;
+        private final Map<Long, MappedByteBuffer> chunks = new HashMap<>();
+        private final BitSet stored = new BitSet();
+
+        Spill(int tileSize, int tiles) throws IOException {
+            slotBytes = 4L * tileSize * tileSize;
+            slotsPerChunk = Math.max(1, Math.min(tiles, CHUNK_BYTES / slotBytes));
+            path = Files.createTempFile("jfxlabproj-tiles", ".bin");
+            path.toFile().deleteOnExit();
+            channel = FileChannel.open(
+                path,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.SPARSE
+            );
+        }
+
+        boolean contains(int index) {
+            return stored.get(index);
+        }
+
+        int count() {
+            return stored.cardinality();
+        }
+
+        void write(int index, Raster tile) throws IOException {
+            IntBuffer slot = slot(index);
+            for (int y = 0; y < tile.getHeight(); y++) {
+                slot.put(tile.array(), tile.rowOffset(y), tile.getWidth());
+            }
+            stored.set(index);
+        }
+
+        Raster read(int index, int width, int height) throws IOException {
+            Raster tile = new Raster(width, height);
+            slot(index).get(tile.array());
+            return tile;
+        }
+
+        private IntBuffer slot(int index) throws IOException {
+            long chunk = index / slotsPerChunk;
+            MappedByteBuffer mapped = chunks.get(chunk);
+            if (mapped == null) {
+                mapped = channel.map(
+                    FileChannel.MapMode.READ_WRITE,
+                    chunk * slotsPerChunk * slotBytes,
+                    slotsPerChunk * slotBytes
+                );
+                chunks.put(chunk, mapped);
+            }
+            int offset = (int) ((index % slotsPerChunk) * slotBytes);
+            return mapped
+                .slice(offset, (int) slotBytes)
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        }
+
+        void close() throws IOException {
+            chunks.clear();
+            stored.clear();
+            try {
+                channel.close();
+            } finally {
+                // Mappings stay until collected; where that blocks deletion
+                // the file goes at exit instead
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // deleteOnExit covers it
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package jfxlabproj.filter;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD versions of PixelKernels: packed pixels are split into one vector
+// per channel, transformed lane by lane and packed back. Lanes left over
+// at the end of a row go through the scalar loop.
+class VectorKernels extends PixelKernels {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    String getName() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+
+    @Override
+    void matrix(int[] fixed, int[] argb, int from, int to) {
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector pixel = IntVector.fromArray(SPECIES, argb, i);
+            IntVector a = pixel.lanewise(VectorOperators.LSHR, 24);
+            IntVector r = pixel.lanewise(VectorOperators.ASHR, 16).and(0xFF);
+            IntVector g = pixel.lanewise(VectorOperators.ASHR, 8).and(0xFF);
+            IntVector b = pixel.and(0xFF);
+            channel(fixed, 15, r, g, b, a)
+                .lanewise(VectorOperators.LSHL, 24)
+                .or(channel(fixed, 0, r, g, b, a).lanewise(VectorOperators.LSHL, 16))
+                .or(channel(fixed, 5, r, g, b, a).lanewise(VectorOperators.LSHL, 8))
+                .or(channel(fixed, 10, r, g, b, a))
+                .intoArray(argb, i);
+        }
+        super.matrix(fixed, argb, i, to);
+    }
+
+    // Same sum and clamp as PixelKernels.channel, wrapping the same way
+    private static IntVector channel(
+        int[] fixed,
+        int base,
+        IntVector r,
+        IntVector g,
+        IntVector b,
+        IntVector a
+    ) {
+        return r
+            .mul(fixed[base])
+            .add(g.mul(fixed[base + 1]))
+            .add(b.mul(fixed[base + 2]))
+            .add(a.mul(fixed[base + 3]))
+            .add(fixed[base + 4])
+            .max(0)
+            .min(255 << 16)
+            .lanewise(VectorOperators.ASHR, 16);
+    }
+
+    // Table lookups become gathers, indexed through a small scratch array
+    @Override
+    void lut(
+        int[] red,
+        int[] green,
+        int[] blue,
+        int[] alpha,
+        int[] argb,
+        int from,
+        int to
+    ) {
+        int[] index = new int[SPECIES.length()];
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector pixel = IntVector.fromArray(SPECIES, argb, i);
+            pixel.lanewise(VectorOperators.LSHR, 24).intoArray(index, 0);
+            IntVector a = IntVector.fromArray(SPECIES, alpha, 0, index, 0);
+            pixel.lanewise(VectorOperators.ASHR, 16).and(0xFF).intoArray(index, 0);
+            IntVector r = IntVector.fromArray(SPECIES, red, 0, index, 0);
+            pixel.lanewise(VectorOperators.ASHR, 8).and(0xFF).intoArray(index, 0);
+            IntVector g = IntVector.fromArray(SPECIES, green, 0, index, 0);
+            pixel.and(0xFF).intoArray(index, 0);
+            IntVector b = IntVector.fromArray(SPECIES, blue, 0, index, 0);
+            a
+                .lanewise(VectorOperators.LSHL, 24)
+                .or(r.lanewise(VectorOperators.LSHL, 16))
+                .or(g.lanewise(VectorOperators.LSHL, 8))
+                .or(b)
+                .intoArray(argb, i);
+        }
+        super.lut(red, green, blue, alpha, argb, i, to);
+    }
+
+    // Over an opaque background the result is opaque and Blend.over
+    // reduces to (top * alpha + background * (255 - alpha)) / 255
+    @Override
+    void flatten(int background, int[] argb, int from, int to) {
+        int backRed = (background >> 16) & 0xFF;
+        int backGreen = (background >> 8) & 0xFF;
+        int backBlue = background & 0xFF;
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector pixel = IntVector.fromArray(SPECIES, argb, i);
+            IntVector a = pixel.lanewise(VectorOperators.LSHR, 24);
+            IntVector keep = a.neg().add(255);
+            IntVector r = pixel.lanewise(VectorOperators.ASHR, 16).and(0xFF);
+            IntVector g = pixel.lanewise(VectorOperators.ASHR, 8).and(0xFF);
+            IntVector b = pixel.and(0xFF);
+            r = mix(r, a, backRed, keep);
+            g = mix(g, a, backGreen, keep);
+            b = mix(b, a, backBlue, keep);
+            r
+                .lanewise(VectorOperators.LSHL, 16)
+                .or(g.lanewise(VectorOperators.LSHL, 8))
+                .or(b)
+                .or(0xFF000000)
+                .intoArray(argb, i);
+        }
+        super.flatten(background, argb, i, to);
+    }
+
+    // Lanes have no fast integer divide; for 0 <= n <= 255 * 255,
+    // n / 255 == (n * 0x8081) >>> 23 exactly, without overflowing
+    private static IntVector mix(IntVector top, IntVector a, int back, IntVector keep) {
+        return top
+            .mul(a)
+            .add(keep.mul(back))
+            .mul(0x8081)
+            .lanewise(VectorOperators.LSHR, 23);
+    }
+}
@@ -0,0 +1,48 @@
+package jfxlabproj.filter;
+
+// Darkens towards the corners: full brightness inside the inner radius,
+// easing down to (1 - strength) at the corners. Radii are fractions of
+// the centre-to-corner distance.
+public class VignetteFilter implements PointFilter {
+
+    // Multipliers in 8.8 fixed point over squared distance, 0 to 1
+    private static final int STEPS = 4096;
+
+    private final double strength;
+    private final double inner;
+    private final int[] scales = new int[STEPS + 1];
+
+    public VignetteFilter(double strength, double inner) {
+        this.strength = strength;
+        this.inner = Math.max(0, Math.min(0.999, inner));
+        for (int i = 0; i <= STEPS; i++) {
+            scales[i] = (int) Math.round(falloff(Math.sqrt((double) i / STEPS)) * 256);
+        }
+    }
+
+    private double falloff(double distance) {
+        if (distance <= inner) return 1;
+        double t = Math.min(1, (distance - inner) / (1 - inner));
+        return 1 - strength * t * t * (3 - 2 * t);
+    }
+
+    // Brightness multiplier at pixel (x, y) of a width x height image
+    public double factor(int x, int y, int width, int height) {
+        return scale(x, y, width, height) / 256.0;
+    }
+
+    private int scale(int x, int y, int width, int height) {
+        double dx = (x + 0.5) / width * 2 - 1;
+        double dy = (y + 0.5) / height * 2 - 1;
+        return scales[(int) ((dx * dx + dy * dy) * (STEPS / 2) + 0.5)];
+    }
+
+    @Override
+    public int filter(int argb, int x, int y, int width, int height) {
+        int scale = scale(x, y, width, height);
+        int r = ((argb >> 16) & 0xFF) * scale >> 8;
+        int g = ((argb >> 8) & 0xFF) * scale >> 8;
+        int b = (argb & 0xFF) * scale >> 8;
+        return (argb & 0xFF000000) | (r << 16) | (g << 8) | b;
+    }
+}
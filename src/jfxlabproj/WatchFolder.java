@@ -0,0 +1,253 @@
+package jfxlabproj.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Long-running drop folder: watches a directory and feeds each new or
+// replaced file to a started BatchPipeline. A file is only handed on once
+// its size and modification time have held still for the settle time,
+// so copies still in progress are not decoded half written. Ready files
+// wait here, as paths only, until the pipeline has room; the pipeline's
+// bounded queues cap how many images are ever in memory.
+public class WatchFolder {
+
+    private final Path directory;
+    private final BatchPipeline pipeline;
+    private long settleMillis = 750;
+    private int metricsSeconds = 10;
+    private Consumer<String> metricsListener = System.out::println;
+
+    // Files seen changing, by path, until they settle and are submitted
+    private final Map<Path, Candidate> candidates = new LinkedHashMap<>();
+    // Size and time of what was last submitted, so a stray modify event
+    // does not process the same file twice
+    private final Map<Path, Signature> submitted = new HashMap<>();
+
+    public WatchFolder(File directory, BatchPipeline pipeline) {
+        this.directory = directory.toPath().toAbsolutePath().normalize();
+        this.pipeline = pipeline;
+    }
+
+    // How long a file must stay unchanged before it is processed
+    public void setSettleMillis(long settleMillis) {
+        if (settleMillis < 0) {
+            throw new IllegalArgumentException("Settle time must not be negative");
+        }
+        this.settleMillis = settleMillis;
+    }
+
+    // Seconds between metrics lines; 0 turns them off
+    public void setMetricsSeconds(int metricsSeconds) {
+        if (metricsSeconds < 0) {
+            throw new IllegalArgumentException("Metrics interval must not be negative");
+        }
+        this.metricsSeconds = metricsSeconds;
+    }
+
+    // Called on the watching thread with each metrics line
+    public void setMetricsListener(Consumer<String> metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    private static class Signature {
+
+        final long size;
+        final long modified;
+
+        Signature(BasicFileAttributes attributes) {
+            this.size = attributes.size();
+            this.modified = attributes.lastModifiedTime().toMillis();
+        }
+
+        boolean matches(Signature other) {
+            return other != null && size == other.size && modified == other.modified;
+        }
+    }
+
+    private static class Candidate {
+
+        Signature signature;
+        long stableSince;
+    }
+
+    // Watches until the thread is interrupted. Files already in the
+    // directory are picked up first.
+    public void run() throws IOException, InterruptedException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            directory.register(
+                watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE
+            );
+            rescan();
+            long tick = Math.max(50, Math.min(settleMillis / 2, 500));
+            long metricsNanos = TimeUnit.SECONDS.toNanos(metricsSeconds);
+            long nextMetrics = System.nanoTime() + metricsNanos;
+            Metrics metrics = new Metrics();
+            while (true) {
+                WatchKey key = watcher.poll(tick, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    drain(key);
+                    if (!key.reset()) {
+                        throw new IOException("No longer watching " + directory);
+                    }
+                }
+                submitSettled();
+                if (metricsSeconds > 0 && System.nanoTime() - nextMetrics >= 0) {
+                    nextMetrics += metricsNanos;
+                    if (metricsListener != null) metricsListener.accept(metrics.line());
+                }
+            }
+        }
+    }
+
+    private void drain(WatchKey key) throws IOException {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were dropped during a burst; the listing has them
+                rescan();
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                candidates.remove(path);
+                submitted.remove(path);
+            } else {
+                touch(path);
+            }
+        }
+    }
+
+    private void rescan() throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path path : entries) {
+                touch(path);
+            }
+        }
+    }
+
+    // Notes a possible change; the settle clock restarts if it really changed
+    private void touch(Path path) {
+        if (ignored(path)) return;
+        Signature signature = read(path);
+        if (signature == null || signature.matches(submitted.get(path))) return;
+        Candidate candidate = candidates.get(path);
+        if (candidate == null) {
+            candidate = new Candidate();
+            candidates.put(path, candidate);
+        }
+        if (!signature.matches(candidate.signature)) {
+            candidate.signature = signature;
+            candidate.stableSince = System.nanoTime();
+        }
+    }
+
+    // Hidden files and the usual in-progress names from browsers and copy tools
+    private static boolean ignored(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.startsWith(".") || name.endsWith(".part") || name.endsWith(".tmp") ||
+            name.endsWith(".crdownload") || name.endsWith(".download");
+    }
+
+    private static Signature read(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(
+                path,
+                BasicFileAttributes.class
+            );
+            return attributes.isRegularFile() ? new Signature(attributes) : null;
+        } catch (IOException e) {
+            // Gone again, or not readable yet
+            return null;
+        }
+    }
+
+    // Submits settled files in the order they appeared, stopping as soon
+    // as the pipeline is full; the rest wait for the next tick
+    private void submitSettled() {
+        long settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Path, Candidate>> entries = candidates.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, Candidate> entry = entries.next();
+            Path path = entry.getKey();
+            Candidate candidate = entry.getValue();
+            if (now - candidate.stableSince < settleNanos) continue;
+            // Recheck: a writer that never triggers modify events still shows up here
+            Signature signature = read(path);
+            if (signature == null || signature.size == 0) {
+                if (signature == null) entries.remove();
+                continue;
+            }
+            if (!signature.matches(candidate.signature)) {
+                candidate.signature = signature;
+                candidate.stableSince = now;
+                continue;
+            }
+            if (!pipeline.offer(path.toFile(), candidate.stableSince + settleNanos)) return;
+            submitted.put(path, signature);
+            entries.remove();
+        }
+    }
+
+    // How long the oldest settled file still waiting here has been ready,
+    // in nanoseconds; during a burst these wait for room in the pipeline
+    private long settledLagNanos() {
+        long settleNanos = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        long now = System.nanoTime();
+        long oldest = 0;
+        for (Candidate candidate : candidates.values()) {
+            oldest = Math.max(oldest, now - candidate.stableSince - settleNanos);
+        }
+        return oldest;
+    }
+
+    // One line of throughput since the last line, plus current backlog.
+    // Lag runs from when a file settled, whether it is still waiting here
+    // or already in the pipeline.
+    private class Metrics {
+
+        private long lastNanos = System.nanoTime();
+        private int lastCompleted;
+
+        String line() {
+            BatchPipeline.Report report = pipeline.report();
+            long now = System.nanoTime();
+            int done = report.getCompleted() - lastCompleted;
+            double rate = done * 1e9 / Math.max(1, now - lastNanos);
+            lastNanos = now;
+            lastCompleted = report.getCompleted();
+            int[] depths = pipeline.queueDepths();
+            return String.format(
+                "[watch] waiting %d, queues %d/%d/%d, in flight %d, " +
+                "done %d (%d failed), %.2f images/s, lag %.1f s, total p90 %.1f ms",
+                candidates.size(),
+                depths[0],
+                depths[1],
+                depths[2],
+                pipeline.inFlight(),
+                report.getCompleted(),
+                report.getFailed(),
+                rate,
+                Math.max(pipeline.lagNanos(), settledLagNanos()) / 1e9,
+                report.getTotal().percentile(90) / 1e6
+            );
+        }
+    }
+}
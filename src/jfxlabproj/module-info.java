@@ -4,6 +4,8 @@ module jfxlabproj {
     requires javafx.graphics;
     requires java.desktop; // To access BufferedImage and ImageIO
     requires javafx.swing; // To access SwingFXUtils
+    // SIMD point filters when present; PixelKernels falls back to scalar
+    requires static jdk.incubator.vector;
 
     opens jfxlabproj to javafx.fxml;
     exports jfxlabproj;